@@ -1,10 +1,16 @@
 package net.orekhov.notificationsservice.config;
 
+import net.orekhov.notificationsservice.event.DomainEvent;
+import net.orekhov.notificationsservice.event.EventDeserializer;
+import net.orekhov.notificationsservice.metrics.ListenerMetrics;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -13,6 +19,8 @@ import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,20 +34,36 @@ public class KafkaConsumerConfig {
     // Логгер для логирования событий в этом классе
     private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerConfig.class);
 
+    @Autowired
+    private SimpleAsyncTaskExecutorBuilder taskExecutorBuilder; // Потоки потребителей; виртуальные, если включён spring.threads.virtual.enabled
+
+    @Value("${notifications.retry.attempts:3}")
+    private int retryAttempts; // Количество уровней retry topic
+
+    @Value("${notifications.retry.initial-delay-ms:1000}")
+    private long retryInitialDelayMs; // Задержка первого уровня повтора
+
+    @Value("${notifications.retry.multiplier:4.0}")
+    private double retryMultiplier; // Множитель задержки следующего уровня
+
+    @Value("${notifications.retry.max-delay-ms:60000}")
+    private long retryMaxDelayMs; // Максимальная задержка уровня повтора
+
     /**
      * Создаёт фабрику потребителей для работы с Kafka.
      * Настроены параметры для подключения к Kafka, включая сереализаторы для ключей и значений.
      *
-     * @return ConsumerFactory, настроенный для обработки строковых данных.
+     * @return ConsumerFactory, настроенный для обработки событий.
      */
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, DomainEvent> consumerFactory() {
         // Создаём карту с конфигурацией для потребителя
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");  // Адрес Kafka брокера
         config.put(ConsumerConfig.GROUP_ID_CONFIG, "notifications-group");  // Уникальная группа для обработки сообщений
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);  // Десериализация ключей сообщений
-        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);  // Десериализация значений сообщений
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);  // Ошибка десериализации не останавливает партицию
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, EventDeserializer.class);  // Десериализация событий (бинарный формат и старый строковый)
 
         // Логируем конфигурацию потребителя
         logger.info("Configuring Kafka consumer with bootstrap servers: localhost:9092 and group ID: notifications-group");
@@ -48,19 +72,37 @@ public class KafkaConsumerConfig {
         return new DefaultKafkaConsumerFactory<>(config);
     }
 
+    /**
+     * Retry topic и dead-letter topic для темы "notifications".
+     *
+     * @return Настройки неблокирующих повторов
+     */
+    @Bean(destroyMethod = "close")
+    public RetryTopics notificationsRetryTopics() {
+        return new RetryTopics("localhost:9092", "notifications", retryAttempts,
+                retryInitialDelayMs, retryMultiplier, retryMaxDelayMs);
+    }
+
     /**
      * Конфигурирует фабрику для контейнера Kafka Listener.
      * Использует переданную фабрику потребителей для создания контейнера, который будет прослушивать сообщения.
+     * Сообщение, обработка которого завершилась ошибкой, сразу переносится в retry topic.
      *
      * @param consumerFactory Фабрика потребителей, которая создаёт потребителей с нужной конфигурацией.
+     * @param notificationsRetryTopics Retry topic для ошибочных сообщений.
+     * @param listenerMetrics Метрики обработки сообщений.
      * @return KafkaListenerContainerFactory, конфигурируемый для прослушивания сообщений.
      */
     @Bean
-    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, String>> factory(
-            ConsumerFactory<String, String> consumerFactory) {
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, DomainEvent>> factory(
+            ConsumerFactory<String, DomainEvent> consumerFactory, RetryTopics notificationsRetryTopics,
+            ListenerMetrics listenerMetrics) {
         // Создаём фабрику контейнера для многопоточного прослушивания
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        ConcurrentKafkaListenerContainerFactory<String, DomainEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);  // Устанавливаем фабрику потребителей
+        factory.getContainerProperties().setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("notifications-consumer-").build());
+        factory.setCommonErrorHandler(notificationsRetryTopics.errorHandler());  // Ошибочные сообщения уходят в retry topic
+        factory.setRecordInterceptor(listenerMetrics.recordInterceptor("notifications"));  // Время обработки и сквозная задержка
 
         // Логируем создание фабрики контейнера
         logger.info("Configuring KafkaListenerContainerFactory with consumer factory: {}", consumerFactory.getClass().getName());
@@ -68,25 +110,43 @@ public class KafkaConsumerConfig {
         return factory;
     }
 
+    /**
+     * Создаёт контейнер, читающий retry topic темы "notifications" и передающий сообщения в {@link #listen}.
+     * При повторной ошибке сообщение переходит на следующий уровень, после последнего — в dead-letter topic.
+     *
+     * @param consumerFactory Фабрика потребителей.
+     * @param notificationsRetryTopics Retry topic темы "notifications".
+     * @param listenerMetrics Метрики обработки сообщений.
+     * @return Контейнер для retry topic.
+     */
+    @Bean
+    public ConcurrentMessageListenerContainer<String, DomainEvent> notificationsRetryListenerContainer(
+            ConsumerFactory<String, DomainEvent> consumerFactory, RetryTopics notificationsRetryTopics,
+            ListenerMetrics listenerMetrics) {
+        ContainerProperties containerProps = new ContainerProperties(
+                notificationsRetryTopics.getRetryTopics().toArray(String[]::new));
+        containerProps.setGroupId("notifications-group-retry");
+        containerProps.setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("notifications-retry-consumer-").build());
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
+                notificationsRetryTopics.retryContainer(consumerFactory, containerProps, this::listen);
+        container.setRecordInterceptor(listenerMetrics.recordInterceptor("notificationsRetryListenerContainer"));
+        return container;
+    }
+
     /**
      * Метод прослушивания сообщений из Kafka.
      * Когда новое сообщение появляется в теме "notifications", этот метод будет вызван.
+     * Исключение обработки передаётся контейнеру, который переносит сообщение в retry topic.
      *
      * @param record Запись сообщения, содержащее ключ и значение.
      */
-    @KafkaListener(topics = "notifications", groupId = "notifications-group")
-    public void listen(ConsumerRecord<String, String> record) {
+    @KafkaListener(id = "notifications", topics = "notifications", groupId = "notifications-group", containerFactory = "factory")
+    public void listen(ConsumerRecord<String, DomainEvent> record) {
         // Логируем полученное сообщение для отладки
         logger.info("Received message: {}", record.value());
 
         // Здесь можно добавить логику обработки полученного сообщения (например, уведомление пользователя)
-        try {
-            // Пример обработки сообщения
-            logger.debug("Processing message with key: {} and value: {}", record.key(), record.value());
-            // Ваш код обработки...
-        } catch (Exception e) {
-            // Логируем ошибку, если обработка сообщения не удалась
-            logger.error("Error while processing message with key: {}", record.key(), e);
-        }
+        logger.debug("Processing message with key: {} and value: {}", record.key(), record.value());
+        // Ваш код обработки...
     }
 }
@@ -0,0 +1,271 @@
+package net.orekhov.notificationsservice.config;
+
+import net.orekhov.notificationsservice.event.DomainEvent;
+import net.orekhov.notificationsservice.event.EventSerializer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.KafkaBackoffException;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.listener.SeekUtils;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Неблокирующие повторы через цепочку retry topic и dead-letter topic.
+ *
+ * Запись, обработка которой завершилась ошибкой, сразу переносится из основного topic в &lt;topic&gt;-retry-1
+ * без повторов на месте, поэтому следующие записи партиции не ждут. Запись из &lt;topic&gt;-retry-n при ошибке
+ * переносится в &lt;topic&gt;-retry-(n+1), после последнего уровня — в &lt;topic&gt;-dlt. Нераспознанные записи
+ * (ошибка десериализации) сразу переносятся в dead-letter topic.
+ *
+ * Задержка уровня n равна initialDelay * multiplier^(n-1), но не больше maxDelay. Время, раньше которого запись
+ * нельзя обрабатывать, передаётся в заголовке {@link #DUE_HEADER}. Контейнер уровней повтора, встретив запись,
+ * время которой не наступило, приостанавливает только её партицию до этого времени; поскольку задержка внутри
+ * уровня одинакова, записи партиции становятся готовыми по порядку.
+ */
+public class RetryTopics {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryTopics.class); // Логгер для повторов
+
+    public static final String DUE_HEADER = "retry-due-at"; // Время (мс), раньше которого запись не обрабатывается
+
+    private final String topic; // Основной topic
+    private final int attempts; // Количество уровней повтора
+    private final long initialDelayMillis; // Задержка первого уровня
+    private final double multiplier; // Множитель задержки следующего уровня
+    private final long maxDelayMillis; // Максимальная задержка уровня
+    private final DefaultKafkaProducerFactory<String, Object> producerFactory; // Продюсер для переноса записей
+    private final DeadLetterPublishingRecoverer recoverer; // Перенос записи на следующий уровень
+    private final ScheduledExecutorService scheduler; // Возобновление приостановленных партиций
+
+    /**
+     * @param bootstrapServers   Адрес Kafka сервера
+     * @param topic              Основной topic
+     * @param attempts           Количество уровней повтора (0 — ошибочные записи сразу переносятся в dead-letter topic)
+     * @param initialDelayMillis Задержка первого уровня
+     * @param multiplier         Множитель задержки следующего уровня
+     * @param maxDelayMillis     Максимальная задержка уровня
+     */
+    public RetryTopics(String bootstrapServers, String topic, int attempts,
+                       long initialDelayMillis, double multiplier, long maxDelayMillis) {
+        this.topic = topic;
+        this.attempts = attempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.multiplier = multiplier;
+        this.maxDelayMillis = maxDelayMillis;
+
+        // Записи переносятся как есть: события — в бинарном формате, нераспознанные записи — исходными байтами
+        Map<Class<?>, Serializer<?>> serializers = new LinkedHashMap<>();
+        serializers.put(byte[].class, new ByteArraySerializer());
+        serializers.put(DomainEvent.class, new EventSerializer());
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        this.producerFactory = new DefaultKafkaProducerFactory<>(props, new StringSerializer(),
+                new DelegatingByTypeSerializer(serializers, true));
+
+        this.recoverer = new DeadLetterPublishingRecoverer(new KafkaTemplate<>(producerFactory), this::destination);
+        this.recoverer.setHeadersFunction(this::dueHeaders);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, topic + "-retry-resume");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Retry topics for {}: {} levels, delays {}, dead-letter topic {}",
+                topic, attempts, delays(), getDeadLetterTopic());
+    }
+
+    /**
+     * Topic уровней повтора по порядку.
+     *
+     * @return Список &lt;topic&gt;-retry-1 ... &lt;topic&gt;-retry-n
+     */
+    public List<String> getRetryTopics() {
+        List<String> topics = new ArrayList<>(attempts);
+        for (int level = 1; level <= attempts; level++) {
+            topics.add(retryTopic(level));
+        }
+        return topics;
+    }
+
+    public String getDeadLetterTopic() {
+        return topic + "-dlt";
+    }
+
+    /**
+     * Обработчик ошибок контейнера: без повторов на месте, ошибочная запись переносится на следующий уровень,
+     * смещение фиксируется, и обработка партиции продолжается со следующей записи.
+     *
+     * @return Обработчик ошибок; для каждого контейнера создаётся свой
+     */
+    public DefaultErrorHandler errorHandler() {
+        return new DefaultErrorHandler(recoverer, new FixedBackOff(0, 0));
+    }
+
+    /**
+     * Переносит запись на следующий уровень вне обработчика ошибок контейнера
+     * (для записей, обрабатываемых в собственных потоках).
+     *
+     * @param record    Запись, обработка которой завершилась ошибкой
+     * @param exception Ошибка обработки
+     */
+    public void recover(ConsumerRecord<?, ?> record, Exception exception) {
+        recoverer.accept(record, null, exception);
+    }
+
+    /**
+     * Создает контейнер, читающий все уровни повтора.
+     * Запись передаётся слушателю, только когда наступило её время; до этого партиция приостанавливается.
+     *
+     * @param consumerFactory Фабрика потребителей
+     * @param containerProps  Настройки контейнера, созданные для {@link #getRetryTopics()}
+     * @param listener        Слушатель, обрабатывающий записи
+     * @return Контейнер уровней повтора
+     */
+    public ConcurrentMessageListenerContainer<String, DomainEvent> retryContainer(
+            ConsumerFactory<String, DomainEvent> consumerFactory,
+            ContainerProperties containerProps,
+            MessageListener<String, DomainEvent> listener) {
+        DelayedListener delayed = new DelayedListener(listener);
+        containerProps.setMessageListener(delayed);
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
+                new ConcurrentMessageListenerContainer<>(consumerFactory, containerProps);
+        container.setCommonErrorHandler(errorHandler());
+        container.setAutoStartup(attempts > 0);
+        delayed.container = container;
+        return container;
+    }
+
+    /**
+     * Закрывает продюсер и планировщик.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        producerFactory.destroy();
+    }
+
+    /**
+     * Куда перенести запись: на следующий уровень повтора или в dead-letter topic.
+     * Партиция выбирается по ключу записи.
+     */
+    private TopicPartition destination(ConsumerRecord<?, ?> record, Exception exception) {
+        if (SeekUtils.isBackoffException(exception)) {
+            // Время записи ещё не наступило: это не ошибка обработки, запись будет прочитана повторно
+            throw (NestedRuntimeException) exception;
+        }
+        int level = levelOf(record.topic());
+        if (level >= attempts || isDeserializationFailure(exception)) {
+            logger.warn("Record {}-{}@{} moved to dead-letter topic {}",
+                    record.topic(), record.partition(), record.offset(), getDeadLetterTopic(), exception);
+            return new TopicPartition(getDeadLetterTopic(), -1);
+        }
+        logger.info("Record {}-{}@{} scheduled for retry {} of {}: {}",
+                record.topic(), record.partition(), record.offset(), level + 1, attempts, exception.getMessage());
+        return new TopicPartition(retryTopic(level + 1), -1);
+    }
+
+    /**
+     * Заголовок со временем обработки для записи, переносимой на следующий уровень.
+     */
+    private Headers dueHeaders(ConsumerRecord<?, ?> record, Exception exception) {
+        Headers headers = new RecordHeaders();
+        int next = levelOf(record.topic()) + 1;
+        if (next <= attempts) {
+            long dueAt = System.currentTimeMillis() + delayOf(next);
+            headers.add(DUE_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(dueAt).array());
+        }
+        return headers;
+    }
+
+    private long delayOf(int level) {
+        return (long) Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, level - 1));
+    }
+
+    private List<Long> delays() {
+        List<Long> delays = new ArrayList<>(attempts);
+        for (int level = 1; level <= attempts; level++) {
+            delays.add(delayOf(level));
+        }
+        return delays;
+    }
+
+    private String retryTopic(int level) {
+        return topic + "-retry-" + level;
+    }
+
+    /**
+     * Уровень повтора topic: 0 для основного topic.
+     */
+    private int levelOf(String recordTopic) {
+        String prefix = topic + "-retry-";
+        return recordTopic.startsWith(prefix) ? Integer.parseInt(recordTopic.substring(prefix.length())) : 0;
+    }
+
+    private static boolean isDeserializationFailure(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeserializationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Слушатель уровней повтора: передаёт запись дальше, только когда наступило её время.
+     * Иначе приостанавливает партицию до этого времени и бросает {@link KafkaBackoffException},
+     * после чего обработчик ошибок возвращает позицию партиции к этой записи.
+     */
+    private class DelayedListener implements MessageListener<String, DomainEvent> {
+
+        private final MessageListener<String, DomainEvent> delegate;
+        private volatile ConcurrentMessageListenerContainer<String, DomainEvent> container;
+
+        DelayedListener(MessageListener<String, DomainEvent> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onMessage(ConsumerRecord<String, DomainEvent> record) {
+            Header header = record.headers().lastHeader(DUE_HEADER);
+            long dueAt = header != null ? ByteBuffer.wrap(header.value()).getLong() : 0;
+            long delay = dueAt - System.currentTimeMillis();
+            if (delay > 0) {
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                container.pausePartition(partition);
+                scheduler.schedule(() -> container.resumePartition(partition), delay, TimeUnit.MILLISECONDS);
+                throw new KafkaBackoffException("Retry record is not due yet", partition, topic + "-retry", dueAt);
+            }
+            delegate.onMessage(record);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package net.orekhov.notificationsservice.controller;
 
+import net.orekhov.notificationsservice.event.DomainEvent;
+import net.orekhov.notificationsservice.event.NotificationEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -16,7 +18,7 @@ public class NotificationsController {
     // Логгер для логирования событий в этом контроллере
     private static final Logger logger = LoggerFactory.getLogger(NotificationsController.class);
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, DomainEvent> kafkaTemplate;
 
     /**
      * Конструктор для инициализации контроллера с передачей KafkaTemplate.
@@ -24,7 +26,7 @@ public class NotificationsController {
      *
      * @param kafkaTemplate Шаблон Kafka для отправки сообщений.
      */
-    public NotificationsController(KafkaTemplate<String, String> kafkaTemplate) {
+    public NotificationsController(KafkaTemplate<String, DomainEvent> kafkaTemplate) {
         this.kafkaTemplate = kafkaTemplate;
     }
 
@@ -42,7 +44,7 @@ public class NotificationsController {
 
         try {
             // Отправляем сообщение в Kafka, в тему "notifications"
-            kafkaTemplate.send("notifications", message);
+            kafkaTemplate.send("notifications", new NotificationEvent(null, null, message));
 
             // Логируем успешную отправку
             logger.info("Notification successfully sent: {}", message);
@@ -0,0 +1,78 @@
+package net.orekhov.notificationsservice.event;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Заголовки сообщений Kafka, общие для всех служб.
+ */
+public final class EventHeaders {
+
+    /**
+     * Время приёма заказа службой заказов (мс с начала эпохи, long в 8 байтах).
+     * Передаётся дальше по цепочке событий и позволяет измерить сквозную задержку.
+     */
+    public static final String PRODUCED_AT = "produced-at";
+
+    /**
+     * Тип события в topic "orders" (строка UTF-8). Сообщение без заголовка — создание заказа,
+     * {@link #ORDER_STATUS_CHANGED} — смена статуса уже созданного заказа.
+     */
+    public static final String EVENT_TYPE = "event-type";
+
+    /**
+     * Значение заголовка {@link #EVENT_TYPE} для смены статуса заказа.
+     */
+    public static final String ORDER_STATUS_CHANGED = "order-status-changed";
+
+    private EventHeaders() {
+    }
+
+    /**
+     * Значение заголовка времени.
+     *
+     * @param epochMillis Время в миллисекундах с начала эпохи
+     * @return Байты значения заголовка
+     */
+    public static byte[] encodeTime(long epochMillis) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(epochMillis).array();
+    }
+
+    /**
+     * Значение заголовка типа события.
+     *
+     * @param type Тип события
+     * @return Байты значения заголовка
+     */
+    public static byte[] encodeType(String type) {
+        return type.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Является ли сообщение сменой статуса заказа, а не созданием заказа.
+     *
+     * @param headers Заголовки сообщения
+     * @return true, если заголовок {@link #EVENT_TYPE} равен {@link #ORDER_STATUS_CHANGED}
+     */
+    public static boolean isOrderStatusChange(Headers headers) {
+        Header header = headers.lastHeader(EVENT_TYPE);
+        return header != null && header.value() != null
+                && ORDER_STATUS_CHANGED.equals(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Время приёма заказа из заголовков сообщения.
+     *
+     * @param headers Заголовки сообщения
+     * @return Время в миллисекундах с начала эпохи или -1, если заголовка нет
+     */
+    public static long producedAt(Headers headers) {
+        Header header = headers.lastHeader(PRODUCED_AT);
+        return header != null && header.value() != null && header.value().length == Long.BYTES
+                ? ByteBuffer.wrap(header.value()).getLong()
+                : -1;
+    }
+}
@@ -0,0 +1,75 @@
+package net.orekhov.notificationsservice.event;
+
+/**
+ * Событие заказа.
+ * Содержит данные заказа, которые отправляются в topic "orders".
+ */
+public final class OrderEvent extends DomainEvent {
+
+    private final String orderId; // Идентификатор заказа
+    private final String customerId; // Идентификатор клиента
+    private final String product; // Название товара
+    private final int quantity; // Количество товара
+    private final double price; // Цена товара
+    private final String status; // Статус заказа
+
+    /**
+     * Конструктор события заказа.
+     *
+     * @param orderId    Идентификатор заказа
+     * @param customerId Идентификатор клиента
+     * @param product    Название товара
+     * @param quantity   Количество товара
+     * @param price      Цена товара
+     * @param status     Статус заказа
+     */
+    public OrderEvent(String orderId, String customerId, String product, int quantity, double price, String status) {
+        this.orderId = orderId;
+        this.customerId = customerId;
+        this.product = product;
+        this.quantity = quantity;
+        this.price = price;
+        this.status = status;
+    }
+
+    @Override
+    public EventType getType() {
+        return EventType.ORDER;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public String getProduct() {
+        return product;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderEvent{" +
+                "orderId='" + orderId + '\'' +
+                ", customerId='" + customerId + '\'' +
+                ", product='" + product + '\'' +
+                ", quantity=" + quantity +
+                ", price=" + price +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
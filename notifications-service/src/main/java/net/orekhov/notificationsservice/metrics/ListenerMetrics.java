@@ -0,0 +1,246 @@
+package net.orekhov.notificationsservice.metrics;
+
+import net.orekhov.notificationsservice.event.EventHeaders;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.kafka.listener.SeekUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики контейнеров слушателей Kafka в текстовом формате Prometheus.
+ *
+ * Время обработки, количество записей и сквозная задержка собираются перехватчиками, которые конфигурация
+ * устанавливает в каждый контейнер. Сквозная задержка считается от времени приёма заказа из заголовка
+ * {@link EventHeaders#PRODUCED_AT}. Отставание по партициям и скорость чтения берутся из метрик клиента Kafka
+ * (records-lag, records-consumed-rate) в момент запроса, поэтому отдельного опроса брокера нет.
+ */
+@Component
+public class ListenerMetrics implements ApplicationContextAware {
+
+    private static final String FETCH_GROUP = "consumer-fetch-manager-metrics"; // Группа метрик чтения клиента Kafka
+
+    private final Map<String, ContainerStats> stats = new ConcurrentHashMap<>(); // Статистика по имени контейнера
+    private ApplicationContext applicationContext; // Для поиска контейнеров в момент запроса
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    /**
+     * Перехватчик для контейнера, обрабатывающего записи по одной.
+     *
+     * @param container Имя контейнера в метриках
+     * @return Перехватчик, измеряющий обработку каждой записи
+     */
+    public <K, V> RecordInterceptor<K, V> recordInterceptor(String container) {
+        ContainerStats containerStats = statsOf(container);
+        ThreadLocal<long[]> startedAt = ThreadLocal.withInitial(() -> new long[1]);
+        return new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<K, V> intercept(ConsumerRecord<K, V> record, Consumer<K, V> consumer) {
+                startedAt.get()[0] = System.nanoTime();
+                return record;
+            }
+
+            @Override
+            public void success(ConsumerRecord<K, V> record, Consumer<K, V> consumer) {
+                containerStats.record(record, startedAt.get()[0], true);
+            }
+
+            @Override
+            public void failure(ConsumerRecord<K, V> record, Exception exception, Consumer<K, V> consumer) {
+                if (SeekUtils.isBackoffException(exception)) {
+                    return; // Запись retry topic, время которой не наступило, — не ошибка обработки
+                }
+                containerStats.record(record, startedAt.get()[0], false);
+            }
+        };
+    }
+
+    /**
+     * Перехватчик для контейнера, обрабатывающего весь результат poll одной пачкой.
+     * Время обработки учитывается на пачку, сквозная задержка — на каждую запись.
+     *
+     * @param container Имя контейнера в метриках
+     * @return Перехватчик, измеряющий обработку каждой пачки
+     */
+    public <K, V> BatchInterceptor<K, V> batchInterceptor(String container) {
+        ContainerStats containerStats = statsOf(container);
+        ThreadLocal<long[]> startedAt = ThreadLocal.withInitial(() -> new long[1]);
+        return new BatchInterceptor<>() {
+            @Override
+            public ConsumerRecords<K, V> intercept(ConsumerRecords<K, V> records, Consumer<K, V> consumer) {
+                startedAt.get()[0] = System.nanoTime();
+                return records;
+            }
+
+            @Override
+            public void success(ConsumerRecords<K, V> records, Consumer<K, V> consumer) {
+                containerStats.recordBatch(records, startedAt.get()[0], true);
+            }
+
+            @Override
+            public void failure(ConsumerRecords<K, V> records, Exception exception, Consumer<K, V> consumer) {
+                containerStats.recordBatch(records, startedAt.get()[0], false);
+            }
+        };
+    }
+
+    /**
+     * Учитывает запись, обработанную вне потока потребителя (например, в пуле обработчиков).
+     *
+     * @param container Имя контейнера в метриках
+     * @param record    Обработанная запись
+     * @param startedAt Время начала обработки (System.nanoTime())
+     * @param success   Успешна ли обработка
+     */
+    public void recordProcessed(String container, ConsumerRecord<?, ?> record, long startedAt, boolean success) {
+        statsOf(container).record(record, startedAt, success);
+    }
+
+    /**
+     * Все метрики в текстовом формате Prometheus.
+     *
+     * @return Текст для ответа на запрос сборщика метрик
+     */
+    public String scrape() {
+        StringBuilder lag = new StringBuilder();
+        StringBuilder rate = new StringBuilder();
+        containers().forEach((name, container) -> {
+            for (Map.Entry<String, Map<MetricName, ? extends Metric>> client : container.metrics().entrySet()) {
+                for (Map.Entry<MetricName, ? extends Metric> entry : client.getValue().entrySet()) {
+                    MetricName metric = entry.getKey();
+                    if (!FETCH_GROUP.equals(metric.group()) || !(entry.getValue().metricValue() instanceof Double value)
+                            || value.isNaN() || value.isInfinite()) {
+                        continue;
+                    }
+                    String topic = metric.tags().get("topic");
+                    String partition = metric.tags().get("partition");
+                    if ("records-lag".equals(metric.name()) && topic != null && partition != null) {
+                        lag.append("kafka_consumer_records_lag{container=\"").append(escape(name))
+                                .append("\",topic=\"").append(escape(topic))
+                                .append("\",partition=\"").append(partition).append("\"} ").append(value).append('\n');
+                    } else if ("records-consumed-rate".equals(metric.name()) && topic != null && partition == null) {
+                        rate.append("kafka_consumer_records_consumed_rate{container=\"").append(escape(name))
+                                .append("\",client_id=\"").append(escape(client.getKey()))
+                                .append("\",topic=\"").append(escape(topic)).append("\"} ").append(value).append('\n');
+                    }
+                }
+            }
+        });
+
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP kafka_consumer_records_lag Records between the consumer position and the end of the partition\n");
+        out.append("# TYPE kafka_consumer_records_lag gauge\n").append(lag);
+        out.append("# HELP kafka_consumer_records_consumed_rate Records consumed per second\n");
+        out.append("# TYPE kafka_consumer_records_consumed_rate gauge\n").append(rate);
+
+        out.append("# HELP kafka_listener_records_total Records processed by the listener\n");
+        out.append("# TYPE kafka_listener_records_total counter\n");
+        stats.forEach((name, s) -> {
+            out.append("kafka_listener_records_total{container=\"").append(escape(name)).append("\",result=\"success\"} ")
+                    .append(s.succeeded.sum()).append('\n');
+            out.append("kafka_listener_records_total{container=\"").append(escape(name)).append("\",result=\"failure\"} ")
+                    .append(s.failed.sum()).append('\n');
+        });
+        writeHistograms(out, "kafka_listener_processing_seconds", "Record processing time", "processing");
+        writeHistograms(out, "kafka_listener_batch_processing_seconds", "Batch processing time", "batch");
+        writeHistograms(out, "kafka_listener_end_to_end_latency_seconds",
+                "Time from order acceptance to successful processing", "latency");
+        return out.toString();
+    }
+
+    private void writeHistograms(StringBuilder out, String name, String help, String kind) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        stats.forEach((container, s) -> {
+            Histogram histogram = switch (kind) {
+                case "processing" -> s.processing;
+                case "batch" -> s.batchProcessing;
+                default -> s.endToEnd;
+            };
+            histogram.writeTo(out, name, "container=\"" + escape(container) + "\"");
+        });
+    }
+
+    /**
+     * Контейнеры приложения: созданные как бины и созданные для {@code @KafkaListener}.
+     */
+    private Map<String, MessageListenerContainer> containers() {
+        Map<String, MessageListenerContainer> containers = new LinkedHashMap<>();
+        Map<MessageListenerContainer, Boolean> seen = new IdentityHashMap<>();
+        applicationContext.getBeansOfType(MessageListenerContainer.class, false, false).forEach((name, container) -> {
+            seen.put(container, true);
+            containers.put(name, container);
+        });
+        applicationContext.getBeanProvider(KafkaListenerEndpointRegistry.class).ifAvailable(registry -> {
+            for (MessageListenerContainer container : registry.getListenerContainers()) {
+                if (seen.put(container, true) == null) {
+                    containers.put(container.getListenerId(), container);
+                }
+            }
+        });
+        return containers;
+    }
+
+    private ContainerStats statsOf(String container) {
+        return stats.computeIfAbsent(container, name -> new ContainerStats());
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Статистика одного контейнера.
+     */
+    private static final class ContainerStats {
+
+        private final LongAdder succeeded = new LongAdder(); // Успешно обработанные записи
+        private final LongAdder failed = new LongAdder(); // Записи, обработка которых завершилась ошибкой
+        private final Histogram processing = new Histogram(); // Время обработки записи
+        private final Histogram batchProcessing = new Histogram(); // Время обработки пачки
+        private final Histogram endToEnd = new Histogram(); // Время от приёма заказа до обработки
+
+        void record(ConsumerRecord<?, ?> record, long startedAt, boolean success) {
+            processing.observe((System.nanoTime() - startedAt) / 1e9);
+            count(record, success);
+        }
+
+        void recordBatch(ConsumerRecords<?, ?> records, long startedAt, boolean success) {
+            batchProcessing.observe((System.nanoTime() - startedAt) / 1e9);
+            for (ConsumerRecord<?, ?> record : records) {
+                count(record, success);
+            }
+        }
+
+        private void count(ConsumerRecord<?, ?> record, boolean success) {
+            if (!success) {
+                failed.increment();
+                return;
+            }
+            succeeded.increment();
+            long producedAt = EventHeaders.producedAt(record.headers());
+            if (producedAt >= 0) {
+                endToEnd.observe(Math.max(0, System.currentTimeMillis() - producedAt) / 1e3);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.orekhov.notificationsservice.service;
 
+import net.orekhov.notificationsservice.event.DomainEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -14,7 +15,7 @@ import org.springframework.stereotype.Service;
 public class NotificationsService {
 
     private static final Logger logger = LoggerFactory.getLogger(NotificationsService.class);
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, DomainEvent> kafkaTemplate;
 
     /**
      * Конструктор для инициализации сервиса с передачей KafkaTemplate.
@@ -22,7 +23,7 @@ public class NotificationsService {
      *
      * @param kafkaTemplate Шаблон Kafka для отправки сообщений.
      */
-    public NotificationsService(KafkaTemplate<String, String> kafkaTemplate) {
+    public NotificationsService(KafkaTemplate<String, DomainEvent> kafkaTemplate) {
         this.kafkaTemplate = kafkaTemplate;
     }
 
@@ -30,10 +31,10 @@ public class NotificationsService {
      * Метод, который слушает сообщения на Kafka топике "orders".
      * Этот метод будет автоматически вызван, когда появится новое сообщение в топике.
      *
-     * @param message Сообщение, полученное из Kafka.
+     * @param message Событие, полученное из Kafka.
      */
     @KafkaListener(topics = "orders", groupId = "notifications-group")
-    public void listen(String message) {
+    public void listen(DomainEvent message) {
         // Логируем сообщение, полученное из Kafka
         logger.info("Received order notification: {}", message);
 
@@ -46,9 +47,9 @@ public class NotificationsService {
      * Приватный метод для отправки уведомления пользователю.
      * Здесь можно интегрировать различные способы отправки уведомлений, такие как email, SMS и другие.
      *
-     * @param message Сообщение для отправки пользователю.
+     * @param message Событие, о котором нужно уведомить пользователя.
      */
-    private void sendNotificationToUser(String message) {
+    private void sendNotificationToUser(DomainEvent message) {
         // Логируем процесс отправки уведомления
         logger.info("Sending notification to user: {}", message);
 
@@ -0,0 +1,60 @@
+package net.orekhov.ordersservice.config;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Партиционер на основе консистентного хеширования (jump consistent hash).
+ * Сообщения с одинаковым ключом всегда попадают в одну партицию, а при увеличении числа партиций
+ * перемещается лишь минимально необходимая доля ключей (примерно 1/n), а не почти все, как при hash % n.
+ * Сообщения без ключа распределяются по доступным партициям по кругу.
+ */
+public class ConsistentHashPartitioner implements Partitioner {
+
+    private final AtomicInteger counter = new AtomicInteger(); // Счётчик для сообщений без ключа
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numPartitions = cluster.partitionCountForTopic(topic);
+        if (keyBytes == null) {
+            List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+            int next = Utils.toPositive(counter.getAndIncrement());
+            return available.isEmpty()
+                    ? next % numPartitions
+                    : available.get(next % available.size()).partition();
+        }
+        return jumpHash(Utils.murmur2(keyBytes) & 0xFFFFFFFFL, numPartitions);
+    }
+
+    /**
+     * Jump consistent hash (Lamping, Veach): отображает ключ на номер корзины в диапазоне [0, buckets).
+     *
+     * @param key     Хеш ключа
+     * @param buckets Количество корзин (партиций)
+     * @return Номер корзины
+     */
+    static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
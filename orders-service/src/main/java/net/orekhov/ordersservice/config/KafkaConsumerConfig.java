@@ -0,0 +1,147 @@
+package net.orekhov.ordersservice.config;
+
+import net.orekhov.ordersservice.event.DomainEvent;
+import net.orekhov.ordersservice.event.EventDeserializer;
+import net.orekhov.ordersservice.event.OrderEvent;
+import net.orekhov.ordersservice.service.OrderViewStore;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.TopicPartitionOffset;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Конфигурация потребителя Kafka для сервиса заказов.
+ * Потребитель читает topic "orders" и строит материализованное представление заказов в памяти.
+ */
+@Configuration
+@EnableKafka
+public class KafkaConsumerConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerConfig.class); // Логгер для конфигурации
+    private final String bootstrapServers = "INSIDE-KAFKA:9092"; // Адрес Kafka сервера, тот же, что у продюсера
+
+    @Autowired
+    private SimpleAsyncTaskExecutorBuilder taskExecutorBuilder; // Потоки потребителей; виртуальные, если включён spring.threads.virtual.enabled
+
+    @Value("${orders.view.partitions:3}")
+    private int fallbackPartitions; // Количество партиций topic "orders", если брокер недоступен при запуске
+
+    /**
+     * Конфигурация для Kafka Consumer представления заказов.
+     * Потребитель не входит в группу: каждый экземпляр сервиса сам назначает себе все партиции topic
+     * и не фиксирует смещения, поэтому на брокере не остаётся групп, а представление всегда строится с начала topic.
+     *
+     * @return Карта с настройками для Consumer.
+     */
+    @Bean
+    public Map<String, Object> consumerConfigs() {
+        logger.info("Configuring order view consumer with bootstrap servers: {}", bootstrapServers);
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers); // Адрес Kafka сервера
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class); // Десериализатор ключей
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, EventDeserializer.class); // Десериализатор событий
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"); // Представление строится с начала topic
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false); // Смещения не фиксируются
+        return props;
+    }
+
+    /**
+     * Создает ConsumerFactory для Kafka Consumer представления заказов.
+     *
+     * @return ConsumerFactory для создания потребителей Kafka
+     */
+    @Bean
+    public ConsumerFactory<String, DomainEvent> consumerFactory() {
+        logger.info("Creating Kafka ConsumerFactory for order view");
+        return new DefaultKafkaConsumerFactory<>(consumerConfigs());
+    }
+
+    /**
+     * Создает контейнер, который читает все партиции topic "orders" с начала и применяет события
+     * к представлению заказов. Партиции назначаются вручную (assign), без группы потребителей.
+     *
+     * @param orderViewStore Материализованное представление заказов
+     * @return MessageListenerContainer для topic "orders"
+     */
+    @Bean
+    public MessageListenerContainer orderViewContainer(OrderViewStore orderViewStore) {
+        int partitions = ordersPartitionCount();
+        logger.info("Creating order view listener container for {} partitions of topic: orders", partitions);
+        TopicPartitionOffset[] assignment = new TopicPartitionOffset[partitions];
+        for (int i = 0; i < partitions; i++) {
+            assignment[i] = new TopicPartitionOffset("orders", i, TopicPartitionOffset.SeekPosition.BEGINNING);
+        }
+        ContainerProperties containerProps = new ContainerProperties(assignment);
+        containerProps.setMessageListener(new OrderViewListener(orderViewStore));
+        containerProps.setAckMode(ContainerProperties.AckMode.MANUAL); // Смещения не подтверждаются
+        containerProps.setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("orders-view-consumer-").build());
+
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
+                new ConcurrentMessageListenerContainer<>(consumerFactory(), containerProps);
+        container.setConcurrency(Math.min(3, partitions));
+        return container;
+    }
+
+    /**
+     * Количество партиций topic "orders" по метаданным брокера.
+     * Если метаданные получить не удалось, используется orders.view.partitions.
+     *
+     * @return Количество партиций
+     */
+    private int ordersPartitionCount() {
+        try (Consumer<String, DomainEvent> consumer = consumerFactory().createConsumer()) {
+            List<PartitionInfo> partitions = consumer.partitionsFor("orders", Duration.ofSeconds(10));
+            if (partitions != null && !partitions.isEmpty()) {
+                return partitions.size();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read partitions of topic 'orders': {}", e.getMessage());
+        }
+        logger.warn("Using orders.view.partitions={} for topic 'orders'", fallbackPartitions);
+        return fallbackPartitions;
+    }
+
+    /**
+     * Слушатель, применяющий события заказов к представлению.
+     */
+    private static class OrderViewListener implements MessageListener<String, DomainEvent> {
+
+        private static final Logger logger = LoggerFactory.getLogger(OrderViewListener.class); // Логгер для слушателя
+
+        private final OrderViewStore orderViewStore; // Представление заказов
+
+        OrderViewListener(OrderViewStore orderViewStore) {
+            this.orderViewStore = orderViewStore;
+        }
+
+        @Override
+        public void onMessage(ConsumerRecord<String, DomainEvent> record) {
+            if (record.value() instanceof OrderEvent orderEvent) {
+                orderViewStore.apply(orderEvent);
+            } else {
+                logger.debug("Skipping non-order event in topic 'orders': {}", record.value());
+            }
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package net.orekhov.ordersservice.config;
 
+import net.orekhov.ordersservice.event.EventSerializer;
+import net.orekhov.ordersservice.event.OrderEvent;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
@@ -22,6 +25,14 @@ public class KafkaProducerConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaProducerConfig.class);
 
+    // Класс партиционера для topic "orders". По умолчанию — консистентное хеширование по ключу.
+    @Value("${orders.kafka.partitioner:net.orekhov.ordersservice.config.ConsistentHashPartitioner}")
+    private String partitionerClass;
+
+    // Поле заказа, используемое как ключ сообщения ("customerId" или "orderId")
+    @Value("${orders.kafka.partition-key:customerId}")
+    private String partitionKey;
+
     /**
      * Создание и настройка KafkaTemplate, который используется для отправки сообщений в Kafka.
      * KafkaTemplate использует ProducerFactory для создания продюсера.
@@ -29,22 +40,35 @@ public class KafkaProducerConfig {
      * @return Конфигурированный экземпляр KafkaTemplate.
      */
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
+    public KafkaTemplate<String, OrderEvent> kafkaTemplate() {
         logger.info("Creating KafkaTemplate...");
-        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(producerFactory());
+        KafkaTemplate<String, OrderEvent> kafkaTemplate = new KafkaTemplate<>(producerFactory());
         logger.info("KafkaTemplate created successfully.");
         return kafkaTemplate;
     }
 
+    /**
+     * Стратегия выбора ключа сообщения для заказов.
+     * Ключ определяет партицию и тем самым порядок событий в пределах клиента или заказа.
+     *
+     * @return Стратегия выбора ключа.
+     */
+    @Bean
+    public PartitionKey partitionKey() {
+        PartitionKey key = PartitionKey.fromProperty(partitionKey);
+        logger.info("Orders are keyed by {}", key);
+        return key;
+    }
+
     /**
      * Создание ProducerFactory, который используется для создания Kafka продюсера.
      * ProducerFactory настраивается с помощью параметров конфигурации.
      *
      * @return Конфигурированный экземпляр ProducerFactory.
      */
-    private ProducerFactory<String, String> producerFactory() {
+    private ProducerFactory<String, OrderEvent> producerFactory() {
         logger.info("Creating ProducerFactory...");
-        ProducerFactory<String, String> producerFactory = new DefaultKafkaProducerFactory<>(producerConfigs());
+        ProducerFactory<String, OrderEvent> producerFactory = new DefaultKafkaProducerFactory<>(producerConfigs());
         logger.info("ProducerFactory created successfully.");
         return producerFactory;
     }
@@ -63,10 +87,10 @@ public class KafkaProducerConfig {
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "INSIDE-KAFKA:9092"); // Укажите адрес вашего Kafka сервера
         logger.debug("Bootstrap server: INSIDE-KAFKA:9092");
 
-        // Сериализаторы для ключей и значений сообщений. В данном случае используем StringSerializer.
+        // Сериализаторы для ключей и значений сообщений. Ключи — строки, значения — события в компактном бинарном формате.
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class); // Сериализатор для ключей
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class); // Сериализатор для значений
-        logger.debug("Using StringSerializer for both key and value.");
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EventSerializer.class); // Сериализатор для значений
+        logger.debug("Using StringSerializer for keys and EventSerializer for values.");
 
         // Параметры подтверждения. "all" гарантирует, что сообщение будет подтверждено всеми брокерами.
         props.put(ProducerConfig.ACKS_CONFIG, "all"); // Подтверждение от всех брокеров
@@ -76,6 +100,20 @@ public class KafkaProducerConfig {
         props.put(ProducerConfig.RETRIES_CONFIG, 3); // Количество попыток при ошибке
         logger.debug("Retries set to 3.");
 
+        // Идемпотентный продюсер: повторные попытки отправки не создают дубликатов в партиции.
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true); // Включение идемпотентности
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5); // Не более 5 для сохранения порядка
+        logger.debug("Idempotence enabled.");
+
+        // Партиционер, определяющий партицию по ключу сообщения.
+        props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, partitionerClass); // Класс партиционера
+        logger.debug("Partitioner set to {}.", partitionerClass);
+
+        // Максимальное время блокировки send() при получении метаданных или заполненном буфере.
+        // Отправка вызывается из потоков обработки HTTP-запросов, поэтому ожидание должно быть коротким.
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, 1000); // Максимальное время блокировки send()
+        logger.debug("Max block set to 1000 ms.");
+
         logger.info("Producer configurations set successfully.");
         return props;
     }
@@ -0,0 +1,57 @@
+package net.orekhov.ordersservice.config;
+
+import net.orekhov.ordersservice.event.OrderEvent;
+
+/**
+ * Стратегия выбора ключа сообщения для topic "orders".
+ * Сообщения с одинаковым ключом попадают в одну партицию, поэтому порядок событий сохраняется
+ * в пределах ключа, а потребители могут хранить состояние локально для своей партиции.
+ */
+public enum PartitionKey {
+
+    /**
+     * Ключ — идентификатор клиента. Все заказы клиента упорядочены и попадают в одну партицию.
+     * Если идентификатор клиента не указан, используется идентификатор заказа.
+     */
+    CUSTOMER_ID {
+        @Override
+        public String keyOf(OrderEvent orderEvent) {
+            return orderEvent.getCustomerId() != null ? orderEvent.getCustomerId() : orderEvent.getOrderId();
+        }
+    },
+
+    /**
+     * Ключ — идентификатор заказа. Упорядочены события одного заказа, заказы клиента распределяются по партициям.
+     */
+    ORDER_ID {
+        @Override
+        public String keyOf(OrderEvent orderEvent) {
+            return orderEvent.getOrderId();
+        }
+    };
+
+    /**
+     * Получить ключ сообщения для события заказа.
+     *
+     * @param orderEvent Событие заказа
+     * @return Ключ сообщения
+     */
+    public abstract String keyOf(OrderEvent orderEvent);
+
+    /**
+     * Найти стратегию по значению свойства (например, "customerId" или "orderId").
+     *
+     * @param value Значение свойства
+     * @return Стратегия выбора ключа
+     * @throws IllegalArgumentException если значение неизвестно
+     */
+    public static PartitionKey fromProperty(String value) {
+        String normalized = value.replace("-", "").replace("_", "");
+        for (PartitionKey key : values()) {
+            if (key.name().replace("_", "").equalsIgnoreCase(normalized)) {
+                return key;
+            }
+        }
+        throw new IllegalArgumentException("Unknown partition key: " + value);
+    }
+}
@@ -1,12 +1,27 @@
 package net.orekhov.ordersservice.controller;
 
+import net.orekhov.ordersservice.event.OrderEvent;
+import net.orekhov.ordersservice.model.BatchResult;
+import net.orekhov.ordersservice.model.GroupCommitStats;
 import net.orekhov.ordersservice.model.Order;
+import net.orekhov.ordersservice.service.AdmissionDecision;
+import net.orekhov.ordersservice.service.OrderAdmissionControl;
+import net.orekhov.ordersservice.service.OrderBatchService;
+import net.orekhov.ordersservice.service.OrderGroupCommitter;
 import net.orekhov.ordersservice.service.OrderService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Контроллер для обработки запросов, связанных с заказами.
  * Этот контроллер предоставляет API для создания заказов и получения статуса заказов.
@@ -17,53 +32,177 @@ public class OrderController {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderController.class);
     private final OrderService orderService;
+    private final OrderBatchService orderBatchService;
+    private final OrderGroupCommitter groupCommitter;
+    private final OrderAdmissionControl admissionControl;
 
     /**
-     * Конструктор для внедрения зависимостей (OrderService).
+     * Конструктор для внедрения зависимостей.
      *
-     * @param orderService Сервис для обработки логики заказов.
+     * @param orderService      Сервис для обработки логики заказов.
+     * @param orderBatchService Сервис для пакетной загрузки заказов.
+     * @param groupCommitter    Групповая отправка заказов.
+     * @param admissionControl  Контроль допуска запросов.
      */
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, OrderBatchService orderBatchService,
+                           OrderGroupCommitter groupCommitter, OrderAdmissionControl admissionControl) {
         this.orderService = orderService;
+        this.orderBatchService = orderBatchService;
+        this.groupCommitter = groupCommitter;
+        this.admissionControl = admissionControl;
     }
 
     /**
      * Обработчик POST запроса для создания нового заказа.
-     * Принимает объект заказа в теле запроса, вызывает сервис для его создания и отправки в Kafka.
+     * Принимает объект заказа в теле запроса и асинхронно отправляет его в Kafka.
+     * Поток обработки запроса освобождается сразу, ответ формируется после подтверждения брокером
+     * (или, в режиме outbox, после сохранения заказа в локальном журнале).
+     *
+     * Повторный запрос с тем же заголовком Idempotency-Key (или тем же orderId) в пределах окна дедупликации
+     * получает тот же ответ без повторной отправки заказа.
      *
-     * @param order Объект заказа, который будет создан.
-     * @return Ответ с сообщением, подтверждающим создание заказа и его отправку в Kafka.
+     * @param order          Объект заказа, который будет создан.
+     * @param idempotencyKey Ключ идемпотентности из заголовка Idempotency-Key (необязательный).
+     * @return Ответ 202 (ACCEPTED) с партицией и смещением записи после подтверждения Kafka
+     *         (или с позицией в журнале outbox),
+     *         429 (TOO MANY REQUESTS) с заголовком Retry-After, если клиент превысил лимит или сервис перегружен,
+     *         503 (SERVICE UNAVAILABLE), если превышен лимит неподтверждённых отправок,
+     *         или 500 (INTERNAL SERVER ERROR), если отправка не удалась.
      */
     @PostMapping("/create")
-    public ResponseEntity<String> createOrder(@RequestBody Order order) {
+    public CompletableFuture<ResponseEntity<String>> createOrder(
+            @RequestBody Order order,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         logger.info("Creating order with ID: {}", order.getOrderId());
 
-        // Вызов метода сервиса для создания заказа
-        orderService.createOrder(order);
+        // Проверяем лимит клиента и общую нагрузку до обращения к продюсеру
+        AdmissionDecision decision = admissionControl.admit(order.getCustomerId());
+        if (!decision.isAdmitted()) {
+            logger.warn("Order with ID: {} rejected: {}", order.getOrderId(), decision.getReason());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(decision.getRetryAfterSeconds()))
+                    .body(decision.getReason()));
+        }
+
+        // Вызов метода сервиса для создания заказа, ответ формируется после подтверждения Kafka
+        return orderService.createOrder(order, idempotencyKey)
+                .thenApply(receipt -> {
+                    if (!receipt.isAcknowledgedByKafka()) {
+                        logger.info("Order with ID: {} stored in outbox.", order.getOrderId());
+
+                        // Возвращаем ответ с позицией записи в локальном журнале
+                        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                                .body("Order accepted into outbox: " + order.getOrderId() +
+                                        ", position: " + receipt.getOutboxPosition());
+                    }
+                    logger.info("Order with ID: {} acknowledged by Kafka.", order.getOrderId());
+
+                    // Возвращаем ответ с партицией и смещением записи
+                    return ResponseEntity.status(HttpStatus.ACCEPTED)
+                            .body("Order accepted by Kafka: " + order.getOrderId() +
+                                    ", partition: " + receipt.getPartition() +
+                                    ", offset: " + receipt.getOffset());
+                })
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof RejectedExecutionException) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .body("Order rejected, too many pending sends: " + order.getOrderId());
+                    }
+                    logger.error("Failed to send order with ID: {} to Kafka", order.getOrderId(), cause);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body("Failed to send order to Kafka: " + order.getOrderId());
+                });
+    }
+
+    /**
+     * Обработчик POST запроса для пакетной загрузки заказов.
+     * Принимает тело в формате NDJSON (один JSON-объект заказа на строку) и читает его потоково,
+     * не загружая целиком в память. Контроль допуска пакет проходит один раз, как запрос без клиента;
+     * каждый заказ проходит дедупликацию, как одиночный запрос. Загрузка выполняется вне потока обработки запроса.
+     *
+     * @param body Поток с телом запроса.
+     * @return Ответ с итогом загрузки: количество принятых и отклонённых строк и ошибки по номерам строк,
+     *         429 (TOO MANY REQUESTS) с заголовком Retry-After, если пакет не прошёл контроль допуска,
+     *         503 (SERVICE UNAVAILABLE), если загружается слишком много пакетов одновременно,
+     *         или 500 (INTERNAL SERVER ERROR), если не удалось прочитать тело запроса.
+     */
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<BatchResult>> createOrders(InputStream body) {
+        logger.info("Received batch of orders");
+
+        AdmissionDecision decision = admissionControl.admit(null);
+        if (!decision.isAdmitted()) {
+            logger.warn("Batch of orders rejected: {}", decision.getReason());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(decision.getRetryAfterSeconds()))
+                    .<BatchResult>build());
+        }
 
-        logger.info("Order with ID: {} created and sent to Kafka.", order.getOrderId());
+        return orderBatchService.ingestAsync(body)
+                .thenApply(result -> {
+                    logger.info("Batch processed: {} accepted, {} failed", result.getAccepted(), result.getFailed());
+                    return ResponseEntity.ok(result);
+                })
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof RejectedExecutionException) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).<BatchResult>build();
+                    }
+                    logger.error("Failed to process batch of orders", cause);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<BatchResult>build();
+                });
+    }
 
-        // Возвращаем ответ с сообщением о успешном создании заказа
-        return ResponseEntity.ok("Order created and sent to Kafka: " + order.getOrderId());
+    /**
+     * Обработчик GET запроса для получения метрик режима group commit.
+     *
+     * @return Ответ с количеством пакетов, средним и максимальным размером пакета и гистограммой размеров.
+     */
+    @GetMapping("/group-commit/stats")
+    public ResponseEntity<GroupCommitStats> getGroupCommitStats() {
+        return ResponseEntity.ok(groupCommitter.getStats());
     }
 
     /**
      * Обработчик GET запроса для получения статуса заказа по его ID.
+     * Статус читается из материализованного представления заказов в памяти.
      *
      * @param orderId Идентификатор заказа, статус которого нужно получить.
-     * @return Ответ с текущим статусом заказа.
+     * @return Ответ с текущим статусом заказа или статусом NOT_FOUND (404), если заказ неизвестен.
      */
     @GetMapping("/{orderId}")
     public ResponseEntity<String> getOrderStatus(@PathVariable String orderId) {
-        logger.info("Fetching status for order with ID: {}", orderId);
+        logger.debug("Fetching status for order with ID: {}", orderId);
 
         // Получаем данные о заказе через сервис
-        Order order = orderService.getOrderDetails(orderId);
-
-        logger.info("Order ID: {} has status: {}", orderId, order.getStatus());
+        Optional<OrderEvent> order = orderService.getOrderDetails(orderId);
 
         // Возвращаем ответ с статусом заказа
-        return ResponseEntity.ok("Order Status: " + order.getStatus());
+        return order.map(o -> ResponseEntity.ok("Order Status: " + o.getStatus()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body("Order not found: " + orderId));
+    }
+
+    /**
+     * Обработчик PUT запроса для обновления статуса заказа.
+     * Ответ формируется после подтверждения события изменения статуса брокером.
+     *
+     * @param orderId Идентификатор заказа.
+     * @param status  Новый статус заказа.
+     * @return Ответ 200 (OK) после подтверждения Kafka, NOT_FOUND (404), если заказ неизвестен,
+     *         или 500 (INTERNAL SERVER ERROR), если отправка не удалась.
+     */
+    @PutMapping("/{orderId}/status")
+    public CompletableFuture<ResponseEntity<String>> updateOrderStatus(@PathVariable String orderId,
+                                                                      @RequestParam String status) {
+        logger.info("Updating status for order with ID: {} to {}", orderId, status);
+
+        return orderService.updateOrderStatus(orderId, status)
+                .thenApply(found -> found
+                        ? ResponseEntity.ok("Order status updated: " + orderId)
+                        : ResponseEntity.status(HttpStatus.NOT_FOUND).body("Order not found: " + orderId))
+                .exceptionally(ex -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body("Failed to send order status update to Kafka: " + orderId));
     }
 
     // В будущем можно добавлять дополнительные эндпоинты, например, для обновления заказа
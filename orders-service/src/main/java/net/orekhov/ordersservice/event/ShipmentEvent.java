@@ -0,0 +1,86 @@
+package net.orekhov.ordersservice.event;
+
+import java.time.LocalDate;
+
+/**
+ * Событие отправки.
+ * Содержит данные об отправке: номер отслеживания, метод доставки, статус и даты.
+ */
+public final class ShipmentEvent extends DomainEvent {
+
+    private final long shipmentId; // Идентификатор отправки
+    private final String orderId; // Идентификатор заказа
+    private final String trackingNumber; // Номер отслеживания
+    private final String shippingMethod; // Метод доставки
+    private final String status; // Статус отправки
+    private final LocalDate shippingDate; // Дата отправки
+    private final LocalDate deliveryDate; // Дата доставки
+
+    /**
+     * Конструктор события отправки.
+     *
+     * @param shipmentId     Идентификатор отправки
+     * @param orderId        Идентификатор заказа
+     * @param trackingNumber Номер отслеживания
+     * @param shippingMethod Метод доставки
+     * @param status         Статус отправки
+     * @param shippingDate   Дата отправки
+     * @param deliveryDate   Дата доставки
+     */
+    public ShipmentEvent(long shipmentId, String orderId, String trackingNumber, String shippingMethod,
+                         String status, LocalDate shippingDate, LocalDate deliveryDate) {
+        this.shipmentId = shipmentId;
+        this.orderId = orderId;
+        this.trackingNumber = trackingNumber;
+        this.shippingMethod = shippingMethod;
+        this.status = status;
+        this.shippingDate = shippingDate;
+        this.deliveryDate = deliveryDate;
+    }
+
+    @Override
+    public EventType getType() {
+        return EventType.SHIPMENT;
+    }
+
+    public long getShipmentId() {
+        return shipmentId;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getTrackingNumber() {
+        return trackingNumber;
+    }
+
+    public String getShippingMethod() {
+        return shippingMethod;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public LocalDate getShippingDate() {
+        return shippingDate;
+    }
+
+    public LocalDate getDeliveryDate() {
+        return deliveryDate;
+    }
+
+    @Override
+    public String toString() {
+        return "ShipmentEvent{" +
+                "shipmentId=" + shipmentId +
+                ", orderId='" + orderId + '\'' +
+                ", trackingNumber='" + trackingNumber + '\'' +
+                ", shippingMethod='" + shippingMethod + '\'' +
+                ", status='" + status + '\'' +
+                ", shippingDate=" + shippingDate +
+                ", deliveryDate=" + deliveryDate +
+                '}';
+    }
+}
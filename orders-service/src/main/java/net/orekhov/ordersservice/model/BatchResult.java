@@ -0,0 +1,81 @@
+package net.orekhov.ordersservice.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог пакетной загрузки заказов.
+ * Содержит количество обработанных, принятых и отклонённых строк, а также описание ошибок по номерам строк.
+ */
+public class BatchResult {
+
+    private int total; // Количество обработанных строк
+    private int accepted; // Количество заказов, подтверждённых Kafka
+    private int failed; // Количество строк, которые не удалось разобрать или отправить
+    private final List<LineError> errors = new ArrayList<>(); // Ошибки по номерам строк
+
+    /**
+     * Отметить строку как успешно принятую.
+     */
+    public void addAccepted() {
+        total++;
+        accepted++;
+    }
+
+    /**
+     * Отметить строку как отклонённую.
+     *
+     * @param line    Номер строки (начиная с 1)
+     * @param orderId Идентификатор заказа, если его удалось прочитать
+     * @param error   Описание ошибки
+     */
+    public void addFailed(long line, String orderId, String error) {
+        total++;
+        failed++;
+        errors.add(new LineError(line, orderId, error));
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<LineError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Ошибка обработки одной строки пакета.
+     */
+    public static class LineError {
+
+        private final long line; // Номер строки
+        private final String orderId; // Идентификатор заказа
+        private final String error; // Описание ошибки
+
+        public LineError(long line, String orderId, String error) {
+            this.line = line;
+            this.orderId = orderId;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package net.orekhov.ordersservice.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики режима group commit: количество пакетов и заказов, максимальный размер пакета
+ * и гистограмма размеров пакетов.
+ */
+public class GroupCommitStats {
+
+    private static final int[] BUCKET_BOUNDS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512}; // Верхние границы корзин гистограммы
+
+    private final LongAdder batches = new LongAdder(); // Количество отправленных пакетов
+    private final LongAdder orders = new LongAdder(); // Количество заказов во всех пакетах
+    private final AtomicLong maxBatchSize = new AtomicLong(); // Максимальный размер пакета
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1); // Гистограмма размеров пакетов
+
+    /**
+     * Учесть отправленный пакет.
+     *
+     * @param size Количество заказов в пакете
+     */
+    public void record(int size) {
+        batches.increment();
+        orders.add(size);
+        maxBatchSize.accumulateAndGet(size, Math::max);
+
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && size > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getOrders() {
+        return orders.sum();
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * Средний размер пакета.
+     *
+     * @return Средний размер пакета или 0, если пакетов ещё не было
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) orders.sum() / count;
+    }
+
+    /**
+     * Гистограмма размеров пакетов: ключ — верхняя граница корзины ("le"), значение — количество пакетов.
+     *
+     * @return Гистограмма размеров пакетов
+     */
+    public Map<String, Long> getBatchSizeHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            histogram.put("le_" + BUCKET_BOUNDS[i], buckets.get(i));
+        }
+        histogram.put("le_inf", buckets.get(BUCKET_BOUNDS.length));
+        return histogram;
+    }
+}
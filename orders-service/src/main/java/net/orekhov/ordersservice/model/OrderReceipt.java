@@ -0,0 +1,69 @@
+package net.orekhov.ordersservice.model;
+
+/**
+ * Подтверждение приёма заказа.
+ * Заказ принят либо брокером Kafka (известны партиция и смещение), либо локальным outbox
+ * (известна позиция в журнале, отправка в Kafka произойдёт позже).
+ */
+public class OrderReceipt {
+
+    private final String orderId; // Идентификатор заказа
+    private final Integer partition; // Партиция Kafka, если заказ подтверждён брокером
+    private final Long offset; // Смещение в партиции, если заказ подтверждён брокером
+    private final Long outboxPosition; // Позиция в журнале outbox, если заказ записан в outbox
+
+    private OrderReceipt(String orderId, Integer partition, Long offset, Long outboxPosition) {
+        this.orderId = orderId;
+        this.partition = partition;
+        this.offset = offset;
+        this.outboxPosition = outboxPosition;
+    }
+
+    /**
+     * Подтверждение от брокера Kafka.
+     *
+     * @param orderId   Идентификатор заказа
+     * @param partition Партиция Kafka
+     * @param offset    Смещение в партиции
+     * @return Подтверждение приёма заказа
+     */
+    public static OrderReceipt acknowledged(String orderId, int partition, long offset) {
+        return new OrderReceipt(orderId, partition, offset, null);
+    }
+
+    /**
+     * Подтверждение записи в локальный outbox.
+     *
+     * @param orderId        Идентификатор заказа
+     * @param outboxPosition Позиция в журнале outbox
+     * @return Подтверждение приёма заказа
+     */
+    public static OrderReceipt journaled(String orderId, long outboxPosition) {
+        return new OrderReceipt(orderId, null, null, outboxPosition);
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public Integer getPartition() {
+        return partition;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+
+    public Long getOutboxPosition() {
+        return outboxPosition;
+    }
+
+    /**
+     * Принят ли заказ брокером Kafka (а не только локальным outbox).
+     *
+     * @return true, если известны партиция и смещение
+     */
+    public boolean isAcknowledgedByKafka() {
+        return partition != null;
+    }
+}
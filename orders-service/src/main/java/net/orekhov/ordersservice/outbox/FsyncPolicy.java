@@ -0,0 +1,25 @@
+package net.orekhov.ordersservice.outbox;
+
+/**
+ * Политика сброса журнала outbox на диск.
+ * Определяет, когда запись считается надёжно сохранённой и createOrder может вернуть ответ.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Запись подтверждается после fsync. Фоновый поток выполняет fsync сразу, как только появляются
+     * новые записи, поэтому параллельные запросы разделяют один fsync (group fsync).
+     */
+    ALWAYS,
+
+    /**
+     * Запись подтверждается сразу после записи в отображённую память, а фоновый поток выполняет fsync
+     * раз в orders.outbox.fsync-interval-ms. При сбое ОС теряются записи не более чем за последний интервал.
+     */
+    INTERVAL,
+
+    /**
+     * Запись подтверждается сразу после записи в отображённую память; сброс на диск выполняет ОС.
+     */
+    NONE
+}
@@ -0,0 +1,431 @@
+package net.orekhov.ordersservice.outbox;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.orekhov.ordersservice.event.DomainEvent;
+import net.orekhov.ordersservice.event.EventCodec;
+import net.orekhov.ordersservice.event.EventHeaders;
+import net.orekhov.ordersservice.event.OrderEvent;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RetriableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Локальный outbox для заказов.
+ * createOrder записывает событие в журнал {@link OutboxJournal} и получает подтверждение после выполнения
+ * политики fsync, не дожидаясь Kafka. Фоновый поток ретрансляции читает журнал большими пакетами,
+ * отправляет их в Kafka и сохраняет контрольную точку после подтверждения всего пакета.
+ * Режим включается свойством orders.outbox.enabled.
+ *
+ * Доставка в Kafka — "как минимум один раз": при сбое между отправкой и сохранением
+ * контрольной точки пакет будет отправлен повторно.
+ *
+ * Запись, которую не удалось декодировать или которую Kafka отклонила неповторяемой ошибкой, а также запись,
+ * не отправленная за orders.outbox.relay-max-attempts попыток, переносится в файл dead-letters в каталоге журнала
+ * (в формате [длина int][запись журнала]) и пропускается, чтобы не блокировать записи за ней.
+ */
+@Component
+public class OrderOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderOutbox.class); // Логгер для outbox
+
+    private static final short TIMESTAMPED = -1; // Признак записи с временем приёма заказа
+
+    private final KafkaTemplate<String, OrderEvent> kafkaTemplate; // KafkaTemplate для ретрансляции в Kafka
+    private final boolean enabled; // Включён ли режим outbox
+    private final Path directory; // Каталог журнала
+    private final int segmentSize; // Размер сегмента журнала
+    private final FsyncPolicy fsyncPolicy; // Политика fsync
+    private final long fsyncIntervalMillis; // Интервал fsync для политики INTERVAL
+    private final int relayBatchSize; // Максимальный размер пакета ретрансляции
+    private final int relayMaxAttempts; // Количество попыток отправки записи до переноса в dead-letters
+
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>(); // Записи, ожидающие fsync, в порядке позиций
+    private OutboxJournal journal; // Журнал outbox
+    private volatile long durablePosition; // Позиция, до которой журнал сброшен на диск
+    private volatile boolean running; // Флаг работы фоновых потоков
+    private Thread flusher; // Поток fsync
+    private Thread relay; // Поток ретрансляции в Kafka
+    private FileChannel deadLetters; // Файл записей, которые не удалось передать в Kafka (открывается при первой записи)
+
+    /**
+     * Конструктор для внедрения зависимостей и настроек.
+     *
+     * @param kafkaTemplate       KafkaTemplate для ретрансляции в Kafka
+     * @param enabled             Включён ли режим outbox
+     * @param directory           Каталог журнала
+     * @param segmentSizeMb       Размер сегмента журнала в мегабайтах
+     * @param fsyncPolicy         Политика fsync
+     * @param fsyncIntervalMillis Интервал fsync для политики INTERVAL
+     * @param relayBatchSize      Максимальный размер пакета ретрансляции
+     * @param relayMaxAttempts    Количество попыток отправки записи до переноса в dead-letters
+     */
+    public OrderOutbox(KafkaTemplate<String, OrderEvent> kafkaTemplate,
+                       @Value("${orders.outbox.enabled:false}") boolean enabled,
+                       @Value("${orders.outbox.dir:outbox}") String directory,
+                       @Value("${orders.outbox.segment-size-mb:64}") int segmentSizeMb,
+                       @Value("${orders.outbox.fsync:ALWAYS}") FsyncPolicy fsyncPolicy,
+                       @Value("${orders.outbox.fsync-interval-ms:5}") long fsyncIntervalMillis,
+                       @Value("${orders.outbox.relay-batch-size:1000}") int relayBatchSize,
+                       @Value("${orders.outbox.relay-max-attempts:20}") int relayMaxAttempts) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.relayBatchSize = relayBatchSize;
+        this.relayMaxAttempts = relayMaxAttempts;
+    }
+
+    /**
+     * Открывает журнал и запускает фоновые потоки, если режим outbox включён.
+     *
+     * @throws IOException если журнал не удалось открыть
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        journal = new OutboxJournal(directory, segmentSize);
+        durablePosition = journal.getWritePosition();
+        running = true;
+
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            flusher = new Thread(this::runFlusher, "order-outbox-fsync");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        relay = new Thread(this::runRelay, "order-outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+        logger.info("Order outbox enabled: dir {}, fsync {}, relay batch size {}", directory, fsyncPolicy, relayBatchSize);
+    }
+
+    /**
+     * Останавливает фоновые потоки. Записи, не переданные в Kafka, остаются в журнале до следующего запуска.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread thread : new Thread[]{flusher, relay}) {
+            if (thread != null) {
+                LockSupport.unpark(thread);
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        }
+        if (journal != null) {
+            journal.force(journal.getWritePosition());
+        }
+        if (deadLetters != null) {
+            try {
+                deadLetters.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close outbox dead letters", e);
+            }
+        }
+    }
+
+    /**
+     * Включён ли режим outbox.
+     *
+     * @return true, если заказы записываются в локальный журнал
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Записывает событие заказа в журнал.
+     *
+     * @param key        Ключ сообщения Kafka
+     * @param orderEvent Событие заказа
+     * @param producedAt Время приёма заказа, передаваемое в заголовке {@link EventHeaders#PRODUCED_AT}
+     * @return Future с позицией записи в журнале; при политике ALWAYS завершается после fsync,
+     *         при INTERVAL и NONE — сразу после записи в журнал
+     */
+    public CompletableFuture<Long> append(String key, OrderEvent orderEvent, long producedAt) {
+        byte[] payload = encode(key, orderEvent, producedAt);
+        if (fsyncPolicy != FsyncPolicy.ALWAYS) {
+            // Периодический fsync (INTERVAL) или сброс силами ОС (NONE): вызывающий не ждёт диска
+            return CompletableFuture.completedFuture(journal.append(payload));
+        }
+
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        synchronized (waiters) {
+            // Добавление в очередь под той же блокировкой сохраняет порядок позиций в очереди
+            waiters.add(new Waiter(journal.append(payload), result));
+        }
+        LockSupport.unpark(flusher);
+        return result;
+    }
+
+    /**
+     * Цикл потока fsync: сбрасывает новые записи на диск и подтверждает ожидающие запросы.
+     */
+    private void runFlusher() {
+        while (running || !waiters.isEmpty()) {
+            long target = journal.getWritePosition();
+            if (target > durablePosition) {
+                try {
+                    journal.force(target);
+                    durablePosition = target;
+                } catch (RuntimeException e) {
+                    logger.error("Outbox fsync failed", e);
+                    failWaiters(target, e);
+                    continue;
+                }
+                completeWaiters(target);
+            }
+
+            if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis));
+            } else if (journal.getWritePosition() <= durablePosition) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+        }
+    }
+
+    private void completeWaiters(long upTo) {
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null && waiter.position <= upTo) {
+            waiters.poll();
+            waiter.result.complete(waiter.position);
+        }
+    }
+
+    private void failWaiters(long upTo, Throwable error) {
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null && waiter.position <= upTo) {
+            waiters.poll();
+            waiter.result.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Цикл потока ретрансляции: читает сохранённые записи пакетами, отправляет их в Kafka
+     * и после подтверждения всего пакета сохраняет контрольную точку.
+     * Если часть записей пакета не отправлена из-за повторяемой ошибки, пакет отправляется повторно
+     * с растущей паузой; записи, уже подтверждённые Kafka или перенесённые в dead-letters, при повторе пропускаются,
+     * поэтому повтор не создаёт дубликатов в топике.
+     */
+    private void runRelay() {
+        long position;
+        try {
+            position = journal.readCheckpoint();
+        } catch (IOException e) {
+            logger.error("Failed to read outbox checkpoint, relay stopped", e);
+            return;
+        }
+
+        List<byte[]> batch = new ArrayList<>(relayBatchSize);
+        Set<Integer> skipped = new HashSet<>(); // Записи пакета с текущей позиции, уже перенесённые в dead-letters
+        Set<Integer> acked = new HashSet<>(); // Записи пакета с текущей позиции, уже подтверждённые Kafka
+        int attempts = 0; // Неудачные попытки отправки пакета с текущей позиции
+        while (running) {
+            long upTo = fsyncPolicy == FsyncPolicy.NONE ? journal.getWritePosition() : durablePosition;
+            long next = journal.read(position, upTo, relayBatchSize, batch);
+            if (batch.isEmpty()) {
+                position = next; // Пропускаем маркеры перехода между сегментами
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                continue;
+            }
+
+            try {
+                List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+                List<Integer> sent = new ArrayList<>(batch.size()); // Номера отправленных записей пакета
+                for (int i = 0; i < batch.size(); i++) {
+                    if (skipped.contains(i) || acked.contains(i)) {
+                        continue;
+                    }
+                    ProducerRecord<String, OrderEvent> record;
+                    try {
+                        record = decode(batch.get(i));
+                    } catch (RuntimeException e) {
+                        deadLetter(batch.get(i), "undecodable record", e);
+                        skipped.add(i);
+                        continue;
+                    }
+                    CompletableFuture<?> send;
+                    try {
+                        send = kafkaTemplate.send(record);
+                    } catch (RuntimeException e) {
+                        send = CompletableFuture.failedFuture(e);
+                    }
+                    sends.add(send);
+                    sent.add(i);
+                }
+                kafkaTemplate.flush();
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).exceptionally(ex -> null).join();
+
+                Throwable retryError = null;
+                boolean lastAttempt = attempts + 1 >= relayMaxAttempts;
+                for (int j = 0; j < sends.size(); j++) {
+                    Throwable error = failureOf(sends.get(j));
+                    if (error == null) {
+                        acked.add(sent.get(j));
+                        continue;
+                    }
+                    if (isRetriable(error) && !lastAttempt) {
+                        retryError = error;
+                    } else {
+                        int index = sent.get(j);
+                        deadLetter(batch.get(index), lastAttempt ? "relay attempts exhausted" : "rejected by Kafka", error);
+                        skipped.add(index);
+                    }
+                }
+
+                if (retryError != null) {
+                    // Пакет будет отправлен повторно с той же позиции, без подтверждённых записей и записей из dead-letters
+                    attempts++;
+                    long backoffMillis = Math.min(TimeUnit.SECONDS.toMillis(30), TimeUnit.SECONDS.toMillis(1L << Math.min(attempts - 1, 5)));
+                    logger.error("Outbox relay failed at position {} (attempt {} of {}), retrying in {} ms",
+                            position, attempts, relayMaxAttempts, backoffMillis, retryError);
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+                    continue;
+                }
+
+                journal.writeCheckpoint(next);
+                position = next;
+                attempts = 0;
+                skipped.clear();
+                acked.clear();
+                logger.debug("Relayed {} orders from outbox, checkpoint {}", sends.size(), next);
+            } catch (RuntimeException e) {
+                // Сбой сохранения контрольной точки или журнала: пакет будет отправлен повторно с той же позиции
+                logger.error("Outbox relay failed at position {}, retrying", position, e);
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Декодирует запись журнала в сообщение Kafka.
+     */
+    private ProducerRecord<String, OrderEvent> decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        short keyLength = buffer.getShort();
+        long producedAt = -1;
+        if (keyLength == TIMESTAMPED) {
+            producedAt = buffer.getLong();
+            keyLength = buffer.getShort();
+        }
+        byte[] key = new byte[keyLength & 0xFFFF];
+        buffer.get(key);
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        DomainEvent event = EventCodec.decode(value);
+        if (!(event instanceof OrderEvent orderEvent)) {
+            throw new IllegalArgumentException("Outbox record is not an order event: " + event);
+        }
+        ProducerRecord<String, OrderEvent> record = new ProducerRecord<>("orders",
+                key.length == 0 ? null : new String(key, StandardCharsets.UTF_8), orderEvent);
+        if (producedAt >= 0) {
+            record.headers().add(EventHeaders.PRODUCED_AT, EventHeaders.encodeTime(producedAt));
+        }
+        return record;
+    }
+
+    /**
+     * Переносит запись журнала в файл dead-letters.
+     *
+     * @throws UncheckedIOException если запись не удалось сохранить; контрольная точка тогда не сдвигается
+     */
+    private void deadLetter(byte[] payload, String reason, Throwable error) {
+        logger.error("Moving outbox record to dead letters: {}", reason, error);
+        try {
+            if (deadLetters == null) {
+                deadLetters = FileChannel.open(directory.resolve("dead-letters"),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + payload.length).putInt(payload.length).put(payload).flip();
+            while (buffer.hasRemaining()) {
+                deadLetters.write(buffer);
+            }
+            deadLetters.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write outbox dead letter", e);
+        }
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> future) {
+        if (!future.isCompletedExceptionally()) {
+            return null;
+        }
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static boolean isRetriable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetriableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Кодирует запись журнала: [-1 short][время приёма long][длина ключа short][ключ UTF-8][событие в бинарном формате].
+     * Записи прежнего формата начинаются сразу с длины ключа и читаются без времени приёма.
+     */
+    private byte[] encode(String key, OrderEvent orderEvent, long producedAt) {
+        byte[] keyBytes = key == null ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = EventCodec.encode(orderEvent);
+        return ByteBuffer.allocate(Short.BYTES + Long.BYTES + Short.BYTES + keyBytes.length + value.length)
+                .putShort(TIMESTAMPED)
+                .putLong(producedAt)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .put(value)
+                .array();
+    }
+
+    /**
+     * Запрос, ожидающий fsync своей записи.
+     */
+    private static class Waiter {
+
+        private final long position; // Позиция сразу после записи
+        private final CompletableFuture<Long> result; // Результат для вызывающего
+
+        Waiter(long position, CompletableFuture<Long> result) {
+            this.position = position;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package net.orekhov.ordersservice.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал outbox на отображённых в память файлах с ротацией сегментов.
+ *
+ * Позиция в журнале — сквозное смещение в байтах; сегмент с номером n хранит позиции
+ * [n * segmentSize, (n + 1) * segmentSize) и называется по своей начальной позиции.
+ * Формат записи: [длина int][CRC32 int][данные]. Длина 0 означает конец записанных данных,
+ * длина -1 — переход к следующему сегменту. Рядом с сегментами хранится файл контрольной точки
+ * с позицией, до которой записи уже переданы в Kafka.
+ *
+ * Запись выполняется одним потоком за раз, чтение — фоновым потоком ретрансляции.
+ */
+public class OutboxJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxJournal.class); // Логгер для журнала
+
+    private static final int HEADER_SIZE = 8; // Длина и CRC32 записи
+    private static final int ROLL_MARKER = -1; // Маркер перехода к следующему сегменту
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "relay.checkpoint";
+
+    private final Path directory; // Каталог журнала
+    private final int segmentSize; // Размер сегмента в байтах
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>(); // Отображённые сегменты по номеру
+
+    private long writePosition; // Позиция следующей записи (изменяется только под блокировкой записи)
+    private long forcedPosition; // Позиция, до которой журнал сброшен на диск
+
+    /**
+     * Открывает журнал и восстанавливает позицию записи после контрольной точки.
+     *
+     * @param directory   Каталог журнала
+     * @param segmentSize Размер сегмента в байтах
+     * @throws IOException если не удалось открыть или прочитать файлы журнала
+     */
+    public OutboxJournal(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * Добавляет запись в журнал.
+     *
+     * @param payload Данные записи
+     * @return Позиция сразу после записи
+     * @throws IllegalArgumentException если запись не помещается в сегмент
+     */
+    public synchronized long append(byte[] payload) {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Outbox record of " + payload.length + " bytes exceeds segment size");
+        }
+
+        int offset = offsetOf(writePosition);
+        if (segmentSize - offset < recordSize) {
+            // Запись не помещается в текущий сегмент: ставим маркер и переходим к следующему
+            if (segmentSize - offset >= Integer.BYTES) {
+                segment(segmentOf(writePosition)).putInt(offset, ROLL_MARKER);
+            }
+            writePosition = (segmentOf(writePosition) + 1) * segmentSize;
+            offset = 0;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        MappedByteBuffer buffer = segment(segmentOf(writePosition));
+        buffer.put(offset + HEADER_SIZE, payload);
+        buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(offset, payload.length); // Длина пишется последней, после неё запись считается полной
+
+        writePosition += recordSize;
+        return writePosition;
+    }
+
+    /**
+     * Текущая позиция записи.
+     *
+     * @return Позиция сразу после последней записи
+     */
+    public synchronized long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Сбрасывает на диск все сегменты, содержащие данные до указанной позиции.
+     *
+     * @param upTo Позиция, до которой данные должны быть сохранены
+     */
+    public void force(long upTo) {
+        long from;
+        synchronized (this) {
+            from = forcedPosition;
+        }
+        for (long index = segmentOf(from); index <= segmentOf(Math.max(upTo - 1, from)); index++) {
+            MappedByteBuffer buffer = segments.get(index);
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+        synchronized (this) {
+            forcedPosition = Math.max(forcedPosition, upTo);
+        }
+    }
+
+    /**
+     * Читает записи начиная с позиции from, но не дальше upTo.
+     *
+     * @param from       Позиция начала чтения
+     * @param upTo       Позиция, дальше которой читать нельзя
+     * @param maxRecords Максимальное количество записей
+     * @param out        Список, в который добавляются прочитанные записи
+     * @return Позиция сразу после последней прочитанной записи
+     */
+    public long read(long from, long upTo, int maxRecords, List<byte[]> out) {
+        long position = from;
+        int read = 0;
+        while (read < maxRecords && position < upTo) {
+            int offset = offsetOf(position);
+            if (segmentSize - offset < HEADER_SIZE) {
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            MappedByteBuffer buffer = segment(segmentOf(position));
+            int length = buffer.getInt(offset);
+            if (length == ROLL_MARKER) {
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            if (length <= 0) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            out.add(payload);
+            position += HEADER_SIZE + length;
+            read++;
+        }
+        return position;
+    }
+
+    /**
+     * Читает позицию контрольной точки ретрансляции.
+     *
+     * @return Позиция, до которой записи переданы в Kafka, или 0, если контрольной точки нет
+     * @throws IOException если файл контрольной точки не удалось прочитать
+     */
+    public long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(file, StandardCharsets.US_ASCII).trim());
+    }
+
+    /**
+     * Атомарно сохраняет контрольную точку и удаляет сегменты, полностью переданные в Kafka.
+     *
+     * @param position Позиция, до которой записи переданы в Kafka
+     */
+    public void writeCheckpoint(long position) {
+        try {
+            Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            Files.writeString(tmp, Long.toString(position), StandardCharsets.US_ASCII,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+            Files.move(tmp, directory.resolve(CHECKPOINT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write outbox checkpoint", e);
+        }
+
+        long activeSegment;
+        synchronized (this) {
+            activeSegment = segmentOf(writePosition);
+        }
+        long relayedSegment = segmentOf(position);
+        for (Long index : segments.keySet()) {
+            if (index < relayedSegment && index < activeSegment) {
+                segments.remove(index);
+                deleteSegmentFile(index);
+            }
+        }
+    }
+
+    /**
+     * Восстанавливает позицию записи: начиная с контрольной точки проходит по записям
+     * и останавливается на первой пустой или повреждённой записи.
+     */
+    private void recover() throws IOException {
+        long checkpoint = readCheckpoint();
+
+        // Удаляем сегменты, полностью переданные в Kafka до контрольной точки
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .map(p -> Long.parseLong(p.getFileName().toString().replace(SEGMENT_SUFFIX, "")) / segmentSize)
+                    .filter(index -> index < segmentOf(checkpoint))
+                    .forEach(this::deleteSegmentFile);
+        }
+
+        long position = checkpoint;
+        while (true) {
+            int offset = offsetOf(position);
+            if (segmentSize - offset < HEADER_SIZE) {
+                if (!Files.exists(segmentPath(segmentOf(position) + 1))) {
+                    break;
+                }
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            MappedByteBuffer buffer = segment(segmentOf(position));
+            int length = buffer.getInt(offset);
+            if (length == ROLL_MARKER && Files.exists(segmentPath(segmentOf(position) + 1))) {
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            if (length <= 0 || length > segmentSize - offset - HEADER_SIZE || !checksumMatches(buffer, offset, length)) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+
+        // Затираем хвост активного сегмента после последней целой записи (например, после обрыва записи)
+        MappedByteBuffer active = segment(segmentOf(position));
+        for (int i = offsetOf(position); i < segmentSize; i++) {
+            active.put(i, (byte) 0);
+        }
+        active.force();
+
+        writePosition = position;
+        forcedPosition = position;
+        logger.info("Outbox journal recovered: checkpoint {}, write position {}, {} bytes pending relay",
+                checkpoint, position, position - checkpoint);
+    }
+
+    private boolean checksumMatches(MappedByteBuffer buffer, int offset, int length) {
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES);
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments.computeIfAbsent(index, i -> {
+            try (FileChannel channel = FileChannel.open(segmentPath(i),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map outbox segment " + i, e);
+            }
+        });
+    }
+
+    private void deleteSegmentFile(long index) {
+        try {
+            Files.deleteIfExists(segmentPath(index));
+            logger.debug("Deleted relayed outbox segment {}", index);
+        } catch (IOException e) {
+            logger.warn("Failed to delete outbox segment {}", index, e);
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%020d%s", index * segmentSize, SEGMENT_SUFFIX));
+    }
+
+    private long segmentOf(long position) {
+        return position / segmentSize;
+    }
+
+    private int offsetOf(long position) {
+        return (int) (position % segmentSize);
+    }
+}
@@ -0,0 +1,45 @@
+package net.orekhov.ordersservice.service;
+
+/**
+ * Решение контроля допуска по запросу на создание заказа.
+ */
+public final class AdmissionDecision {
+
+    /**
+     * Запрос допущен.
+     */
+    public static final AdmissionDecision ADMITTED = new AdmissionDecision(true, null, 0);
+
+    private final boolean admitted; // Допущен ли запрос
+    private final String reason; // Причина отказа
+    private final long retryAfterSeconds; // Через сколько секунд стоит повторить запрос
+
+    private AdmissionDecision(boolean admitted, String reason, long retryAfterSeconds) {
+        this.admitted = admitted;
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Отказ в допуске.
+     *
+     * @param reason            Причина отказа
+     * @param retryAfterSeconds Через сколько секунд стоит повторить запрос
+     * @return Решение об отказе
+     */
+    public static AdmissionDecision rejected(String reason, long retryAfterSeconds) {
+        return new AdmissionDecision(false, reason, retryAfterSeconds);
+    }
+
+    public boolean isAdmitted() {
+        return admitted;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,258 @@
+package net.orekhov.ordersservice.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.orekhov.ordersservice.event.OrderEvent;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Контроль допуска запросов на создание заказа.
+ *
+ * Для каждого клиента действует token bucket: не более orders.admission.rate-per-second запросов в секунду
+ * с запасом orders.admission.burst. Корзины распределены по полосам (stripes) с отдельной блокировкой,
+ * чтобы запросы разных клиентов не конкурировали за одну блокировку. Корзины полосы упорядочены по последнему
+ * обращению (LRU): при добавлении корзины удаляется не больше нескольких самых давних корзин — полностью
+ * пополнившихся или сверх лимита полосы, — поэтому затраты на очистку постоянны, а размер полосы ограничен.
+ *
+ * Дополнительно фоновая задача раз в orders.admission.sample-interval-ms читает метрики продюсера Kafka.
+ * Если заполненность буфера продюсера или среднее время ожидания записи в очереди превышают порог,
+ * включается глобальный режим сброса нагрузки, и все новые запросы отклоняются до снижения нагрузки.
+ */
+@Component
+public class OrderAdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderAdmissionControl.class); // Логгер для компонента
+
+    private static final int STRIPES = 64; // Количество полос (степень двойки)
+    private static final int MAX_BUCKETS_PER_STRIPE = 4096; // Максимальное количество корзин в полосе
+    private static final int EVICTIONS_PER_INSERT = 2; // Сколько давних корзин проверяется при добавлении новой
+
+    private final KafkaTemplate<String, OrderEvent> kafkaTemplate; // Источник метрик продюсера
+    private final boolean enabled; // Включён ли контроль допуска
+    private final double ratePerNano; // Скорость пополнения корзины (токенов в наносекунду)
+    private final double burst; // Ёмкость корзины
+    private final double shedBufferUsage; // Порог заполненности буфера продюсера (0..1)
+    private final double shedQueueTimeMillis; // Порог среднего времени ожидания записи в очереди продюсера
+    private final long shedRetryAfterSeconds; // Значение Retry-After в режиме сброса нагрузки
+    private final long sampleIntervalMillis; // Интервал чтения метрик продюсера
+
+    private final Stripe[] stripes = new Stripe[STRIPES]; // Полосы с корзинами клиентов
+    private volatile boolean shedding; // Включён ли глобальный сброс нагрузки
+    private ScheduledExecutorService sampler; // Планировщик чтения метрик продюсера
+
+    /**
+     * Конструктор с настройками контроля допуска.
+     *
+     * @param kafkaTemplate         KafkaTemplate, метрики продюсера которого проверяются
+     * @param enabled               Включён ли контроль допуска
+     * @param ratePerSecond         Допустимое число запросов клиента в секунду
+     * @param burst                 Допустимый всплеск запросов клиента
+     * @param shedBufferUsage       Порог заполненности буфера продюсера (0..1)
+     * @param shedQueueTimeMillis   Порог среднего времени ожидания записи в очереди продюсера (мс)
+     * @param shedRetryAfterSeconds Значение Retry-After в режиме сброса нагрузки
+     * @param sampleIntervalMillis  Интервал чтения метрик продюсера (мс)
+     */
+    public OrderAdmissionControl(KafkaTemplate<String, OrderEvent> kafkaTemplate,
+                                 @Value("${orders.admission.enabled:true}") boolean enabled,
+                                 @Value("${orders.admission.rate-per-second:100}") double ratePerSecond,
+                                 @Value("${orders.admission.burst:200}") double burst,
+                                 @Value("${orders.admission.shed.buffer-usage:0.9}") double shedBufferUsage,
+                                 @Value("${orders.admission.shed.queue-time-ms:500}") double shedQueueTimeMillis,
+                                 @Value("${orders.admission.shed.retry-after-seconds:1}") long shedRetryAfterSeconds,
+                                 @Value("${orders.admission.sample-interval-ms:100}") long sampleIntervalMillis) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.enabled = enabled;
+        this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.shedBufferUsage = shedBufferUsage;
+        this.shedQueueTimeMillis = shedQueueTimeMillis;
+        this.shedRetryAfterSeconds = shedRetryAfterSeconds;
+        this.sampleIntervalMillis = sampleIntervalMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Запускает периодическое чтение метрик продюсера.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-admission-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sampleProducerMetrics, sampleIntervalMillis, sampleIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Останавливает чтение метрик продюсера.
+     */
+    @PreDestroy
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    /**
+     * Проверяет, можно ли принять запрос клиента.
+     *
+     * @param customerId Идентификатор клиента (запросы без клиента ограничиваются общей корзиной)
+     * @return Решение о допуске
+     */
+    public AdmissionDecision admit(String customerId) {
+        if (!enabled) {
+            return AdmissionDecision.ADMITTED;
+        }
+        if (shedding) {
+            return AdmissionDecision.rejected("Service overloaded", shedRetryAfterSeconds);
+        }
+
+        String key = customerId != null ? customerId : "";
+        Stripe stripe = stripes[(key.hashCode() ^ (key.hashCode() >>> 16)) & (STRIPES - 1)];
+        long waitNanos = stripe.tryAcquire(key, System.nanoTime());
+        if (waitNanos == 0) {
+            return AdmissionDecision.ADMITTED;
+        }
+        long retryAfter = Math.max(1, (long) Math.ceil(waitNanos / (double) TimeUnit.SECONDS.toNanos(1)));
+        return AdmissionDecision.rejected("Rate limit exceeded for customer " + customerId, retryAfter);
+    }
+
+    /**
+     * Включён ли сейчас глобальный сброс нагрузки.
+     *
+     * @return true, если новые запросы отклоняются из-за перегрузки продюсера
+     */
+    public boolean isShedding() {
+        return shedding;
+    }
+
+    /**
+     * Читает метрики продюсера и включает или выключает сброс нагрузки.
+     */
+    private void sampleProducerMetrics() {
+        try {
+            double available = Double.NaN;
+            double total = Double.NaN;
+            double queueTime = Double.NaN;
+            for (Map.Entry<MetricName, ? extends Metric> entry : kafkaTemplate.metrics().entrySet()) {
+                MetricName name = entry.getKey();
+                if (!"producer-metrics".equals(name.group())) {
+                    continue;
+                }
+                switch (name.name()) {
+                    case "buffer-available-bytes" -> available = toDouble(entry.getValue());
+                    case "buffer-total-bytes" -> total = toDouble(entry.getValue());
+                    case "record-queue-time-avg" -> queueTime = toDouble(entry.getValue());
+                    default -> {
+                    }
+                }
+            }
+
+            double bufferUsage = total > 0 ? 1 - available / total : 0;
+            boolean overloaded = bufferUsage >= shedBufferUsage
+                    || (!Double.isNaN(queueTime) && queueTime >= shedQueueTimeMillis);
+            if (overloaded != shedding) {
+                logger.warn("Load shedding {}: buffer usage {}, record queue time avg {} ms",
+                        overloaded ? "enabled" : "disabled", bufferUsage, queueTime);
+                shedding = overloaded;
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Failed to read producer metrics", e);
+        }
+    }
+
+    private static double toDouble(Metric metric) {
+        Object value = metric.metricValue();
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+
+    /**
+     * Полоса с корзинами клиентов под общей блокировкой.
+     */
+    private final class Stripe {
+
+        private final Map<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true); // Корзины клиентов в порядке обращения
+
+        /**
+         * Пытается взять токен из корзины клиента.
+         *
+         * @param key Ключ клиента
+         * @param now Текущее время в наносекундах
+         * @return 0, если токен взят, иначе время в наносекундах до появления токена
+         */
+        synchronized long tryAcquire(String key, long now) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                evictEldest(now);
+                bucket = new Bucket(burst, now);
+                buckets.put(key, bucket);
+            }
+
+            bucket.refill(now);
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            return (long) ((1 - bucket.tokens) / ratePerNano);
+        }
+
+        /**
+         * Удаляет до {@link #EVICTIONS_PER_INSERT} самых давних корзин: полностью пополнившиеся (их клиенты
+         * давно не присылали запросов) и любые корзины сверх лимита полосы. Корзина, удалённая сверх лимита,
+         * при следующем запросе клиента создаётся заново полной.
+         */
+        private void evictEldest(long now) {
+            Iterator<Bucket> iterator = buckets.values().iterator();
+            for (int i = 0; i < EVICTIONS_PER_INSERT && iterator.hasNext(); i++) {
+                Bucket eldest = iterator.next();
+                if (buckets.size() < MAX_BUCKETS_PER_STRIPE && !eldest.isFull(now)) {
+                    break; // Более поздние корзины использовались ещё позже
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Token bucket одного клиента.
+     */
+    private final class Bucket {
+
+        private double tokens; // Доступные токены
+        private long lastRefill; // Время последнего пополнения
+
+        Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+
+        void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+        }
+
+        boolean isFull(long now) {
+            return tokens + (now - lastRefill) * ratePerNano >= burst;
+        }
+    }
+}
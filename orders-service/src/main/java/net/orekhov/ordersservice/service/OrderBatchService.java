@@ -0,0 +1,200 @@
+package net.orekhov.ordersservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
+import net.orekhov.ordersservice.model.BatchResult;
+import net.orekhov.ordersservice.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сервис пакетной загрузки заказов в формате NDJSON (один JSON-объект заказа на строку).
+ * Тело запроса читается построчно, без загрузки целиком в память; каждый заказ проходит тот же путь,
+ * что и одиночный запрос: дедупликацию, outbox или group commit и лимит неподтверждённых отправок.
+ * Контроль допуска пакет проходит один раз целиком (в контроллере), а не по строкам. Заказы принимаются
+ * порциями, после каждой порции сервис дожидается подтверждений и записывает результат по строкам.
+ *
+ * Когда лимит неподтверждённых отправок исчерпан, загрузка ждёт освобождения слота до
+ * orders.batch.permit-timeout-ms, то есть замедляется, а не отклоняет строки. Все одновременно загружаемые
+ * порции (orders.batch.chunk-size × orders.batch.max-concurrent) должны помещаться в лимит
+ * orders.kafka.max-in-flight-sends с запасом для одиночных запросов, это проверяется при запуске.
+ *
+ * Загрузка выполняется в отдельном пуле из orders.batch.max-concurrent потоков, поэтому поток обработки
+ * HTTP-запроса не блокируется на ожидании подтверждений; если все потоки пула заняты, пакет сразу отклоняется.
+ */
+@Service
+public class OrderBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderBatchService.class); // Логгер для сервиса
+
+    private final OrderService orderService; // Сервис приёма заказов
+    private final ObjectReader orderReader; // Читатель JSON для объектов заказа
+    private final int chunkSize; // Количество заказов в одной порции отправки
+    private final long permitTimeoutMillis; // Максимальное ожидание слота отправки для строки пакета
+    private final ThreadPoolExecutor executor; // Потоки загрузки пакетов
+
+    /**
+     * Конструктор для внедрения зависимостей.
+     *
+     * @param orderService        Сервис приёма заказов
+     * @param objectMapper        ObjectMapper для разбора JSON
+     * @param chunkSize           Количество заказов в одной порции отправки
+     * @param maxConcurrent       Максимальное число одновременно загружаемых пакетов
+     * @param permitTimeoutMillis Максимальное ожидание слота отправки для строки пакета (мс)
+     * @param maxInFlightSends    Лимит неподтверждённых отправок службы
+     */
+    public OrderBatchService(OrderService orderService, ObjectMapper objectMapper,
+                             @Value("${orders.batch.chunk-size:200}") int chunkSize,
+                             @Value("${orders.batch.max-concurrent:4}") int maxConcurrent,
+                             @Value("${orders.batch.permit-timeout-ms:30000}") long permitTimeoutMillis,
+                             @Value("${orders.kafka.max-in-flight-sends:1000}") int maxInFlightSends) {
+        if ((long) chunkSize * maxConcurrent >= maxInFlightSends) {
+            throw new IllegalArgumentException("orders.batch.chunk-size × orders.batch.max-concurrent (" + chunkSize
+                    + " × " + maxConcurrent + ") must be below orders.kafka.max-in-flight-sends (" + maxInFlightSends + ")");
+        }
+        this.orderService = orderService;
+        this.orderReader = objectMapper.readerFor(Order.class);
+        this.chunkSize = chunkSize;
+        this.permitTimeoutMillis = permitTimeoutMillis;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, maxConcurrent, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "order-batch-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Загружает заказы из потока NDJSON в пуле загрузки пакетов.
+     *
+     * @param body Поток с телом запроса; читается до завершения Future
+     * @return Future с итогом загрузки по строкам; завершается с {@link RejectedExecutionException},
+     *         если все потоки загрузки заняты, или с {@link UncheckedIOException}, если не удалось прочитать тело
+     */
+    public CompletableFuture<BatchResult> ingestAsync(InputStream body) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return ingest(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Too many concurrent batches, rejecting batch");
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Останавливает пул загрузки пакетов.
+     */
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Загружает заказы из потока NDJSON.
+     * Пустые строки пропускаются, строки с ошибками разбора, ошибкой отправки или не получившие слот отправки
+     * за orders.batch.permit-timeout-ms попадают в итог с номером строки.
+     *
+     * @param body Поток с телом запроса
+     * @return Итог загрузки по строкам
+     * @throws IOException если не удалось прочитать тело запроса
+     */
+    public BatchResult ingest(InputStream body) throws IOException {
+        BatchResult result = new BatchResult();
+        List<PendingLine> chunk = new ArrayList<>(chunkSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                Order order;
+                try {
+                    order = orderReader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    result.addFailed(lineNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+                    continue;
+                }
+                if (order == null) {
+                    result.addFailed(lineNumber, null, "Invalid JSON: order object expected");
+                    continue;
+                }
+
+                chunk.add(new PendingLine(lineNumber, order.getOrderId(),
+                        orderService.createOrder(order, null, permitTimeoutMillis)));
+                if (chunk.size() >= chunkSize) {
+                    awaitChunk(chunk, result);
+                }
+            }
+        }
+        awaitChunk(chunk, result);
+
+        logger.info("Batch ingested: total {}, accepted {}, failed {}", result.getTotal(), result.getAccepted(), result.getFailed());
+        return result;
+    }
+
+    /**
+     * Дожидается подтверждений для порции заказов и записывает результаты.
+     *
+     * @param chunk  Порция отправленных заказов
+     * @param result Итог загрузки
+     */
+    private void awaitChunk(List<PendingLine> chunk, BatchResult result) {
+        for (PendingLine pending : chunk) {
+            try {
+                pending.future.join();
+                result.addAccepted();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                String error = cause instanceof RejectedExecutionException
+                        ? "Rejected: " + cause.getMessage() : "Send failed: " + cause.getMessage();
+                result.addFailed(pending.line, pending.orderId, error);
+            }
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Строка пакета, отправленная в Kafka и ожидающая подтверждения.
+     */
+    private static class PendingLine {
+
+        private final long line; // Номер строки
+        private final String orderId; // Идентификатор заказа
+        private final CompletableFuture<?> future; // Результат отправки
+
+        PendingLine(long line, String orderId, CompletableFuture<?> future) {
+            this.line = line;
+            this.orderId = orderId;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package net.orekhov.ordersservice.service;
+
+import net.orekhov.ordersservice.model.OrderReceipt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный по размеру и времени жизни кэш недавно принятых заказов.
+ * Повторный запрос с тем же ключом идемпотентности в пределах окна получает результат первого запроса
+ * и не приводит к повторной отправке в Kafka. Если первый запрос завершился ошибкой, запись удаляется,
+ * чтобы повтор мог быть выполнен заново.
+ *
+ * Очередь вытеснения ограничена тем же лимитом, что и кэш: записи неудачных запросов остаются в ней до вытеснения
+ * с головы, но занимают место в лимите, поэтому при массовых ошибках отправки очередь не растёт.
+ */
+@Component
+public class OrderDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderDeduplicator.class); // Логгер для компонента
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>(); // Результаты по ключу идемпотентности
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>(); // Порядок добавления для вытеснения
+    private final AtomicInteger queued = new AtomicInteger(); // Размер очереди вытеснения
+    private final boolean enabled; // Включена ли дедупликация
+    private final int maxEntries; // Максимальное количество записей
+    private final long ttlNanos; // Время жизни записи
+
+    /**
+     * Конструктор с настройками кэша.
+     *
+     * @param enabled    Включена ли дедупликация
+     * @param maxEntries Максимальное количество записей
+     * @param ttlSeconds Время жизни записи в секундах
+     */
+    public OrderDeduplicator(@Value("${orders.dedup.enabled:true}") boolean enabled,
+                             @Value("${orders.dedup.max-entries:100000}") int maxEntries,
+                             @Value("${orders.dedup.ttl-seconds:600}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * Возвращает результат предыдущего запроса с тем же ключом или выполняет новый запрос.
+     *
+     * @param key    Ключ идемпотентности
+     * @param action Действие, выполняемое, если ключ не встречался в пределах окна
+     * @return Результат первого запроса с этим ключом
+     */
+    public CompletableFuture<OrderReceipt> execute(String key, Supplier<CompletableFuture<OrderReceipt>> action) {
+        if (!enabled || key == null) {
+            return action.get();
+        }
+
+        long now = System.nanoTime();
+        CompletableFuture<OrderReceipt> placeholder = new CompletableFuture<>();
+        Entry candidate = new Entry(key, placeholder, now + ttlNanos);
+
+        Entry existing = entries.putIfAbsent(key, candidate);
+        while (existing != null && existing.expiresAt - now < 0) {
+            // Запись устарела: заменяем её новой
+            if (entries.replace(key, existing, candidate)) {
+                existing = null;
+            } else {
+                existing = entries.putIfAbsent(key, candidate);
+            }
+        }
+        if (existing != null) {
+            logger.info("Duplicate order request with key {}, answering from cache", key);
+            return existing.result;
+        }
+
+        insertionOrder.add(candidate);
+        queued.incrementAndGet();
+        evict(now);
+
+        CompletableFuture<OrderReceipt> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((receipt, ex) -> {
+            if (ex != null) {
+                entries.remove(key, candidate); // Неудачный запрос можно повторить
+                placeholder.completeExceptionally(ex);
+            } else {
+                placeholder.complete(receipt);
+            }
+        });
+        return placeholder;
+    }
+
+    /**
+     * Вытесняет устаревшие и удалённые записи с головы очереди, а также самые старые записи сверх лимита.
+     * Лимит применяется к очереди, а не к кэшу, поэтому записи неудачных запросов не накапливаются в ней.
+     *
+     * @param now Текущее время в наносекундах
+     */
+    private void evict(long now) {
+        Entry head;
+        while ((head = insertionOrder.peek()) != null
+                && (queued.get() > maxEntries || head.expiresAt - now < 0 || entries.get(head.key) != head)) {
+            if (insertionOrder.remove(head)) {
+                queued.decrementAndGet();
+                entries.remove(head.key, head);
+            }
+        }
+    }
+
+    /**
+     * Запись кэша: результат запроса и момент истечения.
+     */
+    private static class Entry {
+
+        private final String key; // Ключ идемпотентности
+        private final CompletableFuture<OrderReceipt> result; // Результат первого запроса
+        private final long expiresAt; // Момент истечения (System.nanoTime)
+
+        Entry(String key, CompletableFuture<OrderReceipt> result, long expiresAt) {
+            this.key = key;
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
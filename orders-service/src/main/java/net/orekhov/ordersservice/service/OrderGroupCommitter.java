@@ -0,0 +1,254 @@
+package net.orekhov.ordersservice.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.orekhov.ordersservice.config.PartitionKey;
+import net.orekhov.ordersservice.event.EventHeaders;
+import net.orekhov.ordersservice.event.OrderEvent;
+import net.orekhov.ordersservice.model.GroupCommitStats;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Групповая отправка заказов (group commit).
+ * Заказы из параллельных запросов, пришедшие в пределах короткого окна времени или до достижения
+ * максимального размера пакета, отправляются в Kafka одним flush продюсера и подтверждаются вместе.
+ * Режим включается свойством orders.group-commit.enabled.
+ */
+@Component
+public class OrderGroupCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderGroupCommitter.class); // Логгер для компонента
+    private static final PendingOrder STOP = new PendingOrder(null, 0); // Метка остановки, будит фоновый поток
+
+    private final KafkaTemplate<String, OrderEvent> kafkaTemplate; // KafkaTemplate для отправки сообщений в Kafka
+    private final PartitionKey partitionKey; // Стратегия выбора ключа сообщения
+    private final boolean enabled; // Включён ли режим group commit
+    private final long windowNanos; // Максимальное время ожидания пакета
+    private final int maxBatchSize; // Максимальный размер пакета
+
+    private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>(); // Заказы, ожидающие отправки
+    private final GroupCommitStats stats = new GroupCommitStats(); // Метрики размеров пакетов
+    private volatile boolean running; // Флаг работы фонового потока
+    private volatile boolean accepting; // Принимаются ли новые заказы
+    private Thread worker; // Фоновый поток, формирующий пакеты
+
+    /**
+     * Конструктор для внедрения зависимостей и настроек.
+     *
+     * @param kafkaTemplate KafkaTemplate для отправки сообщений в Kafka
+     * @param partitionKey  Стратегия выбора ключа сообщения
+     * @param enabled       Включён ли режим group commit
+     * @param windowMicros  Максимальное время ожидания пакета в микросекундах
+     * @param maxBatchSize  Максимальный размер пакета
+     */
+    public OrderGroupCommitter(KafkaTemplate<String, OrderEvent> kafkaTemplate,
+                               PartitionKey partitionKey,
+                               @Value("${orders.group-commit.enabled:false}") boolean enabled,
+                               @Value("${orders.group-commit.window-micros:2000}") long windowMicros,
+                               @Value("${orders.group-commit.max-batch-size:256}") int maxBatchSize) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.partitionKey = partitionKey;
+        this.enabled = enabled;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Запускает фоновый поток, если режим group commit включён.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        accepting = true;
+        worker = new Thread(this::run, "order-group-commit");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("Group commit enabled: window {} us, max batch size {}",
+                TimeUnit.NANOSECONDS.toMicros(windowNanos), maxBatchSize);
+    }
+
+    /**
+     * Останавливает фоновый поток. Заказы, оставшиеся в очереди, отправляются перед остановкой;
+     * заказы, поставленные в очередь после выхода фонового потока, завершаются ошибкой.
+     * Поток не прерывается, а будится меткой в очереди: прерывание внутри flush продюсера
+     * оборвало бы отправку пакета, заказы которого уже ждут подтверждения.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        accepting = false;
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        queue.add(STOP);
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+
+        PendingOrder pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Group commit is stopped"));
+        }
+    }
+
+    /**
+     * Включён ли режим group commit.
+     *
+     * @return true, если заказы отправляются пакетами
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ставит заказ в очередь на групповую отправку.
+     *
+     * @param orderEvent Событие заказа
+     * @param producedAt Время приёма заказа, передаваемое в заголовке {@link EventHeaders#PRODUCED_AT}
+     * @return Future, который завершается после подтверждения всего пакета, в который попал заказ,
+     *         или с {@link RejectedExecutionException}, если group commit не запущен или остановлен
+     */
+    public CompletableFuture<SendResult<String, OrderEvent>> submit(OrderEvent orderEvent, long producedAt) {
+        if (!accepting) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Group commit is stopped"));
+        }
+        PendingOrder pending = new PendingOrder(orderEvent, producedAt);
+        queue.add(pending);
+        // Остановка началась одновременно с добавлением: если заказ ещё в очереди, его уже никто не заберёт
+        if (!accepting && queue.remove(pending)) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Group commit is stopped"));
+        }
+        return pending.result;
+    }
+
+    /**
+     * Метрики размеров пакетов.
+     *
+     * @return Метрики group commit
+     */
+    public GroupCommitStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Основной цикл фонового потока: собирает пакет в пределах окна и отправляет его.
+     */
+    private void run() {
+        List<PendingOrder> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = running ? queue.take() : queue.poll();
+                if (first == null) {
+                    break;
+                }
+                if (first != STOP) {
+                    batch.add(first);
+                }
+
+                // Собираем пакет, пока не истечёт окно или пакет не заполнится
+                long deadline = System.nanoTime() + windowNanos;
+                while (running && batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    if (!running) {
+                        batch.remove(STOP); // Метка ставится в очередь только после сброса running
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next != STOP) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Остановка не прерывает поток: постороннее прерывание не должно оставить заказы без ответа
+                logger.warn("Group commit worker was interrupted, continuing");
+            }
+
+            if (!batch.isEmpty()) {
+                sendBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Отправляет пакет заказов одним flush и подтверждает все заказы пакета вместе.
+     *
+     * @param batch Пакет заказов
+     */
+    private void sendBatch(List<PendingOrder> batch) {
+        List<PendingOrder> sent = new ArrayList<>(batch);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[sent.size()];
+        for (int i = 0; i < sent.size(); i++) {
+            PendingOrder pending = sent.get(i);
+            try {
+                ProducerRecord<String, OrderEvent> record =
+                        new ProducerRecord<>("orders", partitionKey.keyOf(pending.orderEvent), pending.orderEvent);
+                record.headers().add(EventHeaders.PRODUCED_AT, EventHeaders.encodeTime(pending.producedAt));
+                pending.send = kafkaTemplate.send(record);
+            } catch (RuntimeException e) {
+                pending.send = CompletableFuture.failedFuture(e);
+            }
+            futures[i] = pending.send;
+        }
+        try {
+            kafkaTemplate.flush();
+        } catch (RuntimeException e) {
+            // Например, InterruptException продюсера: записи остаются в буфере, и их futures завершит
+            // сам продюсер, поэтому пакет всё равно подтверждается ниже, а поток продолжает работу
+            Thread.interrupted();
+            logger.warn("Group commit flush failed: {}", e.getMessage());
+        }
+        stats.record(sent.size());
+        logger.debug("Group commit flushed batch of {} orders", sent.size());
+
+        // Подтверждаем весь пакет, когда брокер подтвердит все его записи
+        CompletableFuture.allOf(futures).whenComplete((ignored, ex) -> {
+            for (PendingOrder pending : sent) {
+                pending.send.whenComplete((result, error) -> {
+                    if (error != null) {
+                        pending.result.completeExceptionally(error);
+                    } else {
+                        pending.result.complete(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Заказ, ожидающий групповой отправки.
+     */
+    private static class PendingOrder {
+
+        private final OrderEvent orderEvent; // Событие заказа
+        private final long producedAt; // Время приёма заказа
+        private final CompletableFuture<SendResult<String, OrderEvent>> result = new CompletableFuture<>(); // Результат для клиента
+        private CompletableFuture<SendResult<String, OrderEvent>> send; // Результат отправки в Kafka
+
+        PendingOrder(OrderEvent orderEvent, long producedAt) {
+            this.orderEvent = orderEvent;
+            this.producedAt = producedAt;
+        }
+    }
+}
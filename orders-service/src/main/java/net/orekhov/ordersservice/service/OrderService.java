@@ -1,11 +1,25 @@
 package net.orekhov.ordersservice.service;
 
+import net.orekhov.ordersservice.config.PartitionKey;
+import net.orekhov.ordersservice.event.EventHeaders;
+import net.orekhov.ordersservice.event.OrderEvent;
 import net.orekhov.ordersservice.model.Order;
+import net.orekhov.ordersservice.model.OrderReceipt;
+import net.orekhov.ordersservice.outbox.OrderOutbox;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Сервис для обработки заказов. Этот сервис отвечает за создание заказов, обновление статусов заказов
  * и отправку данных о заказах в Kafka.
@@ -15,76 +29,253 @@ public class OrderService {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class); // Логгер для сервиса
 
-    private final KafkaTemplate<String, String> kafkaTemplate; // KafkaTemplate для отправки сообщений в Kafka
+    private final KafkaTemplate<String, OrderEvent> kafkaTemplate; // KafkaTemplate для отправки сообщений в Kafka
+
+    private final OrderGroupCommitter groupCommitter; // Групповая отправка заказов (если включена)
+
+    private final PartitionKey partitionKey; // Стратегия выбора ключа сообщения
+
+    private final OrderViewStore orderViewStore; // Материализованное представление заказов
+
+    private final OrderOutbox orderOutbox; // Локальный outbox (если включён)
+
+    private final OrderDeduplicator orderDeduplicator; // Кэш недавно принятых заказов для идемпотентности
+
+    private final Semaphore inFlightSends; // Ограничение числа отправок, ожидающих подтверждения от Kafka
 
     /**
      * Конструктор для внедрения зависимости KafkaTemplate.
      *
-     * @param kafkaTemplate KafkaTemplate для отправки сообщений в Kafka
+     * @param kafkaTemplate    KafkaTemplate для отправки сообщений в Kafka
+     * @param groupCommitter   Групповая отправка заказов
+     * @param partitionKey     Стратегия выбора ключа сообщения
+     * @param orderViewStore   Материализованное представление заказов
+     * @param orderOutbox      Локальный outbox
+     * @param orderDeduplicator Кэш недавно принятых заказов для идемпотентности
+     * @param maxInFlightSends Максимальное число отправок, одновременно ожидающих подтверждения от Kafka
      */
-    public OrderService(KafkaTemplate<String, String> kafkaTemplate) {
+    public OrderService(KafkaTemplate<String, OrderEvent> kafkaTemplate,
+                        OrderGroupCommitter groupCommitter,
+                        PartitionKey partitionKey,
+                        OrderViewStore orderViewStore,
+                        OrderOutbox orderOutbox,
+                        OrderDeduplicator orderDeduplicator,
+                        @Value("${orders.kafka.max-in-flight-sends:1000}") int maxInFlightSends) {
         this.kafkaTemplate = kafkaTemplate;
+        this.groupCommitter = groupCommitter;
+        this.partitionKey = partitionKey;
+        this.orderViewStore = orderViewStore;
+        this.orderOutbox = orderOutbox;
+        this.orderDeduplicator = orderDeduplicator;
+        this.inFlightSends = new Semaphore(maxInFlightSends);
+        logger.info("Max in-flight order sends: {}", maxInFlightSends);
     }
 
     /**
      * Метод для создания заказа и отправки его данных в Kafka.
-     * Преобразует объект заказа в строку и отправляет его в Kafka topic.
+     * Преобразует объект заказа в событие и отправляет его в Kafka topic, не дожидаясь подтверждения брокера.
+     * В режиме group commit заказ объединяется с параллельными запросами в один пакет.
+     * В режиме outbox заказ записывается в локальный журнал и подтверждается после выполнения политики fsync,
+     * а в Kafka его передаёт фоновый поток ретрансляции.
+     * Если число неподтверждённых отправок достигло лимита, заказ сразу отклоняется,
+     * чтобы поток обработки запроса не блокировался при задержках брокера.
+     * Повторный запрос с тем же ключом идемпотентности в пределах окна дедупликации
+     * получает результат первого запроса без повторной отправки.
+     * Время приёма заказа передаётся в заголовке {@link EventHeaders#PRODUCED_AT} для измерения сквозной задержки.
      *
-     * @param order Объект заказа, который нужно создать
+     * @param order          Объект заказа, который нужно создать
+     * @param idempotencyKey Ключ идемпотентности; если не указан, используется идентификатор заказа
+     * @return Future, который завершается подтверждением приёма заказа,
+     *         или с {@link RejectedExecutionException}, если превышен лимит неподтверждённых отправок
      */
-    public void createOrder(Order order) {
-        // Преобразование объекта заказа в строку (можно использовать Jackson для преобразования в JSON)
-        String orderDetails = "OrderID: " + order.getOrderId() +
-                ", Product: " + order.getProduct() +
-                ", Quantity: " + order.getQuantity() +
-                ", Price: " + order.getPrice() +
-                ", Status: " + order.getStatus();
+    public CompletableFuture<OrderReceipt> createOrder(Order order, String idempotencyKey) {
+        return createOrder(order, idempotencyKey, 0);
+    }
 
-        // Логирование информации о создании заказа
-        logger.info("Creating order: {}", orderDetails);
+    /**
+     * Создание заказа, которое при достижении лимита неподтверждённых отправок ждёт освобождения слота
+     * не дольше permitTimeoutMillis, а не отклоняет заказ сразу. Используется пакетной загрузкой,
+     * которой нужно замедлиться, а не терять строки.
+     *
+     * @param order               Объект заказа, который нужно создать
+     * @param idempotencyKey      Ключ идемпотентности; если не указан, используется идентификатор заказа
+     * @param permitTimeoutMillis Максимальное ожидание слота отправки (мс); 0 — не ждать
+     * @return Future, который завершается подтверждением приёма заказа,
+     *         или с {@link RejectedExecutionException}, если слот не освободился за отведённое время
+     */
+    public CompletableFuture<OrderReceipt> createOrder(Order order, String idempotencyKey, long permitTimeoutMillis) {
+        String key = idempotencyKey != null ? idempotencyKey : order.getOrderId();
+        long producedAt = System.currentTimeMillis();
+        return orderDeduplicator.execute(key, () -> submitOrder(order, producedAt, permitTimeoutMillis));
+    }
 
-        // Отправка данных о заказе в Kafka в topic "orders"
-        kafkaTemplate.send("orders", orderDetails);
+    /**
+     * Принимает заказ: записывает его в outbox или отправляет в Kafka с учётом лимита неподтверждённых отправок.
+     *
+     * @param order               Объект заказа
+     * @param producedAt          Время приёма заказа
+     * @param permitTimeoutMillis Максимальное ожидание слота отправки (мс); 0 — не ждать
+     * @return Future с подтверждением приёма заказа
+     */
+    private CompletableFuture<OrderReceipt> submitOrder(Order order, long producedAt, long permitTimeoutMillis) {
+        // В режиме outbox Kafka не участвует в обработке запроса, лимит отправок не нужен
+        if (orderOutbox.isEnabled()) {
+            OrderEvent orderEvent = toEvent(order);
+            return orderOutbox.append(partitionKey.keyOf(orderEvent), orderEvent, producedAt)
+                    .thenApply(position -> OrderReceipt.journaled(order.getOrderId(), position));
+        }
 
-        // Логирование успешной отправки заказа в Kafka
-        logger.info("Order created and sent to Kafka: {}", orderDetails);
+        // Проверяем лимит неподтверждённых отправок; одиночный запрос не блокирует поток
+        if (!acquireInFlight(permitTimeoutMillis)) {
+            logger.warn("Too many in-flight sends, rejecting order: {}", order.getOrderId());
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException("Too many in-flight order sends"));
+        }
 
         // Дополнительно можно добавить логику для сохранения заказа в базе данных
+
+        CompletableFuture<SendResult<String, OrderEvent>> future;
+        try {
+            future = groupCommitter.isEnabled()
+                    ? groupCommitter.submit(toEvent(order), producedAt)
+                    : sendOrder(order, producedAt);
+        } catch (RuntimeException e) {
+            // Отправка не началась: слот освобождается сразу, иначе он был бы потерян
+            inFlightSends.release();
+            logger.error("Failed to submit order: {}", order.getOrderId(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // Освобождаем слот после подтверждения или ошибки
+        return future.whenComplete((result, ex) -> inFlightSends.release())
+                .thenApply(result -> OrderReceipt.acknowledged(order.getOrderId(),
+                        result.getRecordMetadata().partition(), result.getRecordMetadata().offset()));
+    }
+
+    /**
+     * Занимает слот неподтверждённой отправки, при необходимости ожидая его освобождения.
+     *
+     * @param timeoutMillis Максимальное ожидание (мс); 0 — не ждать
+     * @return true, если слот занят
+     */
+    private boolean acquireInFlight(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return inFlightSends.tryAcquire();
+        }
+        try {
+            return inFlightSends.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Отправляет заказ в Kafka topic "orders" с заданным временем приёма в заголовке {@link EventHeaders#PRODUCED_AT}.
+     *
+     * @param order      Объект заказа для отправки
+     * @param producedAt Время приёма заказа
+     * @return Future с результатом отправки
+     */
+    private CompletableFuture<SendResult<String, OrderEvent>> sendOrder(Order order, long producedAt) {
+        // Преобразование объекта заказа в событие, которое сериализуется в компактный бинарный формат
+        OrderEvent orderEvent = toEvent(order);
+
+        // Логирование информации о создании заказа
+        logger.info("Creating order: {}", orderEvent);
+
+        // Отправка данных о заказе в Kafka в topic "orders" с ключом, определяющим партицию
+        CompletableFuture<SendResult<String, OrderEvent>> future;
+        try {
+            ProducerRecord<String, OrderEvent> record =
+                    new ProducerRecord<>("orders", partitionKey.keyOf(orderEvent), orderEvent);
+            record.headers().add(EventHeaders.PRODUCED_AT, EventHeaders.encodeTime(producedAt));
+            future = kafkaTemplate.send(record);
+        } catch (RuntimeException e) {
+            logger.error("Failed to send order to Kafka: {}", orderEvent, e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // Логируем результат отправки
+        return future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                logger.error("Failed to send order to Kafka: {}", orderEvent, ex);
+            } else {
+                logger.info("Order acknowledged by Kafka: {}, partition: {}, offset: {}", orderEvent.getOrderId(),
+                        result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+            }
+        });
     }
 
     /**
      * Метод для обновления статуса заказа.
-     * В реальном приложении этот метод должен взаимодействовать с базой данных.
+     * Публикует в topic "orders" событие заказа с новым статусом и заголовком {@link EventHeaders#EVENT_TYPE}
+     * = {@link EventHeaders#ORDER_STATUS_CHANGED}, по которому потребители отличают смену статуса от создания заказа
+     * (служба платежей не создаёт по нему платёж). Событие отправляется с тем же ключом, что и исходный заказ,
+     * поэтому сохраняет порядок относительно него. К локальному представлению новый статус применяется только
+     * после подтверждения Kafka, так что представление не расходится с topic, из которого оно восстанавливается.
      *
      * @param orderId Идентификатор заказа
      * @param status Новый статус заказа
+     * @return Future, который завершается true после подтверждения Kafka, false, если заказ неизвестен,
+     *         или с ошибкой, если отправка не удалась
      */
-    public void updateOrderStatus(String orderId, String status) {
+    public CompletableFuture<Boolean> updateOrderStatus(String orderId, String status) {
         // Логируем обновление статуса заказа
         logger.info("Updating order {} status to {}", orderId, status);
 
-        // В реальном приложении здесь будет логика для обновления статуса в базе данных
-        // Для этого примера выводим сообщение в консоль
-        System.out.println("Updating order " + orderId + " status to " + status);
+        OrderEvent current = orderViewStore.get(orderId);
+        if (current == null) {
+            logger.warn("Order {} not found for status update", orderId);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        OrderEvent updated = new OrderEvent(current.getOrderId(), current.getCustomerId(), current.getProduct(),
+                current.getQuantity(), current.getPrice(), status);
+        CompletableFuture<SendResult<String, OrderEvent>> future;
+        try {
+            ProducerRecord<String, OrderEvent> record =
+                    new ProducerRecord<>("orders", partitionKey.keyOf(updated), updated);
+            record.headers().add(EventHeaders.PRODUCED_AT, EventHeaders.encodeTime(System.currentTimeMillis()));
+            record.headers().add(EventHeaders.EVENT_TYPE, EventHeaders.encodeType(EventHeaders.ORDER_STATUS_CHANGED));
+            future = kafkaTemplate.send(record);
+        } catch (RuntimeException e) {
+            logger.error("Failed to send status update of order {} to Kafka", orderId, e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                logger.error("Failed to send status update of order {} to Kafka", orderId, ex);
+            }
+        }).thenApply(result -> {
+            orderViewStore.apply(updated);
+            return true;
+        });
     }
 
     /**
-     * Метод для получения данных о заказе. В реальном приложении этот метод должен взаимодействовать с базой данных.
+     * Метод для получения данных о заказе из материализованного представления в памяти.
+     * Вызов не обращается к Kafka или базе данных.
      *
      * @param orderId Идентификатор заказа
-     * @return Объект заказа с мокированными данными
+     * @return Optional с последним состоянием заказа или пустой Optional, если заказ неизвестен
      */
-    public Order getOrderDetails(String orderId) {
-        // Мокированная реализация, в реальном приложении нужно будет получать данные из базы данных
-
+    public Optional<OrderEvent> getOrderDetails(String orderId) {
         // Логируем получение данных о заказе
-        logger.info("Fetching details for order ID: {}", orderId);
+        logger.debug("Fetching details for order ID: {}", orderId);
 
-        Order order = new Order(orderId, "customer123", "Laptop", 2, 1500.00, "Created");
-
-        // Логируем информацию о заказе
-        logger.info("Order details: {}", order);
+        return Optional.ofNullable(orderViewStore.get(orderId));
+    }
 
-        return order;
+    /**
+     * Преобразует заказ в событие для отправки в Kafka.
+     *
+     * @param order Объект заказа
+     * @return Событие заказа
+     */
+    private OrderEvent toEvent(Order order) {
+        return new OrderEvent(order.getOrderId(), order.getCustomerId(), order.getProduct(),
+                order.getQuantity(), order.getPrice(), order.getStatus());
     }
 }
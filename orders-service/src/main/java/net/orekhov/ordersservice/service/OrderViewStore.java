@@ -0,0 +1,55 @@
+package net.orekhov.ordersservice.service;
+
+import net.orekhov.ordersservice.event.OrderEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Материализованное представление заказов в памяти.
+ * Заполняется событиями из topic "orders" (создание заказа и изменение статуса) и позволяет
+ * получать текущее состояние заказа без обращения к Kafka или базе данных.
+ * При перезапуске сервиса представление восстанавливается повторным чтением topic с начала.
+ */
+@Component
+public class OrderViewStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderViewStore.class); // Логгер для хранилища
+
+    private final Map<String, OrderEvent> orders = new ConcurrentHashMap<>(); // Последнее состояние заказа по orderId
+
+    /**
+     * Применяет событие заказа к представлению. Последнее событие по заказу заменяет предыдущее.
+     *
+     * @param orderEvent Событие заказа
+     */
+    public void apply(OrderEvent orderEvent) {
+        if (orderEvent.getOrderId() == null) {
+            logger.warn("Skipping order event without order ID: {}", orderEvent);
+            return;
+        }
+        orders.put(orderEvent.getOrderId(), orderEvent);
+    }
+
+    /**
+     * Получить текущее состояние заказа.
+     *
+     * @param orderId Идентификатор заказа
+     * @return Последнее событие заказа или null, если заказ неизвестен
+     */
+    public OrderEvent get(String orderId) {
+        return orders.get(orderId);
+    }
+
+    /**
+     * Количество заказов в представлении.
+     *
+     * @return Количество заказов
+     */
+    public int size() {
+        return orders.size();
+    }
+}
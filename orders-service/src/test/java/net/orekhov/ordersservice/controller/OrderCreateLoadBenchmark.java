@@ -0,0 +1,159 @@
+package net.orekhov.ordersservice.controller;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Нагрузка POST /orders/create для сравнения режима виртуальных потоков с потоками платформы:
+ * на каждом уровне параллельности заданное число клиентов отправляет заказы без пауз (замкнутый цикл),
+ * после прогрева измеряются запросы в секунду и задержки p50/p99/max.
+ * Не является тестом и не запускается при сборке.
+ *
+ * Сравнение: запустить службу и брокер, прогнать нагрузку, перезапустить службу в другом режиме
+ * и прогнать ту же нагрузку.
+ * java -jar target/orders-service-0.0.1-SNAPSHOT.jar                                  (потоки платформы)
+ * mvn -P virtual-threads package && java -jar target/orders-service-0.0.1-SNAPSHOT.jar \
+ *     --spring.profiles.active=virtual                                                 (виртуальные потоки)
+ *
+ * Запуск после mvn test-compile:
+ * java -cp target/test-classes net.orekhov.ordersservice.controller.OrderCreateLoadBenchmark \
+ *     [адрес службы] [уровни параллельности через запятую] [секунд измерения] [секунд прогрева]
+ *
+ * У каждого клиента свой customerId, у каждого заказа новый orderId, поэтому дедупликация не срабатывает;
+ * ответы 429 и 503 (контроль допуска, лимит неподтверждённых отправок) считаются отдельно от 202
+ * и в задержки не входят. Для измерения самой службы контроль допуска стоит отключить
+ * (--orders.admission.enabled=false) в обоих режимах.
+ */
+public class OrderCreateLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8081";
+        String levels = args.length > 1 ? args[1] : "16,64,256,1024";
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        URI uri = URI.create(baseUrl + "/orders/create");
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        for (String level : levels.split(",")) {
+            int concurrency = Integer.parseInt(level.trim());
+            run(client, uri, concurrency, warmupSeconds, false);
+            run(client, uri, concurrency, seconds, true);
+        }
+    }
+
+    /**
+     * Один уровень параллельности: concurrency клиентов в течение seconds секунд.
+     */
+    private static void run(HttpClient client, URI uri, int concurrency, int seconds, boolean report) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        List<Future<Result>> futures = new ArrayList<>(concurrency);
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                String customerId = "load-" + i;
+                futures.add(pool.submit(() -> load(client, uri, customerId, deadline)));
+            }
+            Result total = new Result();
+            for (Future<Result> future : futures) {
+                total.add(future.get());
+            }
+            if (report) {
+                print(concurrency, seconds, total);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Клиент: отправляет заказы один за другим до истечения срока.
+     */
+    private static Result load(HttpClient client, URI uri, String customerId, long deadline) {
+        Result result = new Result();
+        while (System.nanoTime() < deadline) {
+            String body = "{\"orderId\":\"" + UUID.randomUUID() + "\",\"customerId\":\"" + customerId
+                    + "\",\"product\":\"book\",\"quantity\":1,\"price\":10.0,\"status\":\"created\"}";
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            long started = System.nanoTime();
+            try {
+                int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                long latency = System.nanoTime() - started;
+                if (status == 202) {
+                    result.accepted(latency);
+                } else if (status == 429 || status == 503) {
+                    result.rejected++;
+                } else {
+                    result.failed++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                result.failed++;
+            }
+        }
+        return result;
+    }
+
+    private static void print(int concurrency, int seconds, Result total) {
+        long[] latencies = Arrays.copyOf(total.latencies, total.count);
+        Arrays.sort(latencies);
+        System.out.printf("concurrency %d: %.0f req/s, p50 %.1f ms, p99 %.1f ms, max %.1f ms, rejected %d, failed %d%n",
+                concurrency, total.count / (double) seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99),
+                latencies.length > 0 ? latencies[latencies.length - 1] / 1e6 : 0.0,
+                total.rejected, total.failed);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Итоги клиента: задержки принятых заказов (нс) и количество отклонённых и неудачных запросов.
+     */
+    private static class Result {
+
+        private long[] latencies = new long[1024];
+        private int count;
+        private long rejected;
+        private long failed;
+
+        void accepted(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        void add(Result other) {
+            for (int i = 0; i < other.count; i++) {
+                accepted(other.latencies[i]);
+            }
+            rejected += other.rejected;
+            failed += other.failed;
+        }
+    }
+}
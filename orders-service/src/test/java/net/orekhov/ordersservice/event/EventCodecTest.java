@@ -0,0 +1,74 @@
+package net.orekhov.ordersservice.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventCodecTest {
+
+    @Test
+    void orderEventRoundTrip() {
+        OrderEvent event = new OrderEvent("order-1", "customer-1", "Laptop", 2, 1500.0, "Created");
+
+        OrderEvent decoded = (OrderEvent) EventCodec.decode(EventCodec.encode(event));
+
+        assertEquals("order-1", decoded.getOrderId());
+        assertEquals("customer-1", decoded.getCustomerId());
+        assertEquals("Laptop", decoded.getProduct());
+        assertEquals(2, decoded.getQuantity());
+        assertEquals(1500.0, decoded.getPrice());
+        assertEquals("Created", decoded.getStatus());
+    }
+
+    @Test
+    void shipmentEventRoundTripKeepsNullFields() {
+        ShipmentEvent event = new ShipmentEvent(7L, "42", "TRK1", "express", null, LocalDate.of(2024, 1, 2), null);
+
+        ShipmentEvent decoded = (ShipmentEvent) EventCodec.decode(EventCodec.encode(event));
+
+        assertEquals(7L, decoded.getShipmentId());
+        assertEquals("42", decoded.getOrderId());
+        assertNull(decoded.getStatus());
+        assertEquals(LocalDate.of(2024, 1, 2), decoded.getShippingDate());
+        assertNull(decoded.getDeliveryDate());
+    }
+
+    @Test
+    void binaryFormatIsSmallerThanLegacyString() {
+        String legacy = "OrderID: order-1, Product: Laptop, Quantity: 2, Price: 1500.0, Status: Created";
+        byte[] binary = EventCodec.encode(new OrderEvent("order-1", null, "Laptop", 2, 1500.0, "Created"));
+
+        assertTrue(binary.length < legacy.length());
+    }
+
+    @Test
+    void decodesLegacyOrderString() {
+        byte[] legacy = "OrderID: 1, Product: Laptop, Quantity: 2, Price: 1500.0, Status: Created".getBytes();
+
+        OrderEvent decoded = (OrderEvent) EventCodec.decode(legacy);
+
+        assertEquals("1", decoded.getOrderId());
+        assertNull(decoded.getCustomerId());
+        assertEquals("Laptop", decoded.getProduct());
+        assertEquals(2, decoded.getQuantity());
+        assertEquals(1500.0, decoded.getPrice());
+        assertEquals("Created", decoded.getStatus());
+    }
+
+    @Test
+    void decodesLegacyPlainTextAsNotification() {
+        NotificationEvent decoded = (NotificationEvent) EventCodec.decode("hello".getBytes());
+
+        assertEquals("hello", decoded.getMessage());
+    }
+
+    @Test
+    void rejectsTruncatedData() {
+        byte[] encoded = EventCodec.encode(new OrderEvent("order-1", "customer-1", "Laptop", 2, 1500.0, "Created"));
+        byte[] truncated = java.util.Arrays.copyOf(encoded, encoded.length - 3);
+
+        assertThrows(IllegalArgumentException.class, () -> EventCodec.decode(truncated));
+    }
+}
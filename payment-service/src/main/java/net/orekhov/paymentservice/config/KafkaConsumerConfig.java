@@ -1,22 +1,53 @@
 package net.orekhov.paymentservice.config;
 
+import net.orekhov.paymentservice.event.DomainEvent;
+import net.orekhov.paymentservice.event.EventDeserializer;
+import net.orekhov.paymentservice.event.EventHeaders;
+import net.orekhov.paymentservice.event.OrderEvent;
+import net.orekhov.paymentservice.event.PaymentEvent;
+import net.orekhov.paymentservice.metrics.ListenerMetrics;
+import net.orekhov.paymentservice.service.DeficitRoundRobinExecutor;
+import net.orekhov.paymentservice.service.KeyOrderedExecutor;
+import net.orekhov.paymentservice.service.PaymentIdAllocator;
+import net.orekhov.paymentservice.service.PaymentService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.BatchAcknowledgingMessageListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.BatchMessageListener;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListener;
 import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Конфигурация потребителя Kafka для службы платежей.
@@ -30,6 +61,57 @@ public class KafkaConsumerConfig {
     private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerConfig.class); // Логгер для конфигурации
     private final String bootstrapServers = "localhost:9092"; // Адрес Kafka сервера, замените на ваш
 
+    @Autowired
+    private SimpleAsyncTaskExecutorBuilder taskExecutorBuilder; // Потоки потребителей; виртуальные, если включён spring.threads.virtual.enabled
+
+    @Value("${payments.consumer.mode:batch}")
+    private String consumerMode; // Режим обработки: record — по одной записи, batch — весь poll целиком, parallel — пул по ключу, fair — справедливо по клиентам
+
+    @Value("${payments.consumer.batch.max-records:500}")
+    private int batchMaxRecords; // Максимальный размер пачки (max.poll.records)
+
+    @Value("${payments.consumer.batch.max-wait-ms:100}")
+    private int batchMaxWaitMs; // Максимальное ожидание наполнения пачки брокером (fetch.max.wait.ms)
+
+    @Value("${payments.consumer.batch.min-bytes:65536}")
+    private int batchMinBytes; // Объём данных, при котором брокер отвечает не дожидаясь fetch.max.wait.ms
+
+    @Value("${payments.consumer.parallel.workers:0}")
+    private int parallelWorkers; // Количество потоков режима parallel (0 — по числу процессоров)
+
+    @Value("${payments.consumer.fair.workers:0}")
+    private int fairWorkers; // Количество потоков режима fair (0 — по числу процессоров)
+
+    @Value("${payments.consumer.fair.quantum-bytes:4096}")
+    private long fairQuantumBytes; // Квант клиента на один круг обслуживания (байт событий)
+
+    @Value("${payments.consumer.fair.max-queued-per-customer:1000}")
+    private int fairMaxQueuedPerCustomer; // Предел очереди одного клиента, после которого чтение приостанавливается
+
+    @Value("${payments.consumer.fair.max-queued:10000}")
+    private int fairMaxQueued; // Предел общего числа записей в очередях
+
+    @Value("${payments.orders.enabled:true}")
+    private boolean ordersEnabled; // Создавать ли платежи по заказам из topic заказов
+
+    @Value("${payments.orders.topic:orders}")
+    private String ordersTopic; // Topic заказов
+
+    @Value("${payments.events.topic:payment-topic}")
+    private String paymentsTopic; // Topic событий платежей
+
+    @Value("${payments.retry.attempts:3}")
+    private int retryAttempts; // Количество уровней retry topic
+
+    @Value("${payments.retry.initial-delay-ms:1000}")
+    private long retryInitialDelayMs; // Задержка первого уровня повтора
+
+    @Value("${payments.retry.multiplier:4.0}")
+    private double retryMultiplier; // Множитель задержки следующего уровня
+
+    @Value("${payments.retry.max-delay-ms:60000}")
+    private long retryMaxDelayMs; // Максимальная задержка уровня повтора
+
     /**
      * Конфигурация для Kafka Consumer.
      * Этот метод задает настройки для подключения к Kafka.
@@ -43,8 +125,16 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers); // Адрес Kafka сервера
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "payment-service-group"); // ID группы потребителей
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class); // Сериализатор ключей
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class); // Сериализатор значений
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class); // Ошибка десериализации не останавливает партицию
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, EventDeserializer.class); // Десериализатор событий (бинарный формат и старый строковый)
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"); // "latest" для получения новых сообщений, "earliest" для всех сообщений
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false); // Смещения фиксирует контейнер после обработки
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed"); // Записи прерванных транзакций не читаются
+        if (isBatchMode()) {
+            props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxRecords); // Максимальный размер пачки
+            props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, batchMaxWaitMs); // Максимальное ожидание пачки
+            props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batchMinBytes); // Минимальный объём ответа брокера
+        }
         return props;
     }
 
@@ -55,44 +145,199 @@ public class KafkaConsumerConfig {
      * @return ConsumerFactory для создания потребителей Kafka
      */
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, DomainEvent> consumerFactory() {
         logger.info("Creating Kafka ConsumerFactory with the provided configurations"); // Логирование создания фабрики
         return new DefaultKafkaConsumerFactory<>(consumerConfigs()); // Создает новый Consumer с заданными конфигурациями
     }
 
+    /**
+     * Пул обработчиков режима parallel: записи одной партиции обрабатываются параллельно,
+     * но записи одного заказа — строго по порядку.
+     *
+     * @return Пул с сохранением порядка по ключу
+     */
+    @Bean(destroyMethod = "shutdown")
+    public KeyOrderedExecutor paymentWorkers() {
+        int workers = parallelWorkers > 0 ? parallelWorkers : Runtime.getRuntime().availableProcessors();
+        return new KeyOrderedExecutor(workers, "payment-worker-");
+    }
+
+    /**
+     * Пул обработчиков режима fair: записи распределяются по очередям клиентов (customerId),
+     * которые обслуживаются по кругу (deficit round-robin), поэтому всплеск платежей одного клиента
+     * не задерживает платежи остальных.
+     *
+     * @return Пул со справедливым обслуживанием клиентов
+     */
+    @Bean(destroyMethod = "shutdown")
+    public DeficitRoundRobinExecutor paymentFairWorkers() {
+        int workers = fairWorkers > 0 ? fairWorkers : Runtime.getRuntime().availableProcessors();
+        return new DeficitRoundRobinExecutor(workers, fairQuantumBytes, fairMaxQueuedPerCustomer, fairMaxQueued,
+                "payment-fair-worker-");
+    }
+
+    /**
+     * Retry topic и dead-letter topic для topic событий платежей.
+     *
+     * @return Настройки неблокирующих повторов
+     */
+    @Bean(destroyMethod = "close")
+    public RetryTopics paymentRetryTopics() {
+        return new RetryTopics(bootstrapServers, paymentsTopic, retryAttempts,
+                retryInitialDelayMs, retryMultiplier, retryMaxDelayMs);
+    }
+
     /**
      * Создает контейнер для слушателя сообщений Kafka.
      * Этот метод настраивает контейнер, который будет прослушивать сообщения из заданного Kafka topic.
+     * В режиме batch весь результат poll обрабатывается одной массовой записью, а смещения фиксируются
+     * вручную после успешной обработки пачки. В режиме parallel записи передаются в пул обработчиков
+     * с сохранением порядка по orderId; каждая запись подтверждается после обработки, и контейнер
+     * фиксирует только непрерывный префикс подтверждённых смещений партиции (asyncAcks).
+     * В режиме fair записи ставятся в очереди клиентов и обслуживаются по кругу; пока очередь клиента
+     * или общая очередь переполнена, контейнер приостановлен.
+     * Запись, обработка которой завершилась ошибкой, сразу переносится в retry topic.
      *
+     * @param paymentService     Сервис, сохраняющий платежи из событий
+     * @param paymentWorkers     Пул обработчиков режима parallel
+     * @param paymentFairWorkers Пул обработчиков режима fair
+     * @param paymentRetryTopics Retry topic для ошибочных записей
+     * @param listenerMetrics    Метрики обработки записей
      * @return MessageListenerContainer, который будет слушать сообщения из Kafka
      */
     @Bean
-    public MessageListenerContainer messageListenerContainer() {
-        logger.info("Creating Kafka message listener container for topic: payment-topic"); // Логирование создания контейнера
+    public MessageListenerContainer messageListenerContainer(PaymentService paymentService,
+                                                             KeyOrderedExecutor paymentWorkers,
+                                                             DeficitRoundRobinExecutor paymentFairWorkers,
+                                                             RetryTopics paymentRetryTopics,
+                                                             ListenerMetrics listenerMetrics) {
+        logger.info("Creating Kafka message listener container for topic: {} in {} mode", paymentsTopic, consumerMode); // Логирование создания контейнера
         // Настройка параметров контейнера для слушателя
-        ContainerProperties containerProps = new ContainerProperties("payment-topic"); // Замените на ваш Kafka topic
+        ContainerProperties containerProps = new ContainerProperties(paymentsTopic); // Topic событий платежей
 
         // Устанавливаем слушателя сообщений
-        containerProps.setMessageListener(new MyMessageListener());
+        if (isBatchMode()) {
+            containerProps.setMessageListener(new PaymentBatchListener(paymentService));
+            containerProps.setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE); // Фиксация сразу после acknowledge()
+        } else if (isParallelMode()) {
+            containerProps.setMessageListener(new KeyOrderedPaymentListener(paymentService, paymentWorkers, paymentRetryTopics, listenerMetrics));
+            containerProps.setAckMode(ContainerProperties.AckMode.MANUAL);
+            containerProps.setAsyncAcks(true); // Подтверждения приходят не по порядку из потоков пула
+        } else if (isFairMode()) {
+            FairPaymentListener fairListener = new FairPaymentListener(paymentService, paymentFairWorkers, paymentRetryTopics, listenerMetrics);
+            containerProps.setMessageListener(fairListener);
+            containerProps.setConsumerRebalanceListener(fairListener); // Отозванные партиции перестают подтверждаться
+            // Подтверждения упорядочивает слушатель; asyncAcks не подходит, так как не даёт читать дальше,
+            // пока не обработан весь предыдущий poll, и очередь крупного клиента задерживала бы остальных
+            containerProps.setAckMode(ContainerProperties.AckMode.MANUAL);
+        } else {
+            containerProps.setMessageListener(new MyMessageListener(paymentService));
+        }
+        containerProps.setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("payment-consumer-").build());
 
         // Создаем контейнер для слушателя с использованием ConsumerFactory и настроек контейнера
-        ConcurrentMessageListenerContainer<String, String> container =
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
                 new ConcurrentMessageListenerContainer<>(consumerFactory(), containerProps);
 
         // Устанавливаем уровень параллелизма (количество потоков для обработки сообщений)
         container.setConcurrency(3);
+        container.setCommonErrorHandler(paymentRetryTopics.errorHandler()); // Ошибочные записи уходят в retry topic
+        if (isBatchMode()) {
+            container.setBatchInterceptor(listenerMetrics.batchInterceptor("messageListenerContainer"));
+        } else if (!isParallelMode() && !isFairMode()) { // В режимах parallel и fair записи учитываются в потоках пула
+            container.setRecordInterceptor(listenerMetrics.recordInterceptor("messageListenerContainer"));
+        }
+        if (isFairMode()) {
+            paymentFairWorkers.setBackpressure(container::pause, container::resume); // Переполнение очередей приостанавливает чтение
+        }
+
+        return container;
+    }
 
+    /**
+     * Создает контейнер, читающий retry topic событий платежей.
+     * Записи обрабатываются по одной; при повторной ошибке запись переходит на следующий уровень,
+     * после последнего — в dead-letter topic.
+     *
+     * @param paymentService     Сервис, сохраняющий платежи из событий
+     * @param paymentRetryTopics Retry topic событий платежей
+     * @param listenerMetrics    Метрики обработки записей
+     * @return MessageListenerContainer для retry topic
+     */
+    @Bean
+    public MessageListenerContainer paymentRetryListenerContainer(PaymentService paymentService,
+                                                                  RetryTopics paymentRetryTopics,
+                                                                  ListenerMetrics listenerMetrics) {
+        ContainerProperties containerProps = new ContainerProperties(
+                paymentRetryTopics.getRetryTopics().toArray(String[]::new));
+        containerProps.setGroupId("payment-service-group-retry");
+        containerProps.setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("payment-retry-consumer-").build());
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
+                paymentRetryTopics.retryContainer(consumerFactory(), containerProps, new MyMessageListener(paymentService));
+        container.setRecordInterceptor(listenerMetrics.recordInterceptor("paymentRetryListenerContainer"));
         return container;
     }
 
+    /**
+     * Создает контейнер, который читает topic заказов и публикует события платежей.
+     * Каждая пачка записей обрабатывается в транзакции Kafka: события платежей и смещения пачки
+     * фиксируются вместе или не фиксируются вовсе, поэтому после сбоя пачка обрабатывается заново,
+     * а потребители topic платежей (read_committed) видят ровно одно событие на каждую запись заказа.
+     * Повторная запись того же заказа в topic заказов даёт ещё одно событие, но с тем же идентификатором
+     * платежа ({@link PaymentIdAllocator#forOrder}), поэтому в хранилище остаётся один платеж.
+     *
+     * @param paymentService     Сервис, формирующий платежи по заказам
+     * @param kafkaTemplate      Шаблон для отправки событий платежей
+     * @param transactionManager Менеджер транзакций Kafka
+     * @param listenerMetrics    Метрики обработки записей
+     * @return MessageListenerContainer для topic заказов
+     */
+    @Bean
+    public MessageListenerContainer ordersListenerContainer(PaymentService paymentService,
+                                                            KafkaTemplate<String, DomainEvent> kafkaTemplate,
+                                                            KafkaTransactionManager<String, DomainEvent> transactionManager,
+                                                            ListenerMetrics listenerMetrics) {
+        logger.info("Creating transactional Kafka listener container for topic: {} -> {}", ordersTopic, paymentsTopic); // Логирование создания контейнера
+        ContainerProperties containerProps = new ContainerProperties(ordersTopic);
+        containerProps.setGroupId("payment-service-orders"); // Отдельная группа, чтобы не зависеть от ребалансировок payment-topic
+        containerProps.setMessageListener(new OrderPaymentListener(paymentService, kafkaTemplate, paymentsTopic));
+        containerProps.setKafkaAwareTransactionManager(transactionManager); // Транзакция на пачку, смещения в той же транзакции
+        containerProps.setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("payment-orders-consumer-").build());
+
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
+                new ConcurrentMessageListenerContainer<>(consumerFactory(), containerProps);
+        container.setConcurrency(3);
+        container.setAutoStartup(ordersEnabled);
+        container.setBatchInterceptor(listenerMetrics.batchInterceptor("ordersListenerContainer"));
+        return container;
+    }
+
+    private boolean isBatchMode() {
+        return "batch".equalsIgnoreCase(consumerMode);
+    }
+
+    private boolean isParallelMode() {
+        return "parallel".equalsIgnoreCase(consumerMode);
+    }
+
+    private boolean isFairMode() {
+        return "fair".equalsIgnoreCase(consumerMode);
+    }
+
     /**
      * Реализация слушателя сообщений Kafka.
      * Этот класс будет обрабатывать полученные сообщения.
      */
-    private static class MyMessageListener implements MessageListener<String, String> {
+    private static class MyMessageListener implements MessageListener<String, DomainEvent> {
 
         private static final Logger logger = LoggerFactory.getLogger(MyMessageListener.class); // Логгер для слушателя
 
+        private final PaymentService paymentService;
+
+        MyMessageListener(PaymentService paymentService) {
+            this.paymentService = paymentService;
+        }
+
         /**
          * Метод обработки сообщений.
          * Здесь можно реализовать бизнес-логику для обработки полученных сообщений.
@@ -100,21 +345,358 @@ public class KafkaConsumerConfig {
          * @param record Сообщение, полученное из Kafka topic.
          */
         @Override
-        public void onMessage(ConsumerRecord<String, String> record) {
-            // Получаем сообщение из Kafka
-            String message = record.value();
+        public void onMessage(ConsumerRecord<String, DomainEvent> record) {
+            // Получаем событие из Kafka
+            DomainEvent message = record.value();
 
             // Логируем полученное сообщение
-            logger.info("Received message from Kafka topic 'payment-topic': {}", message);
+            logger.debug("Received message from Kafka topic 'payment-topic': {}", message);
+
+            // Ошибка обработки передаётся контейнеру, который переносит запись в retry topic
+            if (message instanceof PaymentEvent payment) {
+                paymentService.recordPayments(List.of(payment));
+            }
+        }
+    }
+
+    /**
+     * Слушатель пачек сообщений Kafka.
+     * Платежи из всей пачки сохраняются одной массовой записью, после чего смещения пачки фиксируются.
+     * При ошибке записи, предшествующие ошибочной, сохраняются и подтверждаются, ошибочная запись
+     * переносится в retry topic, а остальные записи пачки читаются повторно.
+     */
+    private static class PaymentBatchListener implements BatchAcknowledgingMessageListener<String, DomainEvent> {
+
+        private static final Logger logger = LoggerFactory.getLogger(PaymentBatchListener.class); // Логгер для слушателя
 
-            // Здесь должна быть логика обработки сообщения, например, обработка платежей
+        private final PaymentService paymentService;
+
+        PaymentBatchListener(PaymentService paymentService) {
+            this.paymentService = paymentService;
+        }
+
+        /**
+         * Обработка пачки сообщений, полученных одним poll.
+         *
+         * @param records        Сообщения пачки
+         * @param acknowledgment Подтверждение для фиксации смещений пачки
+         */
+        @Override
+        public void onMessage(List<ConsumerRecord<String, DomainEvent>> records, Acknowledgment acknowledgment) {
+            List<PaymentEvent> payments = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                ConsumerRecord<String, DomainEvent> record = records.get(i);
+                if (record.value() instanceof PaymentEvent payment) {
+                    payments.add(payment);
+                } else if (record.value() == null && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                    // Нераспознанная запись: сохраняем предыдущие и передаём её обработчику ошибок
+                    recordAll(records, payments, i);
+                    throw new BatchListenerFailedException("Undeserializable payment record", i);
+                }
+            }
+
+            recordAll(records, payments, records.size());
+            acknowledgment.acknowledge();
+
+            logger.debug("Processed batch of {} records ({} payments)", records.size(), payments.size());
+        }
+
+        /**
+         * Сохраняет платежи пачки одной массовой записью. Если она не удалась, записи до end сохраняются
+         * по одной, чтобы найти ошибочную запись и передать обработчику ошибок только её. Платежи, уже
+         * сохранённые массовой записью, при этом не меняются и повторно в агрегаты не попадают.
+         */
+        private void recordAll(List<ConsumerRecord<String, DomainEvent>> records, List<PaymentEvent> payments, int end) {
+            if (payments.isEmpty()) {
+                return;
+            }
             try {
-                // Пример обработки
-                // processPayment(message);
-                logger.info("Processed payment message successfully: {}", message);
+                paymentService.recordPayments(payments);
             } catch (Exception e) {
-                logger.error("Error processing payment message: {}", message, e);
+                logger.warn("Batch of {} payments failed, locating failed record", payments.size(), e);
+                for (int i = 0; i < end; i++) {
+                    if (records.get(i).value() instanceof PaymentEvent payment) {
+                        try {
+                            paymentService.recordPayments(List.of(payment));
+                        } catch (Exception recordFailure) {
+                            throw new BatchListenerFailedException("Failed to record payment", recordFailure, i);
+                        }
+                    }
+                }
             }
         }
     }
+
+    /**
+     * Слушатель режима parallel.
+     * Поток потребителя только распределяет записи по полосам пула по orderId, а обработка и подтверждение
+     * записи выполняются в потоке полосы. Контейнер приостанавливает чтение, пока не подтверждены все записи
+     * предыдущего poll, поэтому объём записей в обработке ограничен max.poll.records.
+     * Запись, обработка которой завершилась ошибкой, переносится в retry topic из потока полосы и подтверждается.
+     */
+    private static class KeyOrderedPaymentListener implements AcknowledgingMessageListener<String, DomainEvent> {
+
+        private static final Logger logger = LoggerFactory.getLogger(KeyOrderedPaymentListener.class); // Логгер для слушателя
+
+        private final PaymentService paymentService;
+        private final KeyOrderedExecutor workers;
+        private final RetryTopics retryTopics;
+        private final ListenerMetrics listenerMetrics;
+
+        KeyOrderedPaymentListener(PaymentService paymentService, KeyOrderedExecutor workers, RetryTopics retryTopics,
+                                  ListenerMetrics listenerMetrics) {
+            this.paymentService = paymentService;
+            this.workers = workers;
+            this.retryTopics = retryTopics;
+            this.listenerMetrics = listenerMetrics;
+        }
+
+        /**
+         * Передача записи в полосу её заказа.
+         *
+         * @param record         Сообщение, полученное из Kafka topic
+         * @param acknowledgment Подтверждение обработки записи
+         */
+        @Override
+        public void onMessage(ConsumerRecord<String, DomainEvent> record, Acknowledgment acknowledgment) {
+            workers.execute(orderingKey(record), () -> {
+                long startedAt = System.nanoTime();
+                boolean success = false;
+                try {
+                    if (record.value() instanceof PaymentEvent payment) {
+                        paymentService.recordPayments(List.of(payment));
+                    } else if (record.value() == null && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                        throw new IllegalStateException("Undeserializable payment record");
+                    }
+                    success = true;
+                } catch (Exception e) {
+                    try {
+                        retryTopics.recover(record, e);
+                    } catch (Exception recoveryFailure) {
+                        logger.error("Failed to move payment record {}-{}@{} to retry topic",
+                                record.topic(), record.partition(), record.offset(), recoveryFailure);
+                    }
+                }
+                listenerMetrics.recordProcessed("messageListenerContainer", record, startedAt, success);
+                acknowledgment.acknowledge();
+            });
+        }
+
+        /**
+         * Ключ упорядочивания: orderId платежа, иначе ключ записи, иначе партиция
+         * (записи без ключа обрабатываются в порядке партиции).
+         */
+        private static Object orderingKey(ConsumerRecord<String, DomainEvent> record) {
+            if (record.value() instanceof PaymentEvent payment && payment.getOrderId() != null) {
+                return payment.getOrderId();
+            }
+            if (record.key() != null) {
+                return record.key();
+            }
+            return record.partition();
+        }
+    }
+
+    /**
+     * Слушатель режима fair.
+     * Поток потребителя ставит запись в очередь её клиента (customerId), а обработка выполняется пулом,
+     * который обходит очереди клиентов по кругу с квантом в байтах событий (deficit round-robin). Записи одного
+     * клиента, а значит и одного заказа, обрабатываются по порядку.
+     * Подтверждения приходят из потоков пула не по порядку смещений, поэтому слушатель подтверждает запись
+     * только когда обработаны все предыдущие записи её партиции; фиксируется всегда непрерывный префикс.
+     * При отзыве или потере партиции её учёт удаляется: записи партиции, ещё ждущие в очередях, пропускаются,
+     * а уже обрабатываемые не подтверждаются. Новый владелец партиции читает их заново с последнего
+     * зафиксированного смещения; повторная запись платежа его не меняет.
+     */
+    private static class FairPaymentListener implements AcknowledgingMessageListener<String, DomainEvent>,
+            ConsumerRebalanceListener {
+
+        private static final Logger logger = LoggerFactory.getLogger(FairPaymentListener.class); // Логгер для слушателя
+
+        private final PaymentService paymentService;
+        private final DeficitRoundRobinExecutor workers;
+        private final RetryTopics retryTopics;
+        private final ListenerMetrics listenerMetrics;
+        private final Map<TopicPartition, PartitionProgress> progress = new ConcurrentHashMap<>(); // Незавершённые записи по партициям
+
+        FairPaymentListener(PaymentService paymentService, DeficitRoundRobinExecutor workers, RetryTopics retryTopics,
+                            ListenerMetrics listenerMetrics) {
+            this.paymentService = paymentService;
+            this.workers = workers;
+            this.retryTopics = retryTopics;
+            this.listenerMetrics = listenerMetrics;
+        }
+
+        /**
+         * Передача записи в очередь её клиента.
+         *
+         * @param record         Сообщение, полученное из Kafka topic
+         * @param acknowledgment Подтверждение обработки записи
+         */
+        @Override
+        public void onMessage(ConsumerRecord<String, DomainEvent> record, Acknowledgment acknowledgment) {
+            PartitionProgress partition = progress.computeIfAbsent(
+                    new TopicPartition(record.topic(), record.partition()), tp -> new PartitionProgress());
+            partition.started(record.offset());
+            workers.execute(customerKey(record), Math.max(1, record.serializedValueSize()), () -> {
+                if (partition.isRevoked()) {
+                    return; // Партиция отозвана, запись прочитает её новый владелец
+                }
+                long startedAt = System.nanoTime();
+                boolean success = false;
+                try {
+                    if (record.value() instanceof PaymentEvent payment) {
+                        paymentService.recordPayments(List.of(payment));
+                    } else if (record.value() == null && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                        throw new IllegalStateException("Undeserializable payment record");
+                    }
+                    success = true;
+                } catch (Exception e) {
+                    try {
+                        retryTopics.recover(record, e);
+                    } catch (Exception recoveryFailure) {
+                        logger.error("Failed to move payment record {}-{}@{} to retry topic",
+                                record.topic(), record.partition(), record.offset(), recoveryFailure);
+                    }
+                }
+                listenerMetrics.recordProcessed("messageListenerContainer", record, startedAt, success);
+                partition.completed(record.offset(), acknowledgment);
+            });
+        }
+
+        /**
+         * Отзыв партиций: незавершённые записи отозванных партиций больше не подтверждаются.
+         * Потеря партиций (onPartitionsLost) по умолчанию обрабатывается так же.
+         *
+         * @param partitions Отозванные партиции
+         */
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            for (TopicPartition topicPartition : partitions) {
+                PartitionProgress partition = progress.remove(topicPartition);
+                if (partition != null) {
+                    int dropped = partition.revoke();
+                    if (dropped > 0) {
+                        logger.info("Partition {} revoked with {} unacknowledged records", topicPartition, dropped);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            // Учёт партиции создаётся при первой записи
+        }
+
+        /**
+         * Ключ справедливости: customerId платежа, иначе ключ упорядочивания записи
+         * (записи без клиента и ключа обслуживаются как один клиент на партицию).
+         */
+        private static Object customerKey(ConsumerRecord<String, DomainEvent> record) {
+            if (record.value() instanceof PaymentEvent payment && payment.getCustomerId() != null) {
+                return payment.getCustomerId();
+            }
+            if (record.key() != null) {
+                return record.key();
+            }
+            return record.partition();
+        }
+    }
+
+    /**
+     * Незавершённые записи партиции в порядке смещений.
+     * Запись подтверждается, когда завершены она и все предыдущие; подтверждения выдаются под блокировкой,
+     * поэтому контейнер получает их в порядке возрастания смещений.
+     */
+    private static final class PartitionProgress {
+
+        private final TreeMap<Long, Acknowledgment> pending = new TreeMap<>(); // null — запись ещё обрабатывается
+        private volatile boolean revoked; // Партиция отозвана, подтверждения больше не выдаются
+
+        synchronized void started(long offset) {
+            pending.put(offset, null);
+        }
+
+        boolean isRevoked() {
+            return revoked;
+        }
+
+        /**
+         * Отзыв партиции: дальнейшие завершения записей не подтверждаются.
+         *
+         * @return Количество неподтверждённых записей
+         */
+        synchronized int revoke() {
+            revoked = true;
+            int dropped = pending.size();
+            pending.clear();
+            return dropped;
+        }
+
+        synchronized void completed(long offset, Acknowledgment acknowledgment) {
+            if (revoked) {
+                return;
+            }
+            pending.put(offset, acknowledgment);
+            Acknowledgment last = null;
+            while (!pending.isEmpty() && pending.firstEntry().getValue() != null) {
+                last = pending.pollFirstEntry().getValue();
+            }
+            if (last != null) {
+                last.acknowledge(); // Фиксирует смещение этой записи и всех предыдущих
+            }
+        }
+    }
+
+    /**
+     * Слушатель topic заказов.
+     * Вызывается внутри транзакции контейнера, поэтому отправленные события платежей становятся видимы
+     * только вместе с фиксацией смещений пачки. Ошибка отправки прерывает транзакцию, и контейнер
+     * возвращает пачку к повторной обработке.
+     */
+    private static class OrderPaymentListener implements BatchMessageListener<String, DomainEvent> {
+
+        private static final Logger logger = LoggerFactory.getLogger(OrderPaymentListener.class); // Логгер для слушателя
+
+        private final PaymentService paymentService;
+        private final KafkaTemplate<String, DomainEvent> kafkaTemplate;
+        private final String paymentsTopic;
+
+        OrderPaymentListener(PaymentService paymentService, KafkaTemplate<String, DomainEvent> kafkaTemplate,
+                             String paymentsTopic) {
+            this.paymentService = paymentService;
+            this.kafkaTemplate = kafkaTemplate;
+            this.paymentsTopic = paymentsTopic;
+        }
+
+        /**
+         * Обработка пачки заказов: по одному событию платежа на каждый новый заказ.
+         * Сообщения о смене статуса заказа (заголовок {@link EventHeaders#EVENT_TYPE}) платежей не порождают.
+         * Событие отправляется с ключом orderId, чтобы события одного заказа попадали в одну партицию,
+         * и с временем приёма заказа, чтобы сквозная задержка считалась от заказа, а не от платежа.
+         *
+         * @param records Сообщения пачки
+         */
+        @Override
+        public void onMessage(List<ConsumerRecord<String, DomainEvent>> records) {
+            int produced = 0;
+            for (ConsumerRecord<String, DomainEvent> record : records) {
+                if (record.value() instanceof OrderEvent order && !EventHeaders.isOrderStatusChange(record.headers())) {
+                    PaymentEvent payment = paymentService.paymentForOrder(order);
+                    if (payment != null) {
+                        ProducerRecord<String, DomainEvent> paymentRecord =
+                                new ProducerRecord<>(paymentsTopic, order.getOrderId(), payment);
+                        Header producedAt = record.headers().lastHeader(EventHeaders.PRODUCED_AT);
+                        if (producedAt != null) {
+                            paymentRecord.headers().add(producedAt);
+                        }
+                        kafkaTemplate.send(paymentRecord);
+                        produced++;
+                    }
+                }
+            }
+
+            logger.debug("Processed batch of {} orders ({} payments published)", records.size(), produced);
+        }
+    }
 }
@@ -0,0 +1,88 @@
+package net.orekhov.paymentservice.config;
+
+import net.orekhov.paymentservice.event.DomainEvent;
+import net.orekhov.paymentservice.event.EventSerializer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Конфигурация транзакционного продюсера Kafka для службы платежей.
+ * События платежей отправляются в той же транзакции, в которой фиксируются смещения прочитанных заказов,
+ * поэтому каждая запись заказа порождает ровно одно видимое потребителям событие платежа. Повторные записи
+ * одного заказа дают события с тем же идентификатором платежа и сливаются в хранилище в один платеж.
+ */
+@Configuration
+public class KafkaProducerConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(KafkaProducerConfig.class); // Логгер для конфигурации
+    private final String bootstrapServers = "localhost:9092"; // Адрес Kafka сервера, замените на ваш
+
+    @Value("${payments.kafka.transaction-id-prefix:payment-service-tx-}")
+    private String transactionIdPrefix; // Префикс transactional.id; должен быть уникален для каждого экземпляра службы
+
+    /**
+     * Создание ProducerFactory для транзакционного продюсера.
+     *
+     * @return Конфигурированный экземпляр ProducerFactory.
+     */
+    @Bean
+    public ProducerFactory<String, DomainEvent> producerFactory() {
+        logger.info("Creating transactional ProducerFactory with prefix {}", transactionIdPrefix); // Логирование создания фабрики
+        DefaultKafkaProducerFactory<String, DomainEvent> producerFactory = new DefaultKafkaProducerFactory<>(producerConfigs());
+        producerFactory.setTransactionIdPrefix(transactionIdPrefix); // Включает транзакции продюсера
+        return producerFactory;
+    }
+
+    /**
+     * KafkaTemplate для отправки событий платежей.
+     * Внутри транзакции контейнера отправка выполняется в этой транзакции.
+     *
+     * @param producerFactory Фабрика транзакционных продюсеров.
+     * @return Конфигурированный экземпляр KafkaTemplate.
+     */
+    @Bean
+    public KafkaTemplate<String, DomainEvent> kafkaTemplate(ProducerFactory<String, DomainEvent> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
+    }
+
+    /**
+     * Менеджер транзакций Kafka, которым контейнер слушателя начинает и фиксирует транзакцию
+     * на каждую пачку записей, включая смещения этой пачки.
+     *
+     * @param producerFactory Фабрика транзакционных продюсеров.
+     * @return Менеджер транзакций Kafka.
+     */
+    @Bean
+    public KafkaTransactionManager<String, DomainEvent> kafkaTransactionManager(
+            ProducerFactory<String, DomainEvent> producerFactory) {
+        return new KafkaTransactionManager<>(producerFactory);
+    }
+
+    /**
+     * Конфигурация параметров продюсера Kafka.
+     *
+     * @return Карта конфигураций для продюсера.
+     */
+    private Map<String, Object> producerConfigs() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers); // Адрес Kafka сервера
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class); // Сериализатор для ключей
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, EventSerializer.class); // Сериализатор событий
+        props.put(ProducerConfig.ACKS_CONFIG, "all"); // Обязательно для транзакций
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true); // Обязательно для транзакций
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5); // События пачки отправляются вместе до фиксации транзакции
+        return props;
+    }
+}
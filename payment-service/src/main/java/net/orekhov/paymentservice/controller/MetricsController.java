@@ -0,0 +1,33 @@
+package net.orekhov.paymentservice.controller;
+
+import net.orekhov.paymentservice.metrics.ListenerMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Контроллер метрик слушателей Kafka для сборщика Prometheus.
+ */
+@RestController
+public class MetricsController {
+
+    private final ListenerMetrics listenerMetrics;
+
+    /**
+     * Конструктор для внедрения зависимости ListenerMetrics.
+     *
+     * @param listenerMetrics Метрики контейнеров слушателей.
+     */
+    public MetricsController(ListenerMetrics listenerMetrics) {
+        this.listenerMetrics = listenerMetrics;
+    }
+
+    /**
+     * Эндпоинт для получения метрик в текстовом формате Prometheus.
+     *
+     * @return Метрики отставания, скорости чтения, времени обработки и сквозной задержки.
+     */
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String metrics() {
+        return listenerMetrics.scrape();
+    }
+}
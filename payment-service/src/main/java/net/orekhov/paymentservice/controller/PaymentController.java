@@ -1,14 +1,20 @@
 package net.orekhov.paymentservice.controller;
 
 import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentAggregate;
+import net.orekhov.paymentservice.model.StatusUpdate;
+import net.orekhov.paymentservice.model.StatusUpdateResult;
 import net.orekhov.paymentservice.service.PaymentService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * Контроллер для обработки запросов, связанных с платежами.
  * Этот класс предоставляет эндпоинты для создания, получения, обновления и удаления платежей.
@@ -19,15 +25,19 @@ public class PaymentController {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentController.class); // Логгер для контроллера
     private final PaymentService paymentService;
+    private final int maxStatusBatchSize; // Максимальное количество элементов в массовом обновлении статусов
 
     /**
      * Конструктор для внедрения зависимости PaymentService.
      *
      * @param paymentService Сервис для обработки операций с платежами.
+     * @param maxStatusBatchSize Максимальное количество элементов в массовом обновлении статусов.
      */
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService,
+                             @Value("${payments.status-update.max-batch-size:10000}") int maxStatusBatchSize) {
         this.paymentService = paymentService;
+        this.maxStatusBatchSize = maxStatusBatchSize;
     }
 
     /**
@@ -69,25 +79,85 @@ public class PaymentController {
     /**
      * Эндпоинт для обновления статуса платежа.
      * Пример: можно обновить статус на "completed" (завершен).
-     * Если платеж с данным ID не найден, возвращает статус NOT_FOUND (404).
+     * Допустимые переходы задаются жизненным циклом {@link net.orekhov.paymentservice.model.PaymentStatus}.
      *
      * @param paymentId ID платежа.
      * @param status Новый статус для обновления.
-     * @return Ответ с обновленными данными платежа и HTTP статусом OK (200), если обновление успешно.
-     *         Если платеж не найден, возвращается статус NOT_FOUND (404).
+     * @return Ответ с обновленными данными платежа и HTTP статусом OK (200), если статус установлен.
+     *         BAD_REQUEST (400) для неизвестного статуса, NOT_FOUND (404), если платеж не найден,
+     *         CONFLICT (409), если переход из текущего статуса недопустим.
      */
     @PutMapping("/{paymentId}")
     public ResponseEntity<Payment> updatePaymentStatus(
             @PathVariable Long paymentId,
             @RequestParam String status) {
         logger.info("Updating status of payment with ID: {} to {}", paymentId, status); // Логирование запроса на обновление
-        Payment updatedPayment = paymentService.updatePaymentStatus(paymentId, status);
-        if (updatedPayment == null) {
-            logger.warn("Payment not found for ID: {}", paymentId); // Логирование, если платеж не найден
+        StatusUpdateResult result = paymentService.updatePaymentStatus(paymentId, status);
+        switch (result.getResult()) {
+            case INVALID_STATUS -> {
+                logger.warn("Unknown payment status: {}", status); // Логирование неизвестного статуса
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            case NOT_FOUND -> {
+                logger.warn("Payment not found for ID: {}", paymentId); // Логирование, если платеж не найден
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            case INVALID_TRANSITION, CONFLICT -> {
+                logger.warn("Payment with ID: {} cannot move from {} to {}", paymentId, result.getStatus(), status); // Логирование недопустимого перехода
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+            default -> {
+                Payment updatedPayment = paymentService.getPaymentById(paymentId);
+                logger.info("Payment status updated successfully: {}", updatedPayment); // Логирование успешного обновления статуса
+                return new ResponseEntity<>(updatedPayment, HttpStatus.OK);
+            }
+        }
+    }
+
+    /**
+     * Эндпоинт для массового обновления статусов платежей.
+     * Каждый элемент применяется независимо; для элемента можно указать expectedStatus,
+     * тогда статус меняется только если текущий статус платежа совпадает с ожидаемым.
+     *
+     * @param updates Элементы обновления.
+     * @return Результаты по каждому элементу в порядке запроса и HTTP статус OK (200).
+     *         BAD_REQUEST (400), если элементов больше payments.status-update.max-batch-size.
+     */
+    @PutMapping("/status")
+    public ResponseEntity<List<StatusUpdateResult>> updatePaymentStatuses(@RequestBody List<StatusUpdate> updates) {
+        logger.info("Bulk status update of {} payments", updates.size()); // Логирование массового обновления
+        if (updates.size() > maxStatusBatchSize) {
+            logger.warn("Bulk status update of {} payments exceeds limit {}", updates.size(), maxStatusBatchSize); // Логирование превышения лимита
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(paymentService.updatePaymentStatuses(updates), HttpStatus.OK);
+    }
+
+    /**
+     * Эндпоинт для получения агрегатов платежей по всем окнам времени.
+     * Агрегаты обновляются при создании платежей и смене статуса, поэтому запрос не перебирает платежи.
+     *
+     * @return Количество и сумма платежей по статусам для каждого окна и HTTP статус OK (200).
+     */
+    @GetMapping("/aggregates")
+    public ResponseEntity<List<PaymentAggregate>> getAggregates() {
+        return new ResponseEntity<>(paymentService.getAggregates(), HttpStatus.OK);
+    }
+
+    /**
+     * Эндпоинт для получения агрегатов платежей за одно окно времени.
+     *
+     * @param window Название окна из payments.aggregates.windows (например, 5m).
+     * @return Агрегаты окна и HTTP статус OK (200) или NOT_FOUND (404), если окно не настроено.
+     */
+    @GetMapping("/aggregates/{window}")
+    public ResponseEntity<PaymentAggregate> getAggregate(@PathVariable String window) {
+        PaymentAggregate aggregate = paymentService.getAggregate(window);
+        if (aggregate == null) {
+            logger.warn("Unknown aggregate window: {}", window); // Логирование неизвестного окна
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
-        logger.info("Payment status updated successfully: {}", updatedPayment); // Логирование успешного обновления статуса
-        return new ResponseEntity<>(updatedPayment, HttpStatus.OK);
+        return new ResponseEntity<>(aggregate, HttpStatus.OK);
     }
 
     /**
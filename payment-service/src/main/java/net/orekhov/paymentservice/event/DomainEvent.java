@@ -0,0 +1,15 @@
+package net.orekhov.paymentservice.event;
+
+/**
+ * Базовый класс для всех событий, которыми обмениваются сервисы через Kafka.
+ * Конкретные события неизменяемы и сериализуются с помощью {@link EventCodec}.
+ */
+public abstract class DomainEvent {
+
+    /**
+     * Получить тип события.
+     *
+     * @return Тип события
+     */
+    public abstract EventType getType();
+}
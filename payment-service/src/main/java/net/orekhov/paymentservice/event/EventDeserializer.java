@@ -0,0 +1,28 @@
+package net.orekhov.paymentservice.event;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Kafka десериализатор событий из бинарного формата {@link EventCodec}.
+ * Также принимает сообщения в старом строковом формате на время миграции.
+ */
+public class EventDeserializer implements Deserializer<DomainEvent> {
+
+    /**
+     * Десериализует событие из массива байт.
+     *
+     * @param topic Название topic
+     * @param data  Байтовое представление события
+     * @return Событие или null, если data равно null
+     * @throws SerializationException если сообщение не удалось разобрать
+     */
+    @Override
+    public DomainEvent deserialize(String topic, byte[] data) {
+        try {
+            return EventCodec.decode(data);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Failed to deserialize event from topic " + topic, e);
+        }
+    }
+}
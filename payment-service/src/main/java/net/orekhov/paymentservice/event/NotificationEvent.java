@@ -0,0 +1,51 @@
+package net.orekhov.paymentservice.event;
+
+/**
+ * Событие уведомления.
+ * Содержит идентификатор, получателя и текст уведомления.
+ */
+public final class NotificationEvent extends DomainEvent {
+
+    private final String id; // Идентификатор уведомления
+    private final String recipient; // Получатель уведомления
+    private final String message; // Текст уведомления
+
+    /**
+     * Конструктор события уведомления.
+     *
+     * @param id        Идентификатор уведомления
+     * @param recipient Получатель уведомления
+     * @param message   Текст уведомления
+     */
+    public NotificationEvent(String id, String recipient, String message) {
+        this.id = id;
+        this.recipient = recipient;
+        this.message = message;
+    }
+
+    @Override
+    public EventType getType() {
+        return EventType.NOTIFICATION;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationEvent{" +
+                "id='" + id + '\'' +
+                ", recipient='" + recipient + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,67 @@
+package net.orekhov.paymentservice.event;
+
+/**
+ * Событие платежа.
+ * Содержит идентификатор платежа, связанный заказ, сумму и статус платежа.
+ */
+public final class PaymentEvent extends DomainEvent {
+
+    private final long paymentId; // Идентификатор платежа
+    private final String orderId; // Идентификатор заказа
+    private final String customerId; // Идентификатор клиента
+    private final double amount; // Сумма платежа
+    private final String status; // Статус платежа
+
+    /**
+     * Конструктор события платежа.
+     *
+     * @param paymentId  Идентификатор платежа
+     * @param orderId    Идентификатор заказа
+     * @param customerId Идентификатор клиента
+     * @param amount     Сумма платежа
+     * @param status     Статус платежа
+     */
+    public PaymentEvent(long paymentId, String orderId, String customerId, double amount, String status) {
+        this.paymentId = paymentId;
+        this.orderId = orderId;
+        this.customerId = customerId;
+        this.amount = amount;
+        this.status = status;
+    }
+
+    @Override
+    public EventType getType() {
+        return EventType.PAYMENT;
+    }
+
+    public long getPaymentId() {
+        return paymentId;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentEvent{" +
+                "paymentId=" + paymentId +
+                ", orderId='" + orderId + '\'' +
+                ", customerId='" + customerId + '\'' +
+                ", amount=" + amount +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,506 @@
+package net.orekhov.paymentservice.ledger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал операций с платежами на отображённых в память файлах с ротацией сегментов.
+ *
+ * Позиция в журнале — сквозное смещение в байтах; сегмент с номером n хранит позиции
+ * [n * segmentSize, (n + 1) * segmentSize) и называется по своей начальной позиции.
+ * Формат записи: [длина данных int][CRC32 int][номер записи long][данные]; CRC считается по номеру и данным.
+ * Длина 0 означает конец записанных данных, длина -1 — переход к следующему сегменту.
+ *
+ * Разреженный индекс хранит позицию каждой indexInterval-й записи и первой записи каждого сегмента
+ * и сохраняется рядом с сегментом в файле .index. По индексу находится место начала воспроизведения
+ * после снимка и место начала проверки хвоста при восстановлении, поэтому журнал не читается целиком.
+ *
+ * Запись выполняется под блокировкой журнала, чтение — без блокировки до позиции, полученной под ней.
+ */
+public class PaymentLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentLedger.class); // Логгер для журнала
+
+    private static final int HEADER_SIZE = 16; // Длина, CRC32 и номер записи
+    private static final int ROLL_MARKER = -1; // Маркер перехода к следующему сегменту
+    private static final int INDEX_ENTRY_SIZE = 16; // Номер записи и позиция
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final byte[] ZERO_CHUNK = new byte[64 * 1024]; // Блок нулей для затирания хвоста сегмента
+
+    private final Path directory; // Каталог журнала
+    private final int segmentSize; // Размер сегмента в байтах
+    private final int indexInterval; // Шаг разреженного индекса в записях
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>(); // Отображённые сегменты по номеру
+    private final NavigableMap<Long, Long> index = new ConcurrentSkipListMap<>(); // Номер записи -> позиция
+
+    private long writePosition; // Позиция следующей записи
+    private long nextSequence = 1; // Номер следующей записи
+    private long forcedPosition; // Позиция, до которой журнал сброшен на диск
+    private long firstPosition; // Начало самого старого сохранённого сегмента
+    private FileChannel indexChannel; // Файл индекса активного сегмента
+    private long indexChannelSegment = -1; // Номер сегмента, которому принадлежит indexChannel
+
+    /**
+     * Открывает журнал и восстанавливает позицию записи.
+     *
+     * @param directory     Каталог журнала
+     * @param segmentSize   Размер сегмента в байтах
+     * @param indexInterval Шаг разреженного индекса в записях
+     * @throws IOException если не удалось открыть или прочитать файлы журнала
+     */
+    public PaymentLedger(Path directory, int segmentSize, int indexInterval) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * Добавляет запись в журнал.
+     *
+     * @param payload Данные записи
+     * @return Номер записи
+     * @throws IllegalArgumentException если запись не помещается в сегмент
+     */
+    public synchronized long append(byte[] payload) {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Ledger record of " + payload.length + " bytes exceeds segment size");
+        }
+
+        int offset = offsetOf(writePosition);
+        if (segmentSize - offset < recordSize) {
+            // Запись не помещается в текущий сегмент: ставим маркер и переходим к следующему
+            if (segmentSize - offset >= Integer.BYTES) {
+                segment(segmentOf(writePosition)).putInt(offset, ROLL_MARKER);
+            }
+            writePosition = (segmentOf(writePosition) + 1) * segmentSize;
+            offset = 0;
+        }
+
+        long sequence = nextSequence++;
+        CRC32 crc = new CRC32();
+        crc.update(longBytes(sequence));
+        crc.update(payload);
+        MappedByteBuffer buffer = segment(segmentOf(writePosition));
+        buffer.putLong(offset + 2 * Integer.BYTES, sequence);
+        buffer.put(offset + HEADER_SIZE, payload);
+        buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(offset, payload.length); // Длина пишется последней, после неё запись считается полной
+
+        if (offset == 0 || sequence % indexInterval == 0) {
+            addIndexEntry(sequence, writePosition);
+        }
+        writePosition += recordSize;
+        return sequence;
+    }
+
+    /**
+     * Номер последней записанной записи.
+     *
+     * @return Номер последней записи или 0, если записей нет
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Согласованная пара (номер последней записи, позиция после неё) для снимка.
+     *
+     * @return Массив из двух элементов: номер последней записи и позиция записи
+     */
+    public synchronized long[] mark() {
+        return new long[]{nextSequence - 1, writePosition};
+    }
+
+    /**
+     * Продолжить нумерацию записей не ниже указанного номера
+     * (если журнал был усечён по снимку и после снимка записей не было).
+     *
+     * @param lastSequence Номер последней записи, уже учтённой в снимке
+     */
+    public synchronized void ensureSequenceAfter(long lastSequence) {
+        nextSequence = Math.max(nextSequence, lastSequence + 1);
+    }
+
+    /**
+     * Сбрасывает на диск все сегменты с данными, записанными после предыдущего сброса.
+     */
+    public void force() {
+        long from;
+        long upTo;
+        synchronized (this) {
+            from = forcedPosition;
+            upTo = writePosition;
+        }
+        for (long i = segmentOf(from); i <= segmentOf(Math.max(upTo - 1, from)); i++) {
+            MappedByteBuffer buffer = segments.get(i);
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+        synchronized (this) {
+            forcedPosition = Math.max(forcedPosition, upTo);
+        }
+    }
+
+    /**
+     * Воспроизводит записи с номером больше afterSequence в порядке записи.
+     *
+     * @param afterSequence Номер последней уже учтённой записи
+     * @param handler       Получатель записей
+     * @return Количество воспроизведённых записей
+     */
+    public long replay(long afterSequence, RecordHandler handler) {
+        long upTo;
+        long position;
+        synchronized (this) {
+            upTo = writePosition;
+            Map.Entry<Long, Long> start = index.floorEntry(afterSequence + 1);
+            position = start != null ? start.getValue() : firstPosition;
+        }
+
+        long replayed = 0;
+        while (position < upTo) {
+            int offset = offsetOf(position);
+            if (segmentSize - offset < HEADER_SIZE) {
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            MappedByteBuffer buffer = segment(segmentOf(position));
+            int length = buffer.getInt(offset);
+            if (length == ROLL_MARKER) {
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            if (length <= 0) {
+                break;
+            }
+            long sequence = buffer.getLong(offset + 2 * Integer.BYTES);
+            if (sequence > afterSequence) {
+                handler.handle(sequence, buffer.slice(offset + HEADER_SIZE, length));
+                replayed++;
+            }
+            position += HEADER_SIZE + length;
+        }
+        return replayed;
+    }
+
+    /**
+     * Удаляет сегменты, все записи которых находятся до указанной позиции (уже учтены в снимке).
+     *
+     * @param position Позиция, до которой записи больше не нужны
+     */
+    public void truncateBefore(long position) {
+        long keepFrom;
+        synchronized (this) {
+            keepFrom = Math.min(segmentOf(position), segmentOf(writePosition));
+            if (keepFrom * segmentSize <= firstPosition) {
+                return;
+            }
+            firstPosition = keepFrom * segmentSize;
+            long boundary = firstPosition;
+            index.values().removeIf(p -> p < boundary);
+        }
+        segments.keySet().removeIf(i -> i < keepFrom);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                long segmentIndex = segmentIndexOf(file);
+                if (segmentIndex >= 0 && segmentIndex < keepFrom) {
+                    Files.deleteIfExists(file);
+                    logger.debug("Deleted ledger file {}", file.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete compacted ledger segments", e);
+        }
+    }
+
+    /**
+     * Закрывает файл индекса. Отображённые сегменты освобождаются сборщиком мусора.
+     */
+    public synchronized void close() {
+        closeIndexChannel();
+    }
+
+    /**
+     * Восстанавливает позицию записи: загружает индексы, начиная с последней проиндексированной записи
+     * проверяет хвост журнала и останавливается на первой пустой или повреждённой записи.
+     * Данные после неё затираются, а сегменты после неё удаляются.
+     */
+    private void recover() throws IOException {
+        long firstSegment = -1;
+        long lastSegment = -1;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(SEGMENT_SUFFIX)) {
+                    long segmentIndex = segmentIndexOf(file);
+                    firstSegment = firstSegment < 0 ? segmentIndex : Math.min(firstSegment, segmentIndex);
+                    lastSegment = Math.max(lastSegment, segmentIndex);
+                }
+            }
+        }
+        if (firstSegment < 0) {
+            logger.info("Payment ledger is empty, starting a new one in {}", directory);
+            return;
+        }
+        firstPosition = firstSegment * segmentSize;
+
+        for (long i = firstSegment; i <= lastSegment; i++) {
+            loadIndex(i);
+        }
+
+        // Проверку начинаем с последней проиндексированной записи, которая действительно цела
+        long position = firstPosition;
+        long sequence = 0;
+        for (Map.Entry<Long, Long> entry : index.descendingMap().entrySet()) {
+            if (recordSequenceAt(entry.getValue()) == entry.getKey()) {
+                position = entry.getValue();
+                sequence = entry.getKey() - 1;
+                break;
+            }
+        }
+
+        while (true) {
+            int offset = offsetOf(position);
+            if (segmentSize - offset < HEADER_SIZE) {
+                if (!Files.exists(segmentPath(segmentOf(position) + 1))) {
+                    break;
+                }
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            MappedByteBuffer buffer = segment(segmentOf(position));
+            int length = buffer.getInt(offset);
+            if (length == ROLL_MARKER && Files.exists(segmentPath(segmentOf(position) + 1))) {
+                position = (segmentOf(position) + 1) * segmentSize;
+                continue;
+            }
+            if (length <= 0 || length > segmentSize - offset - HEADER_SIZE || !checksumMatches(buffer, offset, length)) {
+                break;
+            }
+            sequence = buffer.getLong(offset + 2 * Integer.BYTES);
+            position += HEADER_SIZE + length;
+        }
+
+        // Затираем хвост активного сегмента после последней целой записи (например, после обрыва записи)
+        clearTail(segment(segmentOf(position)), offsetOf(position));
+
+        // Сегменты после точки восстановления содержат устаревшие записи с верной CRC: при следующем
+        // переходе к ним они оказались бы за позицией записи и были бы прочитаны после перезапуска
+        deleteSegmentsAfter(segmentOf(position));
+
+        // Индекс не должен указывать за конец восстановленного журнала
+        long end = position;
+        index.values().removeIf(p -> p >= end);
+        rewriteIndex(segmentOf(position));
+
+        writePosition = position;
+        forcedPosition = position;
+        nextSequence = sequence + 1;
+        logger.info("Payment ledger recovered: segments {}..{}, last record {}, write position {}",
+                firstSegment, segmentOf(position), sequence, position);
+    }
+
+    /**
+     * Обнуляет сегмент от offset до конца блоками; блоки, уже состоящие из нулей, не перезаписываются,
+     * чтобы после штатной остановки восстановление не записывало на диск весь пустой хвост сегмента.
+     */
+    private void clearTail(MappedByteBuffer buffer, int offset) {
+        byte[] chunk = new byte[ZERO_CHUNK.length];
+        int dirtyFrom = -1;
+        int dirtyTo = -1;
+        for (int from = offset; from < segmentSize; from += chunk.length) {
+            int length = Math.min(chunk.length, segmentSize - from);
+            buffer.get(from, chunk, 0, length);
+            if (Arrays.mismatch(chunk, 0, length, ZERO_CHUNK, 0, length) >= 0) {
+                buffer.put(from, ZERO_CHUNK, 0, length);
+                dirtyFrom = dirtyFrom < 0 ? from : dirtyFrom;
+                dirtyTo = from + length;
+            }
+        }
+        if (dirtyFrom >= 0) {
+            buffer.force(dirtyFrom, dirtyTo - dirtyFrom);
+            logger.warn("Cleared {} bytes of incomplete ledger data after position {}", dirtyTo - offset, offset);
+        }
+    }
+
+    /**
+     * Удаляет файлы сегментов и индексов с номером больше lastSegment.
+     */
+    private void deleteSegmentsAfter(long lastSegment) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                long segmentIndex = segmentIndexOf(file);
+                if (segmentIndex > lastSegment) {
+                    segments.remove(segmentIndex);
+                    Files.deleteIfExists(file);
+                    logger.warn("Deleted ledger file {} after the recovery point", file.getFileName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Номер записи по позиции, если запись там цела, иначе -1.
+     */
+    private long recordSequenceAt(long position) {
+        int offset = offsetOf(position);
+        if (segmentSize - offset < HEADER_SIZE || !Files.exists(segmentPath(segmentOf(position)))) {
+            return -1;
+        }
+        MappedByteBuffer buffer = segment(segmentOf(position));
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length > segmentSize - offset - HEADER_SIZE || !checksumMatches(buffer, offset, length)) {
+            return -1;
+        }
+        return buffer.getLong(offset + 2 * Integer.BYTES);
+    }
+
+    private void loadIndex(long segmentIndex) throws IOException {
+        Path file = indexPath(segmentIndex);
+        if (!Files.exists(file)) {
+            return;
+        }
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (entries.remaining() >= INDEX_ENTRY_SIZE) {
+            long sequence = entries.getLong();
+            long position = entries.getLong();
+            if (segmentOf(position) == segmentIndex) {
+                index.put(sequence, position);
+            }
+        }
+    }
+
+    /**
+     * Перезаписывает файл индекса сегмента по содержимому индекса в памяти.
+     */
+    private void rewriteIndex(long segmentIndex) throws IOException {
+        closeIndexChannel();
+        long from = segmentIndex * segmentSize;
+        long to = from + segmentSize;
+        List<Map.Entry<Long, Long>> entries = index.entrySet().stream()
+                .filter(e -> e.getValue() >= from && e.getValue() < to)
+                .toList();
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * INDEX_ENTRY_SIZE);
+        for (Map.Entry<Long, Long> entry : entries) {
+            buffer.putLong(entry.getKey()).putLong(entry.getValue());
+        }
+        Files.write(indexPath(segmentIndex), buffer.array());
+    }
+
+    private void addIndexEntry(long sequence, long position) {
+        index.put(sequence, position);
+        long segmentIndex = segmentOf(position);
+        try {
+            if (indexChannelSegment != segmentIndex) {
+                closeIndexChannel();
+                indexChannel = FileChannel.open(indexPath(segmentIndex),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                indexChannelSegment = segmentIndex;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).putLong(sequence).putLong(position).flip();
+            while (entry.hasRemaining()) {
+                indexChannel.write(entry);
+            }
+        } catch (IOException e) {
+            // Индекс только ускоряет поиск: без записи в файле он будет восстановлен проверкой журнала
+            logger.warn("Failed to write ledger index entry for record {}", sequence, e);
+        }
+    }
+
+    private void closeIndexChannel() {
+        if (indexChannel != null) {
+            try {
+                indexChannel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close ledger index file", e);
+            }
+            indexChannel = null;
+            indexChannelSegment = -1;
+        }
+    }
+
+    private boolean checksumMatches(MappedByteBuffer buffer, int offset, int length) {
+        byte[] data = new byte[Long.BYTES + length];
+        buffer.get(offset + 2 * Integer.BYTES, data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES);
+    }
+
+    private static byte[] longBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+    private MappedByteBuffer segment(long segmentIndex) {
+        return segments.computeIfAbsent(segmentIndex, i -> {
+            try (FileChannel channel = FileChannel.open(segmentPath(i),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map ledger segment " + i, e);
+            }
+        });
+    }
+
+    /**
+     * Номер сегмента по имени файла сегмента или индекса, -1 для прочих файлов.
+     */
+    private long segmentIndexOf(Path file) {
+        String name = file.getFileName().toString();
+        String suffix = name.endsWith(SEGMENT_SUFFIX) ? SEGMENT_SUFFIX : name.endsWith(INDEX_SUFFIX) ? INDEX_SUFFIX : null;
+        if (suffix == null) {
+            return -1;
+        }
+        return Long.parseLong(name.substring(0, name.length() - suffix.length())) / segmentSize;
+    }
+
+    private Path segmentPath(long segmentIndex) {
+        return directory.resolve(String.format("%020d%s", segmentIndex * segmentSize, SEGMENT_SUFFIX));
+    }
+
+    private Path indexPath(long segmentIndex) {
+        return directory.resolve(String.format("%020d%s", segmentIndex * segmentSize, INDEX_SUFFIX));
+    }
+
+    private long segmentOf(long position) {
+        return position / segmentSize;
+    }
+
+    private int offsetOf(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    /**
+     * Получатель записей при воспроизведении журнала.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        /**
+         * @param sequence Номер записи
+         * @param payload  Данные записи (только для чтения в пределах вызова)
+         */
+        void handle(long sequence, ByteBuffer payload);
+    }
+}
@@ -0,0 +1,244 @@
+package net.orekhov.paymentservice.ledger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import net.orekhov.paymentservice.service.PaymentIdAllocator;
+import net.orekhov.paymentservice.service.PaymentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Долговременное хранение платежей: журнал операций {@link PaymentLedger} и периодические снимки {@link PaymentSnapshot}.
+ *
+ * Каждое изменение {@link PaymentStore} (сохранение, смена статуса, удаление) записывается в журнал под блокировкой
+ * сегмента хранилища, поэтому порядок операций с одним платежом в журнале совпадает с порядком их применения.
+ * Если запись в журнал не удалась, хранилище изменение не применяет (см. {@link PaymentStore#setMutationListener}),
+ * и вызывающий получает ошибку: в памяти не остаётся изменений, которые пропали бы после перезапуска.
+ *
+ * Запись в журнал выполняется под его общей блокировкой (копирование записи в отображённый сегмент и CRC32,
+ * несколько десятков байт), поэтому при включённом журнале записи в разные сегменты хранилища проходят
+ * через неё по очереди; разбиение хранилища на сегменты по-прежнему избавляет от блокировок чтения.
+ * Фоновая задача сохраняет снимок, когда после предыдущего накопилось payments.ledger.snapshot-every-records записей,
+ * и удаляет сегменты журнала, полностью вошедшие в снимок.
+ *
+ * При запуске загружается последний снимок и воспроизводится только хвост журнала после него.
+ * Снимок делается без остановки записи, поэтому может уже содержать часть операций из хвоста;
+ * это безопасно, так как все операции журнала задают значения, а не изменяют их относительно текущих.
+ *
+ * Журнал сбрасывается на диск раз в payments.ledger.fsync-interval-ms: при падении процесса записи не теряются,
+ * при отключении питания могут быть потеряны операции за последний интервал.
+ */
+@Component
+public class PaymentPersistence implements PaymentStore.MutationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentPersistence.class); // Логгер для хранения платежей
+
+    private static final byte OP_PUT = 1; // Платеж сохранён целиком
+    private static final byte OP_STATUS = 2; // Изменён статус
+    private static final byte OP_DELETE = 3; // Платеж удалён
+
+    private final PaymentStore paymentStore; // Хранилище платежей
+    private final PaymentIdAllocator paymentIdAllocator; // Генератор идентификаторов платежей
+    private final boolean enabled; // Включено ли долговременное хранение
+    private final Path directory; // Каталог журнала и снимков
+    private final int segmentSize; // Размер сегмента журнала
+    private final int indexInterval; // Шаг разреженного индекса
+    private final long snapshotEveryRecords; // Количество записей журнала между снимками
+    private final long fsyncIntervalMillis; // Интервал сброса журнала на диск
+
+    private PaymentLedger ledger; // Журнал операций
+    private volatile long snapshotSequence; // Номер последней записи, учтённой в последнем снимке
+    private ScheduledExecutorService scheduler; // Потоки fsync и снимков
+
+    /**
+     * Конструктор для внедрения зависимостей и настроек.
+     *
+     * @param paymentStore         Хранилище платежей
+     * @param paymentIdAllocator   Генератор идентификаторов платежей
+     * @param enabled              Включено ли долговременное хранение
+     * @param directory            Каталог журнала и снимков
+     * @param segmentSizeMb        Размер сегмента журнала в мегабайтах
+     * @param indexInterval        Шаг разреженного индекса в записях
+     * @param snapshotEveryRecords Количество записей журнала между снимками
+     * @param fsyncIntervalMillis  Интервал сброса журнала на диск (0 — сброс оставляется операционной системе)
+     */
+    public PaymentPersistence(PaymentStore paymentStore,
+                              PaymentIdAllocator paymentIdAllocator,
+                              @Value("${payments.ledger.enabled:true}") boolean enabled,
+                              @Value("${payments.ledger.dir:ledger}") String directory,
+                              @Value("${payments.ledger.segment-size-mb:64}") int segmentSizeMb,
+                              @Value("${payments.ledger.index-interval:4096}") int indexInterval,
+                              @Value("${payments.ledger.snapshot-every-records:1000000}") long snapshotEveryRecords,
+                              @Value("${payments.ledger.fsync-interval-ms:100}") long fsyncIntervalMillis) {
+        this.paymentStore = paymentStore;
+        this.paymentIdAllocator = paymentIdAllocator;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.indexInterval = indexInterval;
+        this.snapshotEveryRecords = snapshotEveryRecords;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    /**
+     * Восстанавливает платежи из снимка и хвоста журнала и начинает журналировать изменения хранилища.
+     *
+     * @throws IOException если журнал или снимок не удалось прочитать
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        ledger = new PaymentLedger(directory, segmentSize, indexInterval);
+
+        Optional<PaymentSnapshot> snapshot = PaymentSnapshot.latest(directory);
+        if (snapshot.isPresent()) {
+            snapshot.get().load(paymentStore);
+            snapshotSequence = snapshot.get().getSequence();
+            ledger.ensureSequenceAfter(snapshotSequence);
+        }
+
+        // Генератор не должен повторно выдать идентификаторы этого узла, в том числе удалённых в хвосте журнала
+        long replayed = ledger.replay(snapshotSequence, (sequence, payload) -> paymentIdAllocator.advancePast(apply(payload)));
+        paymentStore.forEach((id, payment) -> paymentIdAllocator.advancePast(id));
+        paymentStore.setMutationListener(this);
+
+        logger.info("Payment store restored in {} ms: {} payments, snapshot {}, {} ledger records replayed",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), paymentStore.size(),
+                snapshot.map(Object::toString).orElse("none"), replayed);
+
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "payment-ledger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(ledger::force, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(this::snapshotIfNeeded, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Останавливает фоновые задачи и сбрасывает журнал на диск.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        paymentStore.setMutationListener(null);
+        ledger.force();
+        ledger.close();
+    }
+
+    @Override
+    public void onPut(long id, Payment payment) {
+        byte[] status = encode(payment.getStatus() != null ? payment.getStatus().getCode() : null);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + Long.BYTES + 1 + Double.BYTES + status.length);
+        buffer.put(OP_PUT).putLong(id);
+        buffer.put((byte) (payment.getAmount() != null ? 1 : 0)).putDouble(payment.getAmount() != null ? payment.getAmount() : 0);
+        buffer.put(status);
+        ledger.append(buffer.array());
+    }
+
+    @Override
+    public void onUpdate(long id, Payment payment) {
+        byte[] status = encode(payment.getStatus() != null ? payment.getStatus().getCode() : null);
+        ledger.append(ByteBuffer.allocate(1 + Long.BYTES + status.length)
+                .put(OP_STATUS).putLong(id).put(status).array());
+    }
+
+    @Override
+    public void onRemove(long id) {
+        ledger.append(ByteBuffer.allocate(1 + Long.BYTES).put(OP_DELETE).putLong(id).array());
+    }
+
+    /**
+     * Сохраняет снимок, если после предыдущего накопилось достаточно записей журнала.
+     */
+    private void snapshotIfNeeded() {
+        try {
+            if (ledger.getLastSequence() - snapshotSequence < snapshotEveryRecords) {
+                return;
+            }
+            long startedAt = System.nanoTime();
+            long[] mark = ledger.mark(); // Все операции до mark[0] уже применены к хранилищу
+            long count = PaymentSnapshot.write(directory, mark[0], paymentStore);
+            snapshotSequence = mark[0];
+            ledger.truncateBefore(mark[1]);
+            logger.info("Payment snapshot at record {} written in {} ms: {} payments",
+                    mark[0], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), count);
+        } catch (Exception e) {
+            logger.error("Failed to write payment snapshot", e);
+        }
+    }
+
+    /**
+     * Применяет операцию журнала к хранилищу при воспроизведении.
+     *
+     * @return Идентификатор платежа операции
+     */
+    private long apply(ByteBuffer payload) {
+        byte op = payload.get();
+        long id = payload.getLong();
+        switch (op) {
+            case OP_PUT -> {
+                Payment payment = new Payment();
+                payment.setId(id);
+                boolean hasAmount = payload.get() != 0;
+                double amount = payload.getDouble();
+                payment.setAmount(hasAmount ? amount : null);
+                payment.setStatus(PaymentStatus.fromString(decode(payload)));
+                paymentStore.put(id, payment);
+            }
+            case OP_STATUS -> {
+                PaymentStatus status = PaymentStatus.fromString(decode(payload));
+                paymentStore.update(id, p -> {
+                    p.setStatus(status); // Журнал хранит уже проверенные переходы в порядке применения
+                    return true;
+                });
+            }
+            case OP_DELETE -> paymentStore.remove(id);
+            default -> throw new IllegalStateException("Unknown payment ledger operation: " + op);
+        }
+        return id;
+    }
+
+    /**
+     * Строка как [длина int][UTF-8], длина -1 означает null.
+     */
+    private static byte[] encode(String value) {
+        if (value == null) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(-1).array();
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).array();
+    }
+
+    private static String decode(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
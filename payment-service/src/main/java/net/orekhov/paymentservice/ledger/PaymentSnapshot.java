@@ -0,0 +1,204 @@
+package net.orekhov.paymentservice.ledger;
+
+import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import net.orekhov.paymentservice.service.PaymentStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок хранилища платежей: вместо истории операций хранит только текущее состояние.
+ *
+ * Вместе с состоянием сохраняется номер последней записи журнала, учтённой в снимке.
+ * Формат файла snapshot-&lt;номер записи&gt;.snap: [MAGIC int][версия int][номер записи long],
+ * затем записи [1 byte][id long][сумма][статус], признак конца [0 byte], количество платежей long и CRC32 всего файла.
+ * Снимок пишется во временный файл, сбрасывается на диск и атомарно переименовывается.
+ */
+public final class PaymentSnapshot {
+
+    private static final int MAGIC = 0x50534E50; // "PSNP"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final long sequence; // Номер последней записи журнала, учтённой в снимке
+    private final Path file; // Файл снимка
+
+    private PaymentSnapshot(long sequence, Path file) {
+        this.sequence = sequence;
+        this.file = file;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Записать снимок хранилища и удалить более старые снимки.
+     *
+     * @param directory Каталог снимков
+     * @param sequence  Номер последней записи журнала, все изменения до которой уже применены к хранилищу
+     * @param store     Хранилище платежей
+     * @return Количество платежей в снимке
+     * @throws IOException если снимок не удалось записать
+     */
+    public static long write(Path directory, long sequence, PaymentStore store) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        Path tmp = directory.resolve(target.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        long[] count = new long[1];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Files.newOutputStream(tmp), crc), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            store.forEach((id, payment) -> {
+                try {
+                    out.writeByte(1);
+                    out.writeLong(id);
+                    writeAmount(out, payment.getAmount());
+                    writeString(out, payment.getStatus() != null ? payment.getStatus().getCode() : null);
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeByte(0);
+            out.writeLong(count[0]);
+            out.flush();
+            out.writeInt((int) crc.getValue()); // CRC всего предшествующего содержимого
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        }
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (PaymentSnapshot old : list(directory)) {
+            if (old.sequence < sequence) {
+                Files.deleteIfExists(old.file);
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Найти последний снимок.
+     *
+     * @param directory Каталог снимков
+     * @return Последний снимок или пустое значение, если снимков нет
+     * @throws IOException если каталог не удалось прочитать
+     */
+    public static Optional<PaymentSnapshot> latest(Path directory) throws IOException {
+        return list(directory).stream().max(Comparator.comparingLong(PaymentSnapshot::getSequence));
+    }
+
+    /**
+     * Загрузить платежи снимка в хранилище.
+     *
+     * @param store Хранилище платежей
+     * @return Наибольший идентификатор платежа в снимке (0, если снимок пуст)
+     * @throws IOException если файл повреждён или не читается
+     */
+    public long load(PaymentStore store) throws IOException {
+        CRC32 crc = new CRC32();
+        long maxId = 0;
+        int batchSize = 4096;
+        long[] ids = new long[batchSize];
+        Payment[] payments = new Payment[batchSize];
+        int pending = 0;
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 20), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != sequence) {
+                throw new IOException("Unsupported or mismatched payment snapshot " + file);
+            }
+            while (in.readByte() == 1) {
+                Payment payment = new Payment();
+                payment.setId(in.readLong());
+                payment.setAmount(readAmount(in));
+                payment.setStatus(PaymentStatus.fromString(readString(in)));
+                maxId = Math.max(maxId, payment.getId());
+                ids[pending] = payment.getId();
+                payments[pending++] = payment;
+                count++;
+                if (pending == batchSize) {
+                    store.putAllIfAbsent(ids, payments, pending); // Хранилище при загрузке пусто, идентификаторы снимка уникальны
+                    pending = 0;
+                }
+            }
+            if (in.readLong() != count) {
+                throw new IOException("Payment snapshot " + file + " is truncated");
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Payment snapshot " + file + " is corrupted (CRC mismatch)");
+            }
+        }
+        store.putAllIfAbsent(ids, payments, pending); // Хранилище при загрузке пусто, идентификаторы снимка уникальны
+        return maxId;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+    private static List<PaymentSnapshot> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .map(p -> {
+                        String name = p.getFileName().toString();
+                        return new PaymentSnapshot(
+                                Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), p);
+                    })
+                    .toList();
+        }
+    }
+
+    private static void writeAmount(DataOutputStream out, Double amount) throws IOException {
+        out.writeBoolean(amount != null);
+        if (amount != null) {
+            out.writeDouble(amount);
+        }
+    }
+
+    private static Double readAmount(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
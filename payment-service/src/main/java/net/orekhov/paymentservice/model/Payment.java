@@ -15,7 +15,7 @@ public class Payment {
     private Long id;
 
     // Статус платежа (например, "pending", "completed", "failed")
-    private String status;
+    private volatile PaymentStatus status;
 
     // Сумма платежа
     private Double amount;
@@ -44,16 +44,19 @@ public class Payment {
      *
      * @return Статус платежа.
      */
-    public String getStatus() {
+    public PaymentStatus getStatus() {
         return status;
     }
 
     /**
      * Устанавливает статус платежа.
      *
+     * Смена статуса сохранённого платежа выполняется только под блокировкой сегмента хранилища
+     * (PaymentStore.update), поле volatile для чтения без блокировки.
+     *
      * @param status Статус платежа (например, "pending", "completed").
      */
-    public void setStatus(String status) {
+    public void setStatus(PaymentStatus status) {
         logger.debug("Setting payment status: {}", status); // Логируем установку статуса
         this.status = status;
     }
@@ -0,0 +1,52 @@
+package net.orekhov.paymentservice.model;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Агрегаты платежей за окно: количество и сумма по статусам.
+ * Платеж учитывается в статусе, в который он перешёл (или с которым создан) внутри окна.
+ */
+public class PaymentAggregate {
+
+    private final String window; // Название окна
+    private final long sizeSeconds; // Размер окна
+    private final long advanceSeconds; // Шаг окна (равен размеру для неперекрывающихся окон)
+    private final Instant from; // Начало окна
+    private final Instant to; // Конец окна (момент запроса)
+    private final Map<String, StatusTotals> totals; // Агрегаты по коду статуса
+
+    public PaymentAggregate(String window, long sizeSeconds, long advanceSeconds,
+                            Instant from, Instant to, Map<String, StatusTotals> totals) {
+        this.window = window;
+        this.sizeSeconds = sizeSeconds;
+        this.advanceSeconds = advanceSeconds;
+        this.from = from;
+        this.to = to;
+        this.totals = totals;
+    }
+
+    public String getWindow() {
+        return window;
+    }
+
+    public long getSizeSeconds() {
+        return sizeSeconds;
+    }
+
+    public long getAdvanceSeconds() {
+        return advanceSeconds;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    public Map<String, StatusTotals> getTotals() {
+        return totals;
+    }
+}
@@ -0,0 +1,87 @@
+package net.orekhov.paymentservice.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Жизненный цикл платежа.
+ *
+ * Допустимые переходы:
+ * PENDING -> AUTHORIZED, COMPLETED, FAILED, CANCELLED;
+ * AUTHORIZED -> COMPLETED, FAILED, CANCELLED;
+ * COMPLETED -> REFUNDED.
+ * FAILED, CANCELLED и REFUNDED — конечные статусы. Статусы не возвращаются назад,
+ * поэтому опоздавший запрос не может откатить платеж к более раннему статусу.
+ */
+public enum PaymentStatus {
+
+    PENDING("pending"),
+    AUTHORIZED("authorized"),
+    COMPLETED("completed"),
+    FAILED("failed"),
+    CANCELLED("cancelled"),
+    REFUNDED("refunded");
+
+    private final String code; // Строковое представление в API и в событиях
+    private Set<PaymentStatus> next; // Статусы, в которые возможен переход
+
+    static {
+        PENDING.next = EnumSet.of(AUTHORIZED, COMPLETED, FAILED, CANCELLED);
+        AUTHORIZED.next = EnumSet.of(COMPLETED, FAILED, CANCELLED);
+        COMPLETED.next = EnumSet.of(REFUNDED);
+        FAILED.next = EnumSet.noneOf(PaymentStatus.class);
+        CANCELLED.next = EnumSet.noneOf(PaymentStatus.class);
+        REFUNDED.next = EnumSet.noneOf(PaymentStatus.class);
+    }
+
+    PaymentStatus(String code) {
+        this.code = code;
+    }
+
+    @JsonValue
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Возможен ли переход из этого статуса в указанный.
+     *
+     * @param target Новый статус
+     * @return true, если переход допустим
+     */
+    public boolean canTransitionTo(PaymentStatus target) {
+        return next.contains(target);
+    }
+
+    /**
+     * Является ли статус конечным.
+     *
+     * @return true, если из статуса нет переходов
+     */
+    public boolean isTerminal() {
+        return next.isEmpty();
+    }
+
+    /**
+     * Статус по строковому представлению без учёта регистра.
+     *
+     * @param value Строковое представление статуса
+     * @return Статус или null, если value равно null
+     * @throws IllegalArgumentException если статус неизвестен
+     */
+    @JsonCreator
+    public static PaymentStatus fromString(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown payment status: " + value);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package net.orekhov.paymentservice.model;
+
+/**
+ * Количество и сумма платежей одного статуса в окне агрегации.
+ */
+public class StatusTotals {
+
+    private final long count; // Количество платежей
+    private final double amount; // Сумма платежей
+
+    public StatusTotals(long count, double amount) {
+        this.count = count;
+        this.amount = amount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,15 @@
+package net.orekhov.paymentservice.model;
+
+/**
+ * Результат попытки сменить статус платежа.
+ */
+public enum StatusTransitionResult {
+
+    APPLIED, // Статус изменён
+    UNCHANGED, // Платеж уже находится в запрошенном статусе
+    NOT_FOUND, // Платеж не найден
+    INVALID_STATUS, // Статус не распознан
+    INVALID_TRANSITION, // Переход из текущего статуса в запрошенный недопустим
+    CONFLICT // Текущий статус не совпал с ожидаемым
+
+}
@@ -0,0 +1,41 @@
+package net.orekhov.paymentservice.model;
+
+/**
+ * Элемент массового обновления статусов платежей.
+ * Если задан expectedStatus, статус меняется только когда текущий статус платежа совпадает с ожидаемым.
+ */
+public class StatusUpdate {
+
+    // Идентификатор платежа
+    private Long paymentId;
+
+    // Новый статус платежа
+    private String status;
+
+    // Ожидаемый текущий статус (необязательный)
+    private String expectedStatus;
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    public void setPaymentId(Long paymentId) {
+        this.paymentId = paymentId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getExpectedStatus() {
+        return expectedStatus;
+    }
+
+    public void setExpectedStatus(String expectedStatus) {
+        this.expectedStatus = expectedStatus;
+    }
+}
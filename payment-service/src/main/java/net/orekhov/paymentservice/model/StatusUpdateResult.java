@@ -0,0 +1,38 @@
+package net.orekhov.paymentservice.model;
+
+/**
+ * Результат смены статуса одного платежа.
+ */
+public class StatusUpdateResult {
+
+    private final Long paymentId; // Идентификатор платежа
+    private final StatusTransitionResult result; // Результат смены статуса
+    private final PaymentStatus status; // Статус платежа после попытки (null, если платеж не найден)
+
+    public StatusUpdateResult(Long paymentId, StatusTransitionResult result, PaymentStatus status) {
+        this.paymentId = paymentId;
+        this.result = result;
+        this.status = status;
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    public StatusTransitionResult getResult() {
+        return result;
+    }
+
+    public PaymentStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Считается ли обновление успешным (статус изменён или уже был таким).
+     *
+     * @return true для APPLIED и UNCHANGED
+     */
+    public boolean isSuccessful() {
+        return result == StatusTransitionResult.APPLIED || result == StatusTransitionResult.UNCHANGED;
+    }
+}
@@ -0,0 +1,293 @@
+package net.orekhov.paymentservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Пул обработчиков со справедливым обслуживанием ключей по алгоритму deficit round-robin.
+ *
+ * У каждого ключа своя очередь задач; непустые очереди обходятся по кругу. В свою очередь обхода ключ получает
+ * квант стоимости и выполняет задачи из головы очереди, пока их стоимость укладывается в накопленный остаток
+ * (deficit); неизрасходованный остаток переходит на следующий круг, а у опустевшей очереди сбрасывается.
+ * Поэтому ключ с длинной очередью получает ту же долю обработки, что и ключ с одной задачей, и задача
+ * редкого ключа ждёт не больше одного круга, а не всю очередь частого.
+ *
+ * Очередь ключа в каждый момент обслуживает не более одного потока, поэтому задачи одного ключа выполняются
+ * строго в порядке отправки.
+ *
+ * Очереди ограничены мягко: задача принимается всегда, но когда очередь ключа достигает maxQueuedPerKey или
+ * общее число задач достигает maxQueued, вызывается обработчик переполнения (например, приостановка потребителя).
+ * Обработчик освобождения вызывается, когда все очереди ключей опустились до половины своего предела,
+ * а общее число задач — до половины общего.
+ */
+public class DeficitRoundRobinExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeficitRoundRobinExecutor.class); // Логгер для пула
+
+    private final int workers; // Количество потоков
+    private final long quantum; // Квант стоимости ключа на один круг
+    private final int maxQueuedPerKey; // Предел очереди одного ключа
+    private final int maxQueued; // Предел общего числа задач
+    private final String namePrefix; // Префикс имени потоков
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition(); // Появилась очередь, готовая к обслуживанию
+    private final Map<Object, KeyQueue> queues = new HashMap<>(); // Непустые и обслуживаемые очереди по ключу
+    private final ArrayDeque<KeyQueue> active = new ArrayDeque<>(); // Круг очередей, ожидающих обслуживания
+    private final List<Thread> threads = new ArrayList<>();
+    private int queued; // Общее число задач в очередях
+    private int overloadedKeys; // Ключи, очередь которых достигла предела и ещё не опустилась до половины
+    private boolean saturated; // Вызван обработчик переполнения
+    private boolean running = true;
+    private Runnable onSaturated = () -> { };
+    private Runnable onDrained = () -> { };
+
+    /**
+     * Конструктор пула.
+     *
+     * @param workers         Количество потоков
+     * @param quantum         Квант стоимости ключа на один круг
+     * @param maxQueuedPerKey Предел очереди одного ключа
+     * @param maxQueued       Предел общего числа задач
+     * @param namePrefix      Префикс имени потоков
+     */
+    public DeficitRoundRobinExecutor(int workers, long quantum, int maxQueuedPerKey, int maxQueued, String namePrefix) {
+        if (workers <= 0 || quantum <= 0 || maxQueuedPerKey <= 0 || maxQueued <= 0) {
+            throw new IllegalArgumentException("Workers, quantum and queue bounds must be positive");
+        }
+        this.workers = workers;
+        this.quantum = quantum;
+        this.maxQueuedPerKey = maxQueuedPerKey;
+        this.maxQueued = maxQueued;
+        this.namePrefix = namePrefix;
+    }
+
+    /**
+     * Обработчики переполнения и освобождения очередей. Вызываются под внутренней блокировкой пула,
+     * поэтому должны быть короткими и не отправлять задачи в пул.
+     *
+     * @param onSaturated Вызывается, когда очередь ключа или общее число задач достигли предела
+     * @param onDrained   Вызывается, когда очереди опустились до половины пределов
+     */
+    public void setBackpressure(Runnable onSaturated, Runnable onDrained) {
+        lock.lock();
+        try {
+            this.onSaturated = onSaturated;
+            this.onDrained = onDrained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Поставить задачу в очередь ключа.
+     *
+     * @param key  Ключ справедливости и упорядочивания
+     * @param cost Стоимость задачи в единицах кванта (не меньше 1)
+     * @param task Задача
+     */
+    public void execute(Object key, long cost, Runnable task) {
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Executor is shut down");
+            }
+            startWorkersIfNeeded();
+            KeyQueue queue = queues.computeIfAbsent(key, KeyQueue::new);
+            queue.tasks.addLast(new Task(Math.max(1, cost), task));
+            queued++;
+            if (!queue.inService && !queue.inRound) {
+                queue.inRound = true;
+                active.addLast(queue);
+                notEmpty.signal();
+            }
+            if (!queue.overloaded && queue.tasks.size() >= maxQueuedPerKey) {
+                queue.overloaded = true;
+                overloadedKeys++;
+            }
+            if (!saturated && (overloadedKeys > 0 || queued >= maxQueued)) {
+                saturated = true;
+                logger.debug("Fair queues saturated: {} tasks, {} overloaded keys", queued, overloadedKeys);
+                onSaturated.run();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Общее число задач в очередях.
+     *
+     * @return Количество ожидающих задач
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Количество потоков.
+     *
+     * @return Количество потоков
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Остановить пул, дождавшись выполнения уже поставленных задач.
+     */
+    public void shutdown() {
+        List<Thread> started;
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            started = new ArrayList<>(threads);
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            for (Thread thread : started) {
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                if (thread.isAlive()) {
+                    logger.warn("Fair worker {} did not finish pending tasks in time", thread.getName());
+                    thread.interrupt();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Потоки создаются при первой задаче, чтобы неиспользуемый пул не держал потоков.
+     */
+    private void startWorkersIfNeeded() {
+        if (!threads.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, namePrefix + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Цикл потока: взять следующую очередь круга, выполнить задачи в пределах её остатка, вернуть очередь в круг.
+     */
+    private void work() {
+        List<Task> run = new ArrayList<>();
+        while (true) {
+            KeyQueue queue;
+            lock.lock();
+            try {
+                while (active.isEmpty() && running) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (active.isEmpty()) {
+                    return; // Пул остановлен, очереди пусты
+                }
+                queue = active.pollFirst();
+                queue.inRound = false;
+                queue.inService = true;
+                queue.deficit += quantum;
+                while (!queue.tasks.isEmpty() && queue.tasks.peekFirst().cost <= queue.deficit) {
+                    Task task = queue.tasks.pollFirst();
+                    queue.deficit -= task.cost;
+                    run.add(task);
+                }
+                queued -= run.size();
+                release(queue);
+            } finally {
+                lock.unlock();
+            }
+
+            for (Task task : run) {
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException e) {
+                    logger.error("Fair task for key {} failed", queue.key, e);
+                }
+            }
+            run.clear();
+
+            lock.lock();
+            try {
+                queue.inService = false;
+                if (queue.tasks.isEmpty()) {
+                    queue.deficit = 0; // Остаток опустевшей очереди не накапливается
+                    queues.remove(queue.key);
+                } else {
+                    queue.inRound = true;
+                    active.addLast(queue);
+                    notEmpty.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Снимает признак переполнения с очереди и пула, если очереди опустились до половины пределов.
+     */
+    private void release(KeyQueue queue) {
+        if (queue.overloaded && queue.tasks.size() <= maxQueuedPerKey / 2) {
+            queue.overloaded = false;
+            overloadedKeys--;
+        }
+        if (saturated && overloadedKeys == 0 && queued <= maxQueued / 2) {
+            saturated = false;
+            logger.debug("Fair queues drained: {} tasks", queued);
+            onDrained.run();
+        }
+    }
+
+    /**
+     * Очередь задач одного ключа.
+     */
+    private static final class KeyQueue {
+
+        private final Object key;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private long deficit; // Неизрасходованный остаток кванта
+        private boolean inRound; // Очередь стоит в круге обслуживания
+        private boolean inService; // Очередь обслуживает поток
+        private boolean overloaded; // Очередь достигла предела
+
+        KeyQueue(Object key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Задача и её стоимость.
+     */
+    private static final class Task {
+
+        private final long cost;
+        private final Runnable runnable;
+
+        Task(long cost, Runnable runnable) {
+            this.cost = cost;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.orekhov.paymentservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пул обработчиков с сохранением порядка задач по ключу.
+ *
+ * Задачи распределяются по полосам (lanes) по хешу ключа; каждая полоса — однопоточный исполнитель,
+ * поэтому задачи с одинаковым ключом выполняются строго в порядке отправки, а задачи с разными ключами —
+ * параллельно. Потоки полос создаются при первой задаче.
+ */
+public class KeyOrderedExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyOrderedExecutor.class); // Логгер для пула
+
+    private final ExecutorService[] lanes; // Однопоточные исполнители полос
+
+    /**
+     * Конструктор пула.
+     *
+     * @param workers    Количество полос (потоков)
+     * @param namePrefix Префикс имени потоков
+     */
+    public KeyOrderedExecutor(int workers, String namePrefix) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be positive: " + workers);
+        }
+        lanes = new ExecutorService[workers];
+        for (int i = 0; i < workers; i++) {
+            String name = namePrefix + i;
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Отправить задачу в полосу ключа.
+     *
+     * @param key  Ключ упорядочивания
+     * @param task Задача
+     */
+    public void execute(Object key, Runnable task) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        lanes[Math.floorMod(hash, lanes.length)].execute(task);
+    }
+
+    /**
+     * Количество полос.
+     *
+     * @return Количество полос (потоков)
+     */
+    public int getWorkers() {
+        return lanes.length;
+    }
+
+    /**
+     * Остановить пул, дождавшись завершения уже отправленных задач.
+     */
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warn("Key-ordered lane did not finish pending tasks in time");
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
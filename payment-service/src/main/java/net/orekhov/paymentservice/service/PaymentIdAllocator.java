@@ -0,0 +1,131 @@
+package net.orekhov.paymentservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор идентификаторов платежей, уникальных между экземплярами службы и перезапусками без согласования.
+ *
+ * Идентификатор — положительный long: старшие 10 бит — узел (payments.node-id, отличается у всех экземпляров
+ * службы), младшие 53 бита — последовательность узла. Поэтому платежи, созданные разными экземплярами
+ * через REST, не получают одинаковых идентификаторов.
+ *
+ * Платежи по заказам получают идентификатор не из последовательности, а из orderId ({@link #forOrder}):
+ * каждая доставка одного заказа даёт один и тот же идентификатор, поэтому повторное событие заказа
+ * (повтор из outbox, повтор запроса клиента после окна дедупликации) не создаёт второго платежа.
+ *
+ * При запуске последовательность начинается с текущего времени: миллисекунды от 2024-01-01, умноженные на 8192.
+ * Идентификаторы предыдущего запуска не повторяются, если он выдавал в среднем не больше 8192 идентификаторов
+ * в миллисекунду от своего старта (с учётом пропадающих остатков блоков). Кроме того, при восстановлении
+ * платежей с диска последовательность продвигается за наибольший восстановленный идентификатор этого узла
+ * ({@link #advancePast}). Без журнала платежей и при переводе часов назад между запусками повторение
+ * идентификаторов прошлого запуска возможно.
+ *
+ * Общий счётчик выдаёт блоки по payments.id-block-size идентификаторов, а каждый поток раздаёт
+ * идентификаторы из своего блока без синхронизации. Идентификаторы уникальны и возрастают в пределах
+ * потока, но между потоками не идут подряд: неиспользованный остаток блока пропадает.
+ *
+ * В режиме виртуальных потоков (spring.threads.virtual.enabled) каждый запрос обрабатывается новым коротко
+ * живущим потоком, и блок на поток терял бы почти весь остаток, поэтому идентификаторы выдаются прямо
+ * из общего счётчика.
+ */
+@Component
+public class PaymentIdAllocator {
+
+    private static final int SEQUENCE_BITS = 53;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int MAX_NODE_ID = (1 << (63 - SEQUENCE_BITS)) - 1; // 1023
+    private static final int IDS_PER_MILLI_BITS = 13; // 8192 идентификаторов на миллисекунду от начала запуска
+    private static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    private final long nodeBits; // Идентификатор узла, сдвинутый в старшие биты
+    private final int nodeId; // Идентификатор узла
+    private final int blockSize; // Размер блока идентификаторов
+    private final boolean perThreadBlocks; // Раздавать ли идентификаторы из блоков потоков
+    private final AtomicLong nextBlockStart; // Последовательность: начало следующего свободного блока
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]); // [следующий id, конец блока)
+
+    /**
+     * Конструктор с настройками узла.
+     *
+     * @param nodeId         Идентификатор узла (0..1023), уникальный для каждого экземпляра службы
+     * @param blockSize      Количество идентификаторов, забираемых потоком за одно обращение к общему счётчику
+     * @param virtualThreads Включён ли режим виртуальных потоков
+     */
+    public PaymentIdAllocator(@Value("${payments.node-id:0}") int nodeId,
+                              @Value("${payments.id-block-size:1024}") int blockSize,
+                              @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("payments.node-id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("payments.id-block-size must be positive: " + blockSize);
+        }
+        this.nodeId = nodeId;
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.blockSize = blockSize;
+        this.perThreadBlocks = !virtualThreads;
+        this.nextBlockStart = new AtomicLong(Math.max(1, (System.currentTimeMillis() - EPOCH_MILLIS) << IDS_PER_MILLI_BITS));
+    }
+
+    /**
+     * Идентификатор платежа по заказу, одинаковый на всех узлах и при каждой доставке события заказа.
+     * Это 63 бита хеша MD5 от orderId с установленным старшим битом: идентификаторы платежей по заказам
+     * отрицательны и не пересекаются с выдаваемыми {@link #nextId()}. Совпадение для двух разных заказов
+     * возможно с вероятностью порядка n² / 2^64 для n заказов.
+     *
+     * @param orderId Идентификатор заказа
+     * @return Идентификатор платежа (меньше 0)
+     */
+    public static long forOrder(String orderId) {
+        UUID hash = UUID.nameUUIDFromBytes(orderId.getBytes(StandardCharsets.UTF_8));
+        // Фиксированные биты версии и варианта UUID перекрываются случайными битами другой половины
+        return (hash.getMostSignificantBits() ^ hash.getLeastSignificantBits()) | Long.MIN_VALUE;
+    }
+
+    /**
+     * Не выдавать идентификаторы, не превышающие уже выданный идентификатор этого узла
+     * (например, восстановленный с диска). Идентификаторы других узлов не влияют на последовательность.
+     *
+     * @param id Ранее выданный идентификатор платежа
+     */
+    public void advancePast(long id) {
+        if (id > 0 && (id >>> SEQUENCE_BITS) == nodeId) {
+            nextBlockStart.accumulateAndGet((id & SEQUENCE_MASK) + 1, Math::max);
+        }
+    }
+
+    /**
+     * Выдать следующий идентификатор.
+     *
+     * @return Уникальный идентификатор платежа (больше 0)
+     */
+    public long nextId() {
+        if (!perThreadBlocks) {
+            return nodeBits | checkSequence(nextBlockStart.getAndIncrement());
+        }
+        long[] current = block.get();
+        if (current[0] == current[1]) {
+            long start = checkSequence(nextBlockStart.getAndAdd(blockSize));
+            current[0] = start;
+            current[1] = start + blockSize;
+        }
+        return nodeBits | current[0]++;
+    }
+
+    /**
+     * Последовательность не должна заходить в биты узла
+     * (при 8192 идентификаторах на миллисекунду 53 бит хватает до 2058 года).
+     */
+    private long checkSequence(long start) {
+        if (start + blockSize - 1 > SEQUENCE_MASK) {
+            throw new IllegalStateException("Payment ID sequence of node " + nodeId + " is exhausted");
+        }
+        return start;
+    }
+}
@@ -1,13 +1,24 @@
 package net.orekhov.paymentservice.service;
 
+import net.orekhov.paymentservice.event.OrderEvent;
+import net.orekhov.paymentservice.event.PaymentEvent;
 import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentAggregate;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import net.orekhov.paymentservice.model.StatusTransitionResult;
+import net.orekhov.paymentservice.model.StatusUpdate;
+import net.orekhov.paymentservice.model.StatusUpdateResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Сервис для работы с платежами.
@@ -19,14 +30,41 @@ public class PaymentService {
     private static final Logger logger = LoggerFactory.getLogger(PaymentService.class); // Логгер для PaymentService
 
     // Хранилище для платежей (используется для имитации базы данных)
-    private final Map<Long, Payment> paymentStore = new HashMap<>();
+    private final PaymentStore paymentStore;
 
-    // Счётчик для генерации уникальных идентификаторов платежей
-    private long paymentIdCounter = 1;
+    // Генератор уникальных идентификаторов платежей
+    private final PaymentIdAllocator paymentIdAllocator;
+
+    // Статусы заказа (в нижнем регистре), при которых для заказа создаётся платеж
+    private final Set<String> payableOrderStatuses;
+
+    // Агрегаты платежей по окнам времени
+    private final PaymentWindowAggregator windowAggregator;
+
+    /**
+     * Конструктор для внедрения хранилища, генератора идентификаторов и настроек.
+     *
+     * @param paymentStore         Потокобезопасное хранилище платежей.
+     * @param paymentIdAllocator   Генератор идентификаторов платежей.
+     * @param windowAggregator     Агрегаты платежей по окнам времени.
+     * @param payableOrderStatuses Статусы заказа, при которых для заказа создаётся платеж.
+     */
+    public PaymentService(PaymentStore paymentStore,
+                          PaymentIdAllocator paymentIdAllocator,
+                          PaymentWindowAggregator windowAggregator,
+                          @Value("${payments.orders.payable-statuses:created,new,pending}") List<String> payableOrderStatuses) {
+        this.paymentStore = paymentStore;
+        this.paymentIdAllocator = paymentIdAllocator;
+        this.windowAggregator = windowAggregator;
+        this.payableOrderStatuses = new HashSet<>();
+        for (String status : payableOrderStatuses) {
+            this.payableOrderStatuses.add(status.trim().toLowerCase(Locale.ROOT));
+        }
+    }
 
     /**
      * Создает новый платеж и сохраняет его в хранилище.
-     * Устанавливает уникальный идентификатор для нового платежа.
+     * Устанавливает уникальный идентификатор и начальный статус PENDING; статус из запроса не используется.
      *
      * @param payment Платеж, который необходимо создать.
      * @return Созданный платеж с установленным уникальным идентификатором.
@@ -34,16 +72,96 @@ public class PaymentService {
     public Payment createPayment(Payment payment) {
         logger.debug("Creating payment: {}", payment); // Логируем создание платежа
 
+        // Новый платеж всегда начинает жизненный цикл с PENDING: дальше статус меняется только допустимыми переходами
+        if (payment.getStatus() != null && payment.getStatus() != PaymentStatus.PENDING) {
+            logger.warn("Ignoring initial status {} of new payment, using pending", payment.getStatus());
+        }
+        payment.setStatus(PaymentStatus.PENDING);
+
         // Устанавливаем уникальный идентификатор платежа
-        payment.setId(paymentIdCounter++);
+        payment.setId(paymentIdAllocator.nextId());
 
         // Сохраняем платеж в хранилище
         paymentStore.put(payment.getId(), payment);
+        windowAggregator.record(payment.getStatus(), payment.getAmount());
 
         logger.info("Payment created with ID: {}", payment.getId()); // Логируем успешное создание платежа
         return payment;
     }
 
+    /**
+     * Формирует событие платежа для нового заказа.
+     * Платеж создаётся только для заказа без статуса или со статусом из payments.orders.payable-statuses,
+     * поэтому события смены статуса того же заказа платежей не порождают.
+     * Сам платеж сохраняется в хранилище, когда его событие будет прочитано из topic платежей
+     * после фиксации транзакции. Идентификатор платежа выводится из orderId ({@link PaymentIdAllocator#forOrder}),
+     * поэтому повторная доставка заказа даёт событие того же платежа, и {@link #recordPayments} его не дублирует.
+     *
+     * @param order Событие заказа.
+     * @return Событие платежа в статусе PENDING или null, если для заказа платеж не создаётся.
+     */
+    public PaymentEvent paymentForOrder(OrderEvent order) {
+        String status = order.getStatus();
+        if (status != null && !status.isBlank() && !payableOrderStatuses.contains(status.trim().toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        return new PaymentEvent(PaymentIdAllocator.forOrder(order.getOrderId()), order.getOrderId(), order.getCustomerId(),
+                order.getPrice() * order.getQuantity(), PaymentStatus.PENDING.getCode());
+    }
+
+    /**
+     * Сохраняет платежи из событий Kafka одной массовой записью в хранилище.
+     * Событие с новым paymentId добавляет платеж. Событие с paymentId уже сохранённого платежа его не заменяет:
+     * статус события применяется как переход жизненного цикла {@link PaymentStatus}, поэтому повторная доставка
+     * не создаёт дубликатов, а опоздавшее событие не откатывает статус назад. Событие с другой суммой
+     * (идентификатор выдан повторно) платеж не меняет и записывается в журнал. Платежам без идентификатора (0)
+     * назначается новый. В агрегаты по окнам попадают только добавленные платежи и применённые переходы,
+     * поэтому повторная доставка или повторная запись той же пачки их не искажает.
+     *
+     * @param events События платежей.
+     * @return Количество сохранённых платежей.
+     */
+    public int recordPayments(List<PaymentEvent> events) {
+        int count = events.size();
+        long[] ids = new long[count];
+        Payment[] payments = new Payment[count];
+        for (int i = 0; i < count; i++) {
+            PaymentEvent event = events.get(i);
+            Payment payment = new Payment();
+            payment.setId(event.getPaymentId() != 0 ? event.getPaymentId() : paymentIdAllocator.nextId());
+            payment.setAmount(event.getAmount());
+            payment.setStatus(statusOf(event));
+            ids[i] = payment.getId();
+            payments[i] = payment;
+        }
+
+        boolean[] inserted = paymentStore.putAllIfAbsent(ids, payments, count);
+        for (int i = 0; i < count; i++) {
+            if (inserted[i]) {
+                windowAggregator.record(payments[i].getStatus(), payments[i].getAmount());
+                continue;
+            }
+            // Платеж уже есть: из события берётся только статус, и только допустимым переходом
+            Payment incoming = payments[i];
+            StatusTransitionResult[] result = {StatusTransitionResult.NOT_FOUND};
+            Payment stored = paymentStore.update(ids[i], p -> {
+                if (!Objects.equals(p.getAmount(), incoming.getAmount())) {
+                    logger.warn("Payment event {} differs from stored payment {} in amount, ignoring it", incoming, p);
+                    return false;
+                }
+                return (result[0] = transition(p, null, incoming.getStatus())) == StatusTransitionResult.APPLIED;
+            });
+            if (result[0] == StatusTransitionResult.APPLIED) {
+                windowAggregator.record(incoming.getStatus(), stored.getAmount());
+            } else if (result[0] == StatusTransitionResult.INVALID_TRANSITION) {
+                logger.debug("Ignoring stale status {} for payment {}", incoming.getStatus(), ids[i]);
+            }
+        }
+
+        logger.debug("Recorded {} payments from Kafka", count); // Логируем массовую запись
+        return count;
+    }
+
     /**
      * Получает платеж по его идентификатору.
      *
@@ -66,24 +184,122 @@ public class PaymentService {
 
     /**
      * Обновляет статус существующего платежа.
+     * Переход проверяется по жизненному циклу {@link PaymentStatus} и применяется под блокировкой сегмента
+     * хранилища, поэтому из нескольких одновременных запросов к одному платежу применяются только допустимые
+     * из его фактического текущего статуса, и статус не откатывается назад.
      *
      * @param paymentId Идентификатор платежа, статус которого необходимо обновить.
      * @param status Новый статус платежа.
-     * @return Обновленный платеж, если он был найден, или null, если платеж с таким идентификатором не существует.
+     * @return Результат смены статуса.
      */
-    public Payment updatePaymentStatus(Long paymentId, String status) {
+    public StatusUpdateResult updatePaymentStatus(Long paymentId, String status) {
         logger.debug("Updating status of payment with ID: {} to status: {}", paymentId, status); // Логируем обновление статуса
 
-        Payment payment = paymentStore.get(paymentId);
+        StatusUpdate update = new StatusUpdate();
+        update.setPaymentId(paymentId);
+        update.setStatus(status);
+        StatusUpdateResult result = applyStatusUpdate(update);
 
-        if (payment != null) {
-            payment.setStatus(status);
-            logger.info("Payment status updated: {}", payment); // Логируем успешное обновление
-            return payment;
+        if (result.isSuccessful()) {
+            logger.info("Payment with ID: {} status is now {} ({})", paymentId, result.getStatus(), result.getResult()); // Логируем успешное обновление
         } else {
-            logger.warn("Payment with ID: {} not found for status update", paymentId); // Логируем, если платеж не найден
-            return null;
+            logger.warn("Status update of payment with ID: {} to {} rejected: {}", paymentId, status, result.getResult()); // Логируем отказ
         }
+        return result;
+    }
+
+    /**
+     * Массово обновляет статусы платежей. Каждый элемент применяется независимо от остальных.
+     *
+     * @param updates Элементы обновления.
+     * @return Результаты в порядке элементов запроса.
+     */
+    public List<StatusUpdateResult> updatePaymentStatuses(List<StatusUpdate> updates) {
+        List<StatusUpdateResult> results = new ArrayList<>(updates.size());
+        int applied = 0;
+        for (StatusUpdate update : updates) {
+            StatusUpdateResult result = applyStatusUpdate(update);
+            if (result.getResult() == StatusTransitionResult.APPLIED) {
+                applied++;
+            }
+            results.add(result);
+        }
+
+        logger.info("Bulk status update: {} items, {} applied", updates.size(), applied); // Логируем итог
+        return results;
+    }
+
+    /**
+     * Применяет один элемент обновления статуса.
+     */
+    private StatusUpdateResult applyStatusUpdate(StatusUpdate update) {
+        Long paymentId = update.getPaymentId();
+        PaymentStatus target;
+        PaymentStatus expected;
+        try {
+            target = PaymentStatus.fromString(update.getStatus());
+            expected = PaymentStatus.fromString(update.getExpectedStatus());
+        } catch (IllegalArgumentException e) {
+            return new StatusUpdateResult(paymentId, StatusTransitionResult.INVALID_STATUS, null);
+        }
+        if (target == null) {
+            return new StatusUpdateResult(paymentId, StatusTransitionResult.INVALID_STATUS, null);
+        }
+        if (paymentId == null) {
+            return new StatusUpdateResult(null, StatusTransitionResult.NOT_FOUND, null);
+        }
+
+        // Все смены статуса выполняются под блокировкой записи сегмента, поэтому проверка и запись статуса атомарны
+        StatusTransitionResult[] result = {StatusTransitionResult.NOT_FOUND};
+        Payment payment = paymentStore.update(paymentId,
+                p -> (result[0] = transition(p, expected, target)) == StatusTransitionResult.APPLIED);
+        if (result[0] == StatusTransitionResult.APPLIED) {
+            windowAggregator.record(target, payment.getAmount());
+        }
+        return new StatusUpdateResult(paymentId, result[0], payment != null ? payment.getStatus() : null);
+    }
+
+    /**
+     * Проверяет и применяет смену статуса. Вызывается только из {@link PaymentStore#update},
+     * под блокировкой записи сегмента платежа.
+     *
+     * @param payment  Платеж
+     * @param expected Ожидаемый текущий статус или null, если не проверяется
+     * @param target   Новый статус
+     * @return Результат перехода
+     */
+    private static StatusTransitionResult transition(Payment payment, PaymentStatus expected, PaymentStatus target) {
+        PaymentStatus current = payment.getStatus();
+        if (expected != null && current != expected) {
+            return StatusTransitionResult.CONFLICT;
+        }
+        if (current == target) {
+            return StatusTransitionResult.UNCHANGED;
+        }
+        if (current != null && !current.canTransitionTo(target)) {
+            return StatusTransitionResult.INVALID_TRANSITION;
+        }
+        payment.setStatus(target);
+        return StatusTransitionResult.APPLIED;
+    }
+
+    /**
+     * Возвращает агрегаты платежей по всем настроенным окнам времени.
+     *
+     * @return Количество и сумма платежей по статусам для каждого окна.
+     */
+    public List<PaymentAggregate> getAggregates() {
+        return windowAggregator.snapshot();
+    }
+
+    /**
+     * Возвращает агрегаты платежей за одно окно времени.
+     *
+     * @param window Название окна (например, 5m).
+     * @return Агрегаты окна или null, если окно не настроено.
+     */
+    public PaymentAggregate getAggregate(String window) {
+        return windowAggregator.snapshot(window);
     }
 
     /**
@@ -105,4 +321,19 @@ public class PaymentService {
 
         return isDeleted;
     }
+
+    /**
+     * Статус платежа из события: отсутствующий статус считается PENDING, нераспознанный — тоже,
+     * с предупреждением в журнале.
+     */
+    private static PaymentStatus statusOf(PaymentEvent event) {
+        try {
+            PaymentStatus status = PaymentStatus.fromString(event.getStatus());
+            return status != null ? status : PaymentStatus.PENDING;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Payment event for order {} has unknown status '{}', using pending",
+                    event.getOrderId(), event.getStatus());
+            return PaymentStatus.PENDING;
+        }
+    }
 }
@@ -0,0 +1,460 @@
+package net.orekhov.paymentservice.service;
+
+import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * Потокобезопасное хранилище платежей с ключом-примитивом long.
+ *
+ * Хранилище разбито на сегменты, у каждого своя блокировка {@link StampedLock}: запись блокирует только
+ * свой сегмент, а чтение выполняется оптимистично, без блокировки, и повторяется под блокировкой чтения
+ * лишь при одновременной записи в тот же сегмент. Внутри сегмента — открытая адресация с линейным
+ * пробированием в параллельных массивах long[] и Payment[], поэтому ключи не упаковываются в Long
+ * и не создаются узлы на каждую запись.
+ *
+ * Ключ 0 зарезервирован как признак пустой ячейки; идентификаторы платежей начинаются с 1.
+ */
+@Component
+public class PaymentStore {
+
+    private static final int SEGMENT_BITS = 6; // 64 сегмента
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_CAPACITY = 1 << 10; // Начальный размер таблицы сегмента (степень двойки)
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private volatile MutationListener mutationListener; // Получатель изменений (журнал), вызывается под блокировкой сегмента до изменения
+
+    public PaymentStore() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Получить платеж по идентификатору.
+     *
+     * @param id Идентификатор платежа
+     * @return Платеж или null, если платежа нет
+     */
+    public Payment get(long id) {
+        long hash = hash(id);
+        return segmentFor(hash).get(id, hash);
+    }
+
+    /**
+     * Сохранить платеж.
+     *
+     * @param id      Идентификатор платежа (не 0)
+     * @param payment Платеж
+     * @return Предыдущий платеж с этим идентификатором или null
+     */
+    public Payment put(long id, Payment payment) {
+        checkKey(id);
+        long hash = hash(id);
+        return segmentFor(hash).put(id, hash, payment);
+    }
+
+    /**
+     * Сохранить несколько платежей одной операцией, не заменяя уже существующие: платежи группируются
+     * по сегментам, и блокировка каждого сегмента берётся один раз на всю группу.
+     *
+     * @param ids      Идентификаторы платежей (не 0)
+     * @param payments Платежи, payments[i] соответствует ids[i]
+     * @param count    Количество платежей в массивах
+     * @return inserted[i] == true, если платеж payments[i] добавлен; false, если платеж с ids[i] уже был
+     *         (в том числе добавлен раньше в этом же вызове)
+     */
+    public boolean[] putAllIfAbsent(long[] ids, Payment[] payments, int count) {
+        long[] hashes = new long[count];
+        int[] bounds = new int[SEGMENTS + 1]; // Границы групп сегментов в order
+        for (int i = 0; i < count; i++) {
+            checkKey(ids[i]);
+            hashes[i] = hash(ids[i]);
+            bounds[segmentIndex(hashes[i]) + 1]++;
+        }
+        for (int s = 0; s < SEGMENTS; s++) {
+            bounds[s + 1] += bounds[s];
+        }
+        boolean[] inserted = new boolean[count];
+        int[] order = new int[count]; // Индексы платежей, упорядоченные по сегменту
+        int[] next = Arrays.copyOf(bounds, SEGMENTS);
+        for (int i = 0; i < count; i++) {
+            order[next[segmentIndex(hashes[i])]++] = i;
+        }
+        for (int s = 0; s < SEGMENTS; s++) {
+            if (bounds[s] < bounds[s + 1]) {
+                segments[s].putAllIfAbsent(ids, hashes, payments, order, bounds[s], bounds[s + 1], inserted);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Изменить платеж под блокировкой его сегмента, если он существует.
+     * Получатель изменений уведомляется, только если updater вернул true.
+     *
+     * @param id      Идентификатор платежа
+     * @param updater Изменение платежа; возвращает true, если платеж изменён
+     * @return Платеж или null, если платежа нет
+     */
+    public Payment update(long id, Predicate<Payment> updater) {
+        long hash = hash(id);
+        return segmentFor(hash).update(id, hash, updater);
+    }
+
+    /**
+     * Удалить платеж.
+     *
+     * @param id Идентификатор платежа
+     * @return Удалённый платеж или null, если платежа не было
+     */
+    public Payment remove(long id) {
+        if (id == 0) {
+            return null;
+        }
+        long hash = hash(id);
+        return segmentFor(hash).remove(id, hash);
+    }
+
+    /**
+     * Обойти все платежи. Каждый сегмент обходится под блокировкой чтения, поэтому изменения
+     * платежей сегмента ждут окончания его обхода; между сегментами снимок не согласован.
+     *
+     * @param visitor Получатель платежей
+     */
+    public void forEach(PaymentVisitor visitor) {
+        for (Segment segment : segments) {
+            segment.forEach(visitor);
+        }
+    }
+
+    /**
+     * Установить получателя изменений. Получатель вызывается под блокировкой сегмента изменённого платежа,
+     * поэтому изменения одного платежа приходят к нему в том же порядке, в котором применены к хранилищу.
+     * Сохранение и удаление передаются получателю до изменения таблицы, а изменение через {@link #update} —
+     * сразу после updater; если получатель бросает исключение, изменение не применяется (update откатывает
+     * статус и сумму платежа), и исключение передаётся вызывающему.
+     *
+     * @param mutationListener Получатель изменений или null
+     */
+    public void setMutationListener(MutationListener mutationListener) {
+        this.mutationListener = mutationListener;
+    }
+
+    /**
+     * Количество платежей в хранилище.
+     *
+     * @return Сумма размеров сегментов (без общей блокировки, поэтому приблизительная при одновременной записи)
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[segmentIndex(hash)];
+    }
+
+    private static int segmentIndex(long hash) {
+        return (int) (hash >>> (64 - SEGMENT_BITS));
+    }
+
+    private static void checkKey(long id) {
+        if (id == 0) {
+            throw new IllegalArgumentException("Payment ID 0 is reserved");
+        }
+    }
+
+    /**
+     * Перемешивание битов ключа (финализатор murmur3), чтобы последовательные идентификаторы
+     * равномерно распределялись по сегментам и ячейкам.
+     */
+    private static long hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Сегмент хранилища: таблица с открытой адресацией под собственной блокировкой.
+     */
+    private final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(INITIAL_SEGMENT_CAPACITY); // Массивы заменяются целиком при расширении
+        private volatile int size;
+
+        Payment get(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Payment value = find(table, key, hash);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(table, key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        Payment put(long key, long hash, Payment value) {
+            long stamp = lock.writeLock();
+            try {
+                MutationListener listener = mutationListener;
+                if (listener != null) {
+                    listener.onPut(key, value); // До изменения таблицы: при ошибке журнала платеж не сохраняется
+                }
+                return insert(key, hash, value, true);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void putAllIfAbsent(long[] keys, long[] hashes, Payment[] values, int[] order, int from, int to,
+                            boolean[] inserted) {
+            long stamp = lock.writeLock();
+            try {
+                MutationListener listener = mutationListener;
+                for (int i = from; i < to; i++) {
+                    int item = order[i];
+                    if (listener != null) {
+                        if (find(table, keys[item], hashes[item]) != null) {
+                            continue;
+                        }
+                        listener.onPut(keys[item], values[item]);
+                    }
+                    if (insert(keys[item], hashes[item], values[item], false) != null) {
+                        continue;
+                    }
+                    inserted[item] = true;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Payment update(long key, long hash, Predicate<Payment> updater) {
+            long stamp = lock.writeLock();
+            try {
+                Payment value = find(table, key, hash);
+                if (value == null) {
+                    return null;
+                }
+                MutationListener listener = mutationListener;
+                PaymentStatus status = value.getStatus();
+                Double amount = value.getAmount();
+                if (updater.test(value) && listener != null) {
+                    try {
+                        listener.onUpdate(key, value);
+                    } catch (RuntimeException e) {
+                        // updater меняет сам платеж: изменение, не попавшее в журнал, откатывается
+                        value.setStatus(status);
+                        value.setAmount(amount);
+                        throw e;
+                    }
+                }
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Payment remove(long key, long hash) {
+            long stamp = lock.writeLock();
+            try {
+                long[] keys = table.keys;
+                int mask = keys.length - 1;
+                int index = (int) hash & mask;
+                while (keys[index] != key) {
+                    if (keys[index] == 0) {
+                        return null;
+                    }
+                    index = (index + 1) & mask;
+                }
+                MutationListener listener = mutationListener;
+                if (listener != null) {
+                    listener.onRemove(key); // До изменения таблицы: при ошибке журнала платеж не удаляется
+                }
+                Payment removed = table.values[index];
+                shiftBack(index);
+                size = size - 1;
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void forEach(PaymentVisitor visitor) {
+            long stamp = lock.readLock();
+            try {
+                long[] keys = table.keys;
+                Payment[] values = table.values;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0) {
+                        visitor.visit(keys[i], values[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Вставка под блокировкой записи; существующий платеж заменяется, только если replace == true.
+         *
+         * @return Платеж, который был в таблице с этим ключом, или null
+         */
+        private Payment insert(long key, long hash, Payment value, boolean replace) {
+            long[] keys = table.keys;
+            Payment[] values = table.values;
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            while (keys[index] != 0) {
+                if (keys[index] == key) {
+                    Payment previous = values[index];
+                    if (replace) {
+                        values[index] = value;
+                    }
+                    return previous;
+                }
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+            size = size + 1;
+            if (size > keys.length - (keys.length >>> 2)) { // Коэффициент заполнения 0.75
+                resize();
+            }
+            return null;
+        }
+
+        /**
+         * Поиск в таблице. При оптимистичном чтении таблица может меняться одновременно,
+         * поэтому число шагов пробирования ограничено её размером, а результат проверяется вызывающим.
+         */
+        private static Payment find(Table table, long key, long hash) {
+            long[] keys = table.keys;
+            Payment[] values = table.values;
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                long current = keys[index];
+                if (current == key) {
+                    return values[index];
+                }
+                if (current == 0) {
+                    return null;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * Удаление без надгробий: элементы цепочки пробирования за удалённой ячейкой сдвигаются назад,
+         * если их исходная позиция не лежит между освободившейся ячейкой и их текущим местом.
+         */
+        private void shiftBack(int hole) {
+            long[] keys = table.keys;
+            Payment[] values = table.values;
+            int mask = keys.length - 1;
+            int index = hole;
+            while (true) {
+                index = (index + 1) & mask;
+                long key = keys[index];
+                if (key == 0) {
+                    break;
+                }
+                int home = (int) hash(key) & mask;
+                boolean movable = hole <= index ? (home <= hole || home > index) : (home <= hole && home > index);
+                if (movable) {
+                    keys[hole] = key;
+                    values[hole] = values[index];
+                    hole = index;
+                }
+            }
+            keys[hole] = 0;
+            values[hole] = null;
+        }
+
+        private void resize() {
+            long[] oldKeys = table.keys;
+            Payment[] oldValues = table.values;
+            Table resized = new Table(oldKeys.length << 1);
+            long[] newKeys = resized.keys;
+            Payment[] newValues = resized.values;
+            int mask = newKeys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                long key = oldKeys[i];
+                if (key != 0) {
+                    int index = (int) hash(key) & mask;
+                    while (newKeys[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    newKeys[index] = key;
+                    newValues[index] = oldValues[i];
+                }
+            }
+            table = resized;
+        }
+    }
+
+    /**
+     * Параллельные массивы ключей и значений одного размера (степень двойки).
+     */
+    private static final class Table {
+
+        final long[] keys; // 0 — пустая ячейка
+        final Payment[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Payment[capacity];
+        }
+    }
+
+    /**
+     * Получатель платежей при обходе хранилища.
+     */
+    @FunctionalInterface
+    public interface PaymentVisitor {
+
+        void visit(long id, Payment payment);
+    }
+
+    /**
+     * Получатель изменений хранилища. Исключение получателя отменяет изменение, о котором он уведомлён.
+     */
+    public interface MutationListener {
+
+        /**
+         * Платеж сохранён (создан или заменён целиком).
+         */
+        void onPut(long id, Payment payment);
+
+        /**
+         * Платеж изменён через {@link PaymentStore#update}.
+         */
+        void onUpdate(long id, Payment payment);
+
+        /**
+         * Платеж удалён.
+         */
+        void onRemove(long id);
+    }
+}
@@ -0,0 +1,185 @@
+package net.orekhov.paymentservice.service;
+
+import net.orekhov.paymentservice.model.PaymentAggregate;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import net.orekhov.paymentservice.model.StatusTotals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Инкрементальные агрегаты платежей по окнам времени: количество и сумма по статусам.
+ *
+ * Окно задаётся как размер/шаг (payments.aggregates.windows, например "5m/5m,1h/1m"): при равных размере и шаге
+ * окна не перекрываются, иначе окно размера size сдвигается с шагом advance. Окно хранится как кольцо из size/advance
+ * интервалов длиной advance; каждый интервал содержит счётчики по статусам. Запись изменяет только счётчики текущего
+ * интервала, а чтение складывает интервалы окна, поэтому его стоимость зависит от числа интервалов, но не от
+ * количества платежей. Интервал, вышедший из окна, обнуляется при первой записи в его ячейку кольца.
+ */
+@Component
+public class PaymentWindowAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentWindowAggregator.class); // Логгер для агрегатов
+
+    private static final int MAX_SLICES = 3600; // Максимальное число интервалов в окне
+    private static final PaymentStatus[] STATUSES = PaymentStatus.values();
+
+    private final Map<String, Window> windows = new LinkedHashMap<>(); // Окна по названию в порядке настройки
+
+    /**
+     * Конструктор с настройками окон.
+     *
+     * @param specs Окна в формате размер/шаг, например 5m/5m или 1h/1m; шаг можно опустить для неперекрывающегося окна
+     */
+    public PaymentWindowAggregator(@Value("${payments.aggregates.windows:5m/5m,1h/1m}") List<String> specs) {
+        for (String spec : specs) {
+            String[] parts = spec.trim().split("/");
+            long size = DurationStyle.detectAndParse(parts[0].trim()).toMillis();
+            long advance = parts.length > 1 ? DurationStyle.detectAndParse(parts[1].trim()).toMillis() : size;
+            if (advance <= 0 || size < advance || size % advance != 0 || size / advance > MAX_SLICES) {
+                throw new IllegalArgumentException("Invalid payment aggregate window '" + spec
+                        + "': size must be a multiple of advance and contain at most " + MAX_SLICES + " advances");
+            }
+            windows.put(parts[0].trim(), new Window(size, advance));
+        }
+        logger.info("Payment aggregate windows: {}", specs);
+    }
+
+    /**
+     * Учитывает платеж, созданный в статусе или перешедший в статус в текущий момент.
+     *
+     * @param status Статус платежа
+     * @param amount Сумма платежа (null считается нулём)
+     */
+    public void record(PaymentStatus status, Double amount) {
+        if (status == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        double value = amount != null ? amount : 0;
+        for (Window window : windows.values()) {
+            window.add(now, status, value);
+        }
+    }
+
+    /**
+     * Агрегаты всех окон на текущий момент.
+     *
+     * @return Агрегаты в порядке настройки окон
+     */
+    public List<PaymentAggregate> snapshot() {
+        long now = System.currentTimeMillis();
+        List<PaymentAggregate> result = new ArrayList<>(windows.size());
+        windows.forEach((name, window) -> result.add(window.snapshot(name, now)));
+        return result;
+    }
+
+    /**
+     * Агрегаты одного окна на текущий момент.
+     *
+     * @param name Название окна (его размер из настройки, например 5m)
+     * @return Агрегаты окна или null, если окно не настроено
+     */
+    public PaymentAggregate snapshot(String name) {
+        Window window = windows.get(name);
+        return window != null ? window.snapshot(name, System.currentTimeMillis()) : null;
+    }
+
+    /**
+     * Окно: кольцо интервалов длиной advance.
+     */
+    private static final class Window {
+
+        private final long sizeMillis; // Размер окна
+        private final long advanceMillis; // Шаг окна и длина интервала
+        private final Slice[] slices; // Кольцо интервалов
+
+        Window(long sizeMillis, long advanceMillis) {
+            this.sizeMillis = sizeMillis;
+            this.advanceMillis = advanceMillis;
+            this.slices = new Slice[(int) (sizeMillis / advanceMillis)];
+            for (int i = 0; i < slices.length; i++) {
+                slices[i] = new Slice();
+            }
+        }
+
+        void add(long now, PaymentStatus status, double amount) {
+            long epoch = now / advanceMillis;
+            Slice slice = slices[(int) (epoch % slices.length)];
+            if (slice.epoch != epoch) {
+                slice.rotate(epoch);
+            }
+            if (slice.epoch == epoch) { // Иначе запись опоздала больше чем на размер окна
+                slice.counts[status.ordinal()].increment();
+                slice.amounts[status.ordinal()].add(amount);
+            }
+        }
+
+        /**
+         * Складывает интервалы, входящие в окно: текущий и предыдущие size/advance - 1.
+         */
+        PaymentAggregate snapshot(String name, long now) {
+            long current = now / advanceMillis;
+            long oldest = current - slices.length + 1;
+            long[] counts = new long[STATUSES.length];
+            double[] amounts = new double[STATUSES.length];
+            for (Slice slice : slices) {
+                long epoch = slice.epoch;
+                if (epoch >= oldest && epoch <= current) {
+                    for (int i = 0; i < STATUSES.length; i++) {
+                        counts[i] += slice.counts[i].sum();
+                        amounts[i] += slice.amounts[i].sum();
+                    }
+                }
+            }
+
+            Map<String, StatusTotals> totals = new LinkedHashMap<>();
+            for (int i = 0; i < STATUSES.length; i++) {
+                totals.put(STATUSES[i].getCode(), new StatusTotals(counts[i], amounts[i]));
+            }
+            return new PaymentAggregate(name, sizeMillis / 1000, advanceMillis / 1000,
+                    Instant.ofEpochMilli(oldest * advanceMillis), Instant.ofEpochMilli(now), totals);
+        }
+    }
+
+    /**
+     * Интервал окна: счётчики по статусам. Сумматоры распределяют одновременные записи по ячейкам,
+     * поэтому запись в текущий интервал из многих потоков не упирается в одну блокировку.
+     */
+    private static final class Slice {
+
+        private volatile long epoch = -1; // Номер интервала (время / advance), которому принадлежат счётчики
+        private final LongAdder[] counts = new LongAdder[STATUSES.length];
+        private final DoubleAdder[] amounts = new DoubleAdder[STATUSES.length];
+
+        Slice() {
+            for (int i = 0; i < STATUSES.length; i++) {
+                counts[i] = new LongAdder();
+                amounts[i] = new DoubleAdder();
+            }
+        }
+
+        /**
+         * Переводит ячейку кольца на новый интервал, обнуляя счётчики вышедшего из окна.
+         */
+        synchronized void rotate(long newEpoch) {
+            if (epoch < newEpoch) {
+                for (int i = 0; i < STATUSES.length; i++) {
+                    counts[i].reset();
+                    amounts[i].reset();
+                }
+                epoch = newEpoch;
+            }
+        }
+    }
+}
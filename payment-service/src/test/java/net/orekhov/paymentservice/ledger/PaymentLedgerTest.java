@@ -0,0 +1,282 @@
+package net.orekhov.paymentservice.ledger;
+
+import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import net.orekhov.paymentservice.service.PaymentIdAllocator;
+import net.orekhov.paymentservice.service.PaymentStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentLedgerTest {
+
+    private static final int HEADER_SIZE = 16; // Длина, CRC32 и номер записи
+    private static final int PAYLOAD_SIZE = 20;
+    private static final int RECORD_SIZE = HEADER_SIZE + PAYLOAD_SIZE;
+
+    @Test
+    void recordsSurviveReopen() throws Exception {
+        Path directory = Files.createTempDirectory("ledger");
+        try {
+            PaymentLedger ledger = new PaymentLedger(directory, 4096, 4);
+            appendRecords(ledger, 1, 100);
+            ledger.force();
+            ledger.close();
+
+            PaymentLedger reopened = new PaymentLedger(directory, 4096, 4);
+            assertEquals(100, reopened.getLastSequence());
+            assertRecords(reopened, 100);
+            assertEquals(101, reopened.append(payload(101)));
+            reopened.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void tornTailIsDiscardedAndZeroed() throws Exception {
+        Path directory = Files.createTempDirectory("ledger");
+        try {
+            PaymentLedger ledger = new PaymentLedger(directory, 4096, 4);
+            appendRecords(ledger, 1, 10);
+            ledger.force();
+            ledger.close();
+
+            // Обрыв записи 10: данные не совпадают с CRC, за ней — мусор
+            Path segment = segmentPath(directory, 4096, 0);
+            corrupt(segment, 9L * RECORD_SIZE + HEADER_SIZE);
+            try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+                file.seek(10L * RECORD_SIZE + 100);
+                file.write(new byte[]{1, 2, 3, 4});
+            }
+
+            PaymentLedger reopened = new PaymentLedger(directory, 4096, 4);
+            assertEquals(9, reopened.getLastSequence());
+            assertRecords(reopened, 9);
+            byte[] bytes = Files.readAllBytes(segment);
+            for (int i = 9 * RECORD_SIZE; i < bytes.length; i++) {
+                assertEquals(0, bytes[i], "byte " + i + " is not cleared");
+            }
+
+            assertEquals(10, reopened.append(payload(10)));
+            reopened.force();
+            reopened.close();
+            assertRecords(new PaymentLedger(directory, 4096, 4), 10);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void segmentsAfterRecoveryPointAreDeleted() throws Exception {
+        Path directory = Files.createTempDirectory("ledger");
+        int segmentSize = 256; // 7 записей на сегмент
+        try {
+            PaymentLedger ledger = new PaymentLedger(directory, segmentSize, 4);
+            appendRecords(ledger, 1, 30);
+            ledger.force();
+            ledger.close();
+            assertTrue(Files.exists(segmentPath(directory, segmentSize, 4)));
+
+            // Запись 13 (вторая с конца в сегменте 1) повреждена, индексы сегментов 2..4 потеряны:
+            // восстановление останавливается в сегменте 1, а целые записи сегментов 2..4 устарели
+            corrupt(segmentPath(directory, segmentSize, 1), 5L * RECORD_SIZE + HEADER_SIZE);
+            for (long i = 2; i <= 4; i++) {
+                Files.delete(directory.resolve(String.format("%020d.index", i * segmentSize)));
+            }
+
+            PaymentLedger reopened = new PaymentLedger(directory, segmentSize, 4);
+            assertEquals(12, reopened.getLastSequence());
+            for (long i = 2; i <= 4; i++) {
+                assertFalse(Files.exists(segmentPath(directory, segmentSize, i)), "segment " + i + " is left on disk");
+            }
+
+            // Записи другой длины: устаревшие записи не совпали бы с новыми границами
+            for (long sequence = 13; sequence <= 40; sequence++) {
+                assertEquals(sequence, reopened.append(("short-" + sequence).getBytes(StandardCharsets.UTF_8)));
+            }
+            reopened.force();
+            reopened.close();
+
+            PaymentLedger recovered = new PaymentLedger(directory, segmentSize, 4);
+            assertEquals(40, recovered.getLastSequence());
+            List<Long> sequences = new ArrayList<>();
+            recovered.replay(0, (sequence, data) -> sequences.add(sequence));
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i + 1L, sequences.get(i));
+            }
+            assertEquals(40, sequences.size());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void recoveryFallsBackToEarlierIndexEntryOrFullScan() throws Exception {
+        Path directory = Files.createTempDirectory("ledger");
+        try {
+            PaymentLedger ledger = new PaymentLedger(directory, 4096, 4);
+            appendRecords(ledger, 1, 20);
+            ledger.force();
+            ledger.close();
+
+            // Последняя проиндексированная запись (20) повреждена: проверка начинается с записи 16
+            corrupt(segmentPath(directory, 4096, 0), 19L * RECORD_SIZE + HEADER_SIZE);
+            PaymentLedger reopened = new PaymentLedger(directory, 4096, 4);
+            assertEquals(19, reopened.getLastSequence());
+            reopened.close();
+
+            // Без файла индекса журнал проверяется с начала
+            Files.delete(directory.resolve(String.format("%020d.index", 0)));
+            PaymentLedger withoutIndex = new PaymentLedger(directory, 4096, 4);
+            assertEquals(19, withoutIndex.getLastSequence());
+            assertRecords(withoutIndex, 19);
+            withoutIndex.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    void snapshotAndLedgerTailRestoreStore() throws Exception {
+        Path directory = Files.createTempDirectory("ledger");
+        try {
+            PaymentStore store = new PaymentStore();
+            PaymentIdAllocator allocator = new PaymentIdAllocator(3, 16, false);
+            PaymentPersistence persistence = new PaymentPersistence(store, allocator, true, directory.toString(),
+                    1, 16, 50, 0);
+            persistence.start();
+
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                long id = allocator.nextId();
+                ids.add(id);
+                store.put(id, payment(id, i, PaymentStatus.PENDING));
+            }
+            for (int i = 0; i < 50; i++) {
+                store.update(ids.get(i), p -> {
+                    p.setStatus(PaymentStatus.COMPLETED);
+                    return true;
+                });
+            }
+
+            // Снимок делается фоновой задачей раз в секунду
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (PaymentSnapshot.latest(directory).isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Optional<PaymentSnapshot> snapshot = PaymentSnapshot.latest(directory);
+            assertTrue(snapshot.isPresent());
+
+            // Изменения после снимка попадают только в хвост журнала
+            for (int i = 50; i < 80; i++) {
+                store.update(ids.get(i), p -> {
+                    p.setStatus(PaymentStatus.FAILED);
+                    return true;
+                });
+            }
+            for (int i = 0; i < 20; i++) {
+                store.remove(ids.get(i));
+            }
+            long last = allocator.nextId();
+            store.put(last, payment(last, 1000, PaymentStatus.AUTHORIZED));
+            persistence.stop();
+
+            Map<Long, String> expected = contents(store);
+
+            PaymentStore restored = new PaymentStore();
+            PaymentIdAllocator restoredAllocator = new PaymentIdAllocator(3, 16, false);
+            PaymentPersistence restoredPersistence = new PaymentPersistence(restored, restoredAllocator, true,
+                    directory.toString(), 1, 16, 50, 0);
+            restoredPersistence.start();
+            try {
+                assertEquals(expected, contents(restored));
+                assertTrue(restoredAllocator.nextId() > last);
+            } finally {
+                restoredPersistence.stop();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void appendRecords(PaymentLedger ledger, long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            assertEquals(sequence, ledger.append(payload(sequence)));
+        }
+    }
+
+    /**
+     * Проверяет, что журнал воспроизводит ровно записи 1..count с данными из {@link #payload}.
+     */
+    private static void assertRecords(PaymentLedger ledger, long count) {
+        List<String> records = new ArrayList<>();
+        ledger.replay(0, (sequence, data) -> {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            records.add(sequence + ":" + new String(bytes, StandardCharsets.UTF_8));
+        });
+        assertEquals(count, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals((i + 1) + ":" + new String(payload(i + 1), StandardCharsets.UTF_8), records.get(i));
+        }
+    }
+
+    /**
+     * Данные записи фиксированной длины PAYLOAD_SIZE.
+     */
+    private static byte[] payload(long sequence) {
+        return String.format("record-%013d", sequence).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Payment payment(long id, double amount, PaymentStatus status) {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setAmount(amount);
+        payment.setStatus(status);
+        return payment;
+    }
+
+    private static Map<Long, String> contents(PaymentStore store) {
+        Map<Long, String> contents = new HashMap<>();
+        store.forEach((id, payment) -> contents.put(id, payment.getAmount() + "/" + payment.getStatus()));
+        return contents;
+    }
+
+    /**
+     * Инвертирует байт файла по смещению.
+     */
+    private static void corrupt(Path file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(~value);
+        }
+    }
+
+    private static Path segmentPath(Path directory, int segmentSize, long segmentIndex) {
+        return directory.resolve(String.format("%020d.log", segmentIndex * segmentSize));
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package net.orekhov.paymentservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeficitRoundRobinExecutorTest {
+
+    @Test
+    void tasksOfOneKeyRunInSubmissionOrder() throws Exception {
+        DeficitRoundRobinExecutor executor = new DeficitRoundRobinExecutor(4, 3, 100_000, 100_000, "drr-test-");
+        int keys = 10;
+        int perKey = 2_000;
+        Map<Integer, List<Integer>> executed = new HashMap<>();
+        for (int k = 0; k < keys; k++) {
+            executed.put(k, Collections.synchronizedList(new ArrayList<>()));
+        }
+        CountDownLatch done = new CountDownLatch(keys * perKey);
+        try {
+            for (int i = 0; i < perKey; i++) {
+                for (int k = 0; k < keys; k++) {
+                    int key = k;
+                    int sequence = i;
+                    executor.execute(key, 1 + (i % 5), () -> {
+                        executed.get(key).add(sequence);
+                        done.countDown();
+                    });
+                }
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int k = 0; k < keys; k++) {
+            List<Integer> sequences = executed.get(k);
+            assertEquals(perKey, sequences.size());
+            for (int i = 0; i < perKey; i++) {
+                assertEquals(i, (int) sequences.get(i));
+            }
+        }
+    }
+
+    @Test
+    void rareKeyDoesNotWaitBehindLongQueue() throws Exception {
+        DeficitRoundRobinExecutor executor = new DeficitRoundRobinExecutor(1, 1, 100_000, 100_000, "drr-test-");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(101);
+        try {
+            CountDownLatch gate = blockWorker(executor);
+            for (int i = 0; i < 100; i++) {
+                executor.execute("heavy", 1, () -> {
+                    order.add("heavy");
+                    done.countDown();
+                });
+            }
+            executor.execute("light", 1, () -> {
+                order.add("light");
+                done.countDown();
+            });
+            gate.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        // Круг: одна задача heavy, затем light — а не после всех 100 задач heavy
+        assertEquals(1, order.indexOf("light"));
+    }
+
+    @Test
+    void keysGetEqualShareOfCostPerRound() throws Exception {
+        DeficitRoundRobinExecutor executor = new DeficitRoundRobinExecutor(1, 10, 100_000, 100_000, "drr-test-");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        try {
+            CountDownLatch gate = blockWorker(executor);
+            for (int i = 0; i < 50; i++) {
+                executor.execute("large", 10, () -> {
+                    order.add("large");
+                    done.countDown();
+                });
+                executor.execute("small", 1, () -> {
+                    order.add("small");
+                    done.countDown();
+                });
+            }
+            gate.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        // За круг каждый ключ расходует квант 10: одна крупная задача или десять мелких
+        List<String> firstRounds = order.subList(0, 22);
+        assertEquals(2, Collections.frequency(firstRounds, "large"));
+        assertEquals(20, Collections.frequency(firstRounds, "small"));
+    }
+
+    @Test
+    void saturatesOnceAndDrainsAtHalfTheBounds() throws Exception {
+        DeficitRoundRobinExecutor executor = new DeficitRoundRobinExecutor(1, 1_000, 4, 100, "drr-test-");
+        AtomicInteger saturated = new AtomicInteger();
+        AtomicInteger drained = new AtomicInteger();
+        executor.setBackpressure(saturated::incrementAndGet, drained::incrementAndGet);
+        CountDownLatch done = new CountDownLatch(6);
+        try {
+            CountDownLatch gate = blockWorker(executor);
+            for (int i = 0; i < 3; i++) {
+                executor.execute("key", 1, done::countDown);
+            }
+            assertEquals(0, saturated.get());
+            executor.execute("key", 1, done::countDown); // Очередь ключа достигла предела 4
+            assertEquals(1, saturated.get());
+            executor.execute("key", 1, done::countDown);
+            executor.execute("other", 1, done::countDown);
+            assertEquals(1, saturated.get());
+            assertEquals(0, drained.get());
+
+            gate.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, saturated.get());
+        assertEquals(1, drained.get());
+        assertEquals(0, executor.getQueued());
+    }
+
+    @Test
+    void saturatesOnTotalBoundAcrossKeys() throws Exception {
+        DeficitRoundRobinExecutor executor = new DeficitRoundRobinExecutor(1, 1, 1_000, 10, "drr-test-");
+        AtomicInteger saturated = new AtomicInteger();
+        AtomicInteger drained = new AtomicInteger();
+        executor.setBackpressure(saturated::incrementAndGet, drained::incrementAndGet);
+        CountDownLatch done = new CountDownLatch(10);
+        try {
+            CountDownLatch gate = blockWorker(executor);
+            for (int k = 0; k < 9; k++) {
+                executor.execute(k, 1, done::countDown);
+            }
+            assertEquals(0, saturated.get());
+            executor.execute(9, 1, done::countDown);
+            assertEquals(1, saturated.get());
+
+            gate.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, drained.get());
+    }
+
+    @Test
+    void shutdownRunsQueuedTasksAndRejectsNewOnes() throws Exception {
+        DeficitRoundRobinExecutor executor = new DeficitRoundRobinExecutor(2, 1, 1_000, 1_000, "drr-test-");
+        AtomicInteger executed = new AtomicInteger();
+        for (int i = 0; i < 500; i++) {
+            executor.execute(i % 7, 1, executed::incrementAndGet);
+        }
+        executor.shutdown();
+
+        assertEquals(500, executed.get());
+        assertThrows(IllegalStateException.class, () -> executor.execute("late", 1, executed::incrementAndGet));
+    }
+
+    /**
+     * Занимает единственный поток пула задачей, которая ждёт открытия возвращённой защёлки,
+     * чтобы следующие задачи накопились в очередях до начала обслуживания.
+     */
+    private static CountDownLatch blockWorker(DeficitRoundRobinExecutor executor) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        executor.execute("gate", 1, () -> {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        return gate;
+    }
+}
@@ -0,0 +1,46 @@
+package net.orekhov.paymentservice.service;
+
+import net.orekhov.paymentservice.event.OrderEvent;
+import net.orekhov.paymentservice.event.PaymentEvent;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentServiceTest {
+
+    @Test
+    void repeatedOrderRecordsProduceOnePayment() {
+        PaymentStore store = new PaymentStore();
+        PaymentService service = new PaymentService(store, new PaymentIdAllocator(1, 16, false),
+                new PaymentWindowAggregator(List.of("5m/5m")), List.of("created", "new", "pending"));
+        OrderEvent order = new OrderEvent("order-1", "customer-1", "book", 2, 10.0, "created");
+
+        // Та же запись заказа, доставленная повторно (повтор outbox или запроса клиента)
+        PaymentEvent first = service.paymentForOrder(order);
+        PaymentEvent repeated = service.paymentForOrder(order);
+        PaymentEvent other = service.paymentForOrder(new OrderEvent("order-2", "customer-1", "book", 2, 10.0, null));
+
+        assertEquals(first.getPaymentId(), repeated.getPaymentId());
+        assertNotEquals(first.getPaymentId(), other.getPaymentId());
+        assertTrue(first.getPaymentId() < 0);
+
+        service.recordPayments(List.of(first, other));
+        service.recordPayments(List.of(repeated));
+
+        assertEquals(2, store.size());
+        assertEquals(20.0, store.get(first.getPaymentId()).getAmount().doubleValue());
+        assertEquals(PaymentStatus.PENDING, store.get(first.getPaymentId()).getStatus());
+    }
+
+    @Test
+    void orderIdsNeverMapToAllocatorIds() {
+        PaymentIdAllocator allocator = new PaymentIdAllocator(1023, 16, false);
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(PaymentIdAllocator.forOrder("order-" + i) < 0);
+            assertTrue(allocator.nextId() > 0);
+        }
+    }
+}
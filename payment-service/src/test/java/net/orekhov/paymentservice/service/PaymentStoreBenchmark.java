@@ -0,0 +1,185 @@
+package net.orekhov.paymentservice.service;
+
+import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentStatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Сравнение PaymentStore с HashMap и ConcurrentHashMap: объём кучи и скорость put/get
+ * для N последовательных идентификаторов и смешанная нагрузка 80/10/10 get/update/put из нескольких потоков.
+ * Не является тестом и не запускается при сборке.
+ *
+ * Запуск после mvn test-compile (slf4j-api — из локального репозитория Maven):
+ * java -Xmx4g -cp target/classes:target/test-classes:slf4j-api.jar \
+ *     net.orekhov.paymentservice.service.PaymentStoreBenchmark store|hashmap|chm|mixed-store|mixed-chm [N] [потоки]
+ *
+ * Объём кучи считается после System.gc() и не включает сами объекты Payment.
+ */
+public class PaymentStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args[0];
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        Payment[] payments = new Payment[count];
+        for (int i = 0; i < count; i++) {
+            Payment payment = new Payment();
+            payment.setId(i + 1L);
+            payment.setAmount(1.0);
+            payment.setStatus(PaymentStatus.PENDING);
+            payments[i] = payment;
+        }
+
+        switch (mode) {
+            case "hashmap" -> single(mode, new MapAdapter(new HashMap<>()), payments);
+            case "chm" -> single(mode, new MapAdapter(new ConcurrentHashMap<>()), payments);
+            case "store" -> single(mode, new StoreAdapter(new PaymentStore()), payments);
+            case "mixed-chm" -> mixed(mode, new MapAdapter(new ConcurrentHashMap<>()), payments, threads);
+            case "mixed-store" -> mixed(mode, new StoreAdapter(new PaymentStore()), payments, threads);
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * Однопоточные put и get всех платежей.
+     */
+    private static void single(String mode, Adapter target, Payment[] payments) {
+        long base = usedHeap();
+        long putStarted = System.nanoTime();
+        for (Payment payment : payments) {
+            target.put(payment.getId(), payment);
+        }
+        long putNanos = System.nanoTime() - putStarted;
+        long heap = usedHeap() - base;
+
+        long getStarted = System.nanoTime();
+        long hits = 0;
+        for (int i = 1; i <= payments.length; i++) {
+            if (target.get(i) != null) {
+                hits++;
+            }
+        }
+        long getNanos = System.nanoTime() - getStarted;
+        if (hits != payments.length) {
+            throw new IllegalStateException("Expected " + payments.length + " hits, got " + hits);
+        }
+
+        System.out.printf("%s: heap %.0f MB, put %.1f Mops/s, get %.1f Mops/s%n", mode, heap / 1048576.0,
+                payments.length / (putNanos / 1e3), payments.length / (getNanos / 1e3));
+    }
+
+    /**
+     * Смешанная нагрузка: 80% get, 10% смена статуса, 10% put по случайным идентификаторам.
+     */
+    private static void mixed(String mode, Adapter target, Payment[] payments, int threads) throws Exception {
+        for (Payment payment : payments) {
+            target.put(payment.getId(), payment);
+        }
+        int operations = 5_000_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long started = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for (int i = 0; i < operations; i++) {
+                        int index = random.nextInt(payments.length);
+                        int operation = random.nextInt(10);
+                        if (operation < 8) {
+                            target.get(index + 1L);
+                        } else if (operation < 9) {
+                            target.complete(index + 1L);
+                        } else {
+                            target.put(index + 1L, payments[index]);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long nanos = System.nanoTime() - started;
+            System.out.printf("%s, %d threads, %d CPUs: %.1f Mops/s%n", mode, threads,
+                    Runtime.getRuntime().availableProcessors(), (double) threads * operations / (nanos / 1e3));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private interface Adapter {
+
+        void put(long id, Payment payment);
+
+        Payment get(long id);
+
+        void complete(long id);
+    }
+
+    private static final class MapAdapter implements Adapter {
+
+        private final Map<Long, Payment> map;
+
+        MapAdapter(Map<Long, Payment> map) {
+            this.map = map;
+        }
+
+        public void put(long id, Payment payment) {
+            map.put(id, payment);
+        }
+
+        public Payment get(long id) {
+            return map.get(id);
+        }
+
+        public void complete(long id) {
+            map.computeIfPresent(id, (key, payment) -> {
+                payment.setStatus(PaymentStatus.COMPLETED);
+                return payment;
+            });
+        }
+    }
+
+    private static final class StoreAdapter implements Adapter {
+
+        private final PaymentStore store;
+
+        StoreAdapter(PaymentStore store) {
+            this.store = store;
+        }
+
+        public void put(long id, Payment payment) {
+            store.put(id, payment);
+        }
+
+        public Payment get(long id) {
+            return store.get(id);
+        }
+
+        public void complete(long id) {
+            store.update(id, payment -> {
+                payment.setStatus(PaymentStatus.COMPLETED);
+                return true;
+            });
+        }
+    }
+}
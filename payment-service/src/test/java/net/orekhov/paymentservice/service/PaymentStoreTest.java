@@ -0,0 +1,304 @@
+package net.orekhov.paymentservice.service;
+
+import net.orekhov.paymentservice.model.Payment;
+import net.orekhov.paymentservice.model.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentStoreTest {
+
+    // Параметры PaymentStore: 64 сегмента по старшим битам хэша, начальная таблица сегмента на 1024 ячейки
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    @Test
+    void putReplacesAndRemoveReturnsPrevious() {
+        PaymentStore store = new PaymentStore();
+        Payment first = payment(1, 10.0);
+        Payment second = payment(1, 20.0);
+
+        assertNull(store.put(1, first));
+        assertSame(first, store.put(1, second));
+        assertSame(second, store.get(1));
+        assertEquals(1, store.size());
+
+        assertSame(second, store.remove(1));
+        assertNull(store.get(1));
+        assertNull(store.remove(1));
+        assertEquals(0, store.size());
+        assertThrows(IllegalArgumentException.class, () -> store.put(0, first));
+    }
+
+    @Test
+    void removeShiftsProbeChainBackAcrossTableEnd() {
+        // Три ключа с домашней ячейкой в последней ячейке таблицы и один с домашней ячейкой 0 —
+        // все в одном сегменте, поэтому цепочка пробирования переходит через конец таблицы
+        int segment = 5;
+        List<Long> atEnd = keysWithHome(segment, INITIAL_CAPACITY - 1, 3);
+        long atStart = keysWithHome(segment, 0, 1).get(0);
+        List<Long> keys = new ArrayList<>(atEnd);
+        keys.add(atStart);
+
+        PaymentStore store = new PaymentStore();
+        for (long key : keys) {
+            store.put(key, payment(key, key));
+        }
+
+        // Удаление каждого ключа по очереди: остальные должны оставаться достижимыми
+        for (int removed = 0; removed < keys.size(); removed++) {
+            long key = keys.get(removed);
+            assertEquals(key, store.remove(key).getId());
+            assertNull(store.get(key));
+            for (int i = removed + 1; i < keys.size(); i++) {
+                assertNotNull(store.get(keys.get(i)), "key " + keys.get(i) + " lost after removing " + key);
+            }
+        }
+        assertEquals(0, store.size());
+
+        // Удаление из середины цепочки: ключ с домашней ячейкой 0 не должен сдвинуться за свою домашнюю ячейку
+        for (long key : keys) {
+            store.put(key, payment(key, key));
+        }
+        store.remove(atEnd.get(1));
+        store.put(atEnd.get(1), payment(atEnd.get(1), 1));
+        store.remove(atEnd.get(0));
+        for (long key : keys.subList(1, keys.size())) {
+            assertEquals(key, store.get(key).getId());
+        }
+    }
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        PaymentStore store = new PaymentStore();
+        Map<Long, Payment> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(42);
+
+        // Узкий диапазон ключей: много коллизий, расширения таблиц и удалений со сдвигом
+        for (int i = 0; i < 500_000; i++) {
+            long key = random.nextInt(200_000) + 1;
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(key), store.remove(key));
+            } else {
+                Payment payment = payment(key, i);
+                assertSame(expected.put(key, payment), store.put(key, payment));
+            }
+        }
+
+        assertEquals(expected.size(), store.size());
+        for (long key = 1; key <= 200_000; key++) {
+            assertSame(expected.get(key), store.get(key));
+        }
+        Map<Long, Payment> visited = new HashMap<>();
+        store.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void putAllIfAbsentKeepsExistingPayments() {
+        PaymentStore store = new PaymentStore();
+        Payment existing = payment(7, 1.0);
+        store.put(7, existing);
+
+        long[] ids = {5, 7, 9, 5};
+        Payment[] payments = {payment(5, 2.0), payment(7, 3.0), payment(9, 4.0), payment(5, 5.0)};
+        boolean[] inserted = store.putAllIfAbsent(ids, payments, ids.length);
+
+        assertArrayEquals(new boolean[]{true, false, true, false}, inserted);
+        assertSame(payments[0], store.get(5));
+        assertSame(existing, store.get(7));
+        assertSame(payments[2], store.get(9));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void changeIsNotAppliedWhenListenerFails() {
+        PaymentStore store = new PaymentStore();
+        Payment existing = payment(7, 1.0);
+        store.put(7, existing);
+        AtomicBoolean failing = new AtomicBoolean(true);
+        List<Long> journaled = new ArrayList<>();
+        store.setMutationListener(new PaymentStore.MutationListener() {
+            @Override
+            public void onPut(long id, Payment payment) {
+                journal(id);
+            }
+
+            @Override
+            public void onUpdate(long id, Payment payment) {
+                journal(id);
+            }
+
+            @Override
+            public void onRemove(long id) {
+                journal(id);
+            }
+
+            private void journal(long id) {
+                if (failing.get()) {
+                    throw new IllegalStateException("ledger is unavailable"); // Как ошибка записи в журнал
+                }
+                journaled.add(id);
+            }
+        });
+
+        assertThrows(IllegalStateException.class, () -> store.put(5, payment(5, 2.0)));
+        assertThrows(IllegalStateException.class, () -> store.put(7, payment(7, 3.0)));
+        assertThrows(IllegalStateException.class,
+                () -> store.putAllIfAbsent(new long[]{9}, new Payment[]{payment(9, 4.0)}, 1));
+        assertThrows(IllegalStateException.class, () -> store.update(7, payment -> {
+            payment.setStatus(PaymentStatus.COMPLETED);
+            payment.setAmount(5.0);
+            return true;
+        }));
+        assertThrows(IllegalStateException.class, () -> store.remove(7));
+
+        assertNull(store.get(5));
+        assertNull(store.get(9));
+        assertSame(existing, store.get(7));
+        assertEquals(PaymentStatus.PENDING, existing.getStatus());
+        assertEquals(1.0, existing.getAmount().doubleValue());
+        assertEquals(1, store.size());
+
+        // Уже сохранённый платеж не передаётся получателю повторно
+        failing.set(false);
+        store.putAllIfAbsent(new long[]{7, 9}, new Payment[]{payment(7, 6.0), payment(9, 4.0)}, 2);
+        assertEquals(List.of(9L), journaled);
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void optimisticReadsSeeStableKeysWhileSegmentIsRewritten() throws Exception {
+        PaymentStore store = new PaymentStore();
+        int stableCount = 10_000;
+        Payment[] stable = new Payment[stableCount];
+        for (int i = 0; i < stableCount; i++) {
+            stable[i] = payment(i + 1, i);
+            store.put(i + 1, stable[i]);
+        }
+
+        // Писатели вставляют и удаляют другие ключи тех же сегментов: ячейки стабильных ключей
+        // сдвигаются при удалении и переезжают при расширении, пока читатели ищут их без блокировки
+        AtomicBoolean running = new AtomicBoolean(true);
+        int writers = 2;
+        int readers = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                long base = 1_000_000L * (w + 1);
+                futures.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(base);
+                    for (int round = 0; round < 20; round++) {
+                        for (int i = 0; i < 50_000; i++) {
+                            store.put(base + i, payment(base + i, i));
+                        }
+                        for (int i = 0; i < 50_000; i++) {
+                            store.remove(base + random.nextInt(50_000));
+                        }
+                    }
+                }));
+            }
+            List<Future<Long>> reads = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                int seed = r;
+                reads.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    long count = 0;
+                    while (running.get()) {
+                        int i = random.nextInt(stableCount);
+                        assertSame(stable[i], store.get(i + 1));
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            running.set(false);
+            for (Future<Long> read : reads) {
+                assertTrue(read.get(10, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentUpdatesOfOnePaymentAreSerialized() throws Exception {
+        PaymentStore store = new PaymentStore();
+        store.put(1, payment(1, 0.0));
+        int threads = 4;
+        int perThread = 50_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        store.update(1, p -> {
+                            p.setAmount(p.getAmount() + 1);
+                            return true;
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * perThread, store.get(1).getAmount().doubleValue());
+    }
+
+    private static Payment payment(long id, double amount) {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setAmount(amount);
+        payment.setStatus(PaymentStatus.PENDING);
+        return payment;
+    }
+
+    /**
+     * Ключи заданного сегмента с заданной домашней ячейкой в начальной таблице сегмента.
+     */
+    private static List<Long> keysWithHome(int segment, int home, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < count; key++) {
+            long hash = hash(key);
+            if ((int) (hash >>> (64 - SEGMENT_BITS)) == segment && ((int) hash & (INITIAL_CAPACITY - 1)) == home) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Та же функция перемешивания, что в PaymentStore (финализатор murmur3).
+     */
+    private static long hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
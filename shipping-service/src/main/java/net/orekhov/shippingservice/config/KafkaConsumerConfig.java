@@ -1,20 +1,34 @@
 package net.orekhov.shippingservice.config;
 
+import net.orekhov.shippingservice.event.DomainEvent;
+import net.orekhov.shippingservice.event.EventDeserializer;
+import net.orekhov.shippingservice.metrics.ListenerMetrics;
+import net.orekhov.shippingservice.service.ShippingService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.BatchMessageListener;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListener;
 import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,9 +41,24 @@ public class KafkaConsumerConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerConfig.class); // Логгер для KafkaConsumerConfig
 
+    @Autowired
+    private SimpleAsyncTaskExecutorBuilder taskExecutorBuilder; // Потоки потребителей; виртуальные, если включён spring.threads.virtual.enabled
+
     // Адрес Kafka брокера (замените на реальный адрес вашего Kafka сервера)
     private final String bootstrapServers = "localhost:9092";
 
+    @Value("${shipping.retry.attempts:3}")
+    private int retryAttempts; // Количество уровней retry topic
+
+    @Value("${shipping.retry.initial-delay-ms:1000}")
+    private long retryInitialDelayMs; // Задержка первого уровня повтора
+
+    @Value("${shipping.retry.multiplier:4.0}")
+    private double retryMultiplier; // Множитель задержки следующего уровня
+
+    @Value("${shipping.retry.max-delay-ms:60000}")
+    private long retryMaxDelayMs; // Максимальная задержка уровня повтора
+
     /**
      * Конфигурации для Kafka Consumer.
      * Настраиваются параметры подключения, десериализаторы и политики обработки оффсетов.
@@ -44,7 +73,8 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers); // Адрес Kafka сервера
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "shipping-service-group"); // Идентификатор группы потребителей
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class); // Десериализатор ключа
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class); // Десериализатор значения
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class); // Ошибка десериализации не останавливает партицию
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, EventDeserializer.class); // Десериализатор событий (бинарный формат и старый строковый)
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"); // Обработка оффсетов ("earliest" для всех сообщений)
 
         logger.info("Kafka Consumer configs successfully created."); // Логируем успешную настройку конфигурации
@@ -58,73 +88,176 @@ public class KafkaConsumerConfig {
      * @return ConsumerFactory для создания экземпляров Kafka Consumer.
      */
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, DomainEvent> consumerFactory() {
         logger.debug("Creating Kafka ConsumerFactory."); // Логируем создание фабрики потребителей
         return new DefaultKafkaConsumerFactory<>(consumerConfigs());
     }
 
+    /**
+     * Retry topic и dead-letter topic для темы доставки.
+     *
+     * @return Настройки неблокирующих повторов
+     */
+    @Bean(destroyMethod = "close")
+    public RetryTopics shippingRetryTopics() {
+        return new RetryTopics(bootstrapServers, "shipping-topic", retryAttempts,
+                retryInitialDelayMs, retryMultiplier, retryMaxDelayMs);
+    }
+
     /**
      * Создает контейнер для прослушивания сообщений из Kafka.
-     * Контейнер обрабатывает сообщения с определенной темы и назначает слушателя.
+     * Весь результат poll обрабатывается одной пачкой: отправки для заказов пачки создаются одной массовой
+     * записью в хранилище, смещения фиксируются после пачки. Сообщение, обработка которого завершилась ошибкой,
+     * сразу переносится в retry topic.
      *
+     * @param shippingService     Сервис, создающий отправки по событиям
+     * @param shippingRetryTopics Retry topic для ошибочных сообщений
+     * @param listenerMetrics     Метрики обработки сообщений
      * @return MessageListenerContainer для обработки сообщений.
      */
     @Bean
-    public MessageListenerContainer messageListenerContainer() {
+    public MessageListenerContainer messageListenerContainer(ShippingService shippingService,
+                                                             RetryTopics shippingRetryTopics,
+                                                             ListenerMetrics listenerMetrics) {
         logger.debug("Creating MessageListenerContainer for shipping-topic."); // Логируем создание контейнера
 
         // Настройка параметров контейнера (например, указание темы)
         ContainerProperties containerProps = new ContainerProperties("shipping-topic"); // Укажите тему Kafka
 
         // Установка слушателя сообщений
-        containerProps.setMessageListener(new ShippingMessageListener());
+        containerProps.setMessageListener(new ShipmentBatchListener(shippingService));
+        containerProps.setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("shipping-consumer-").build());
 
         // Создание контейнера с фабрикой потребителей и настройками контейнера
-        ConcurrentMessageListenerContainer<String, String> container =
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
                 new ConcurrentMessageListenerContainer<>(consumerFactory(), containerProps);
 
         // Установка уровня параллелизма (количество потоков для обработки сообщений)
         container.setConcurrency(3);
+        container.setCommonErrorHandler(shippingRetryTopics.errorHandler()); // Ошибочные сообщения уходят в retry topic
+        container.setBatchInterceptor(listenerMetrics.batchInterceptor("messageListenerContainer"));
 
         logger.info("MessageListenerContainer created and concurrency set to 3."); // Логируем успешное создание контейнера
         return container;
     }
 
     /**
-     * Реализация слушателя сообщений для обработки сообщений о доставке.
+     * Создает контейнер, читающий retry topic темы доставки.
+     * При повторной ошибке сообщение переходит на следующий уровень, после последнего — в dead-letter topic.
+     *
+     * @param shippingService     Сервис, создающий отправки по событиям
+     * @param shippingRetryTopics Retry topic темы доставки
+     * @param listenerMetrics     Метрики обработки сообщений
+     * @return MessageListenerContainer для retry topic
      */
-    private static class ShippingMessageListener implements MessageListener<String, String> {
+    @Bean
+    public MessageListenerContainer shippingRetryListenerContainer(ShippingService shippingService,
+                                                                   RetryTopics shippingRetryTopics,
+                                                                   ListenerMetrics listenerMetrics) {
+        logger.debug("Creating MessageListenerContainer for shipping retry topics."); // Логируем создание контейнера
+        ContainerProperties containerProps = new ContainerProperties(
+                shippingRetryTopics.getRetryTopics().toArray(String[]::new));
+        containerProps.setGroupId("shipping-service-group-retry");
+        containerProps.setListenerTaskExecutor(taskExecutorBuilder.threadNamePrefix("shipping-retry-consumer-").build());
+        ConcurrentMessageListenerContainer<String, DomainEvent> container =
+                shippingRetryTopics.retryContainer(consumerFactory(), containerProps, new ShippingMessageListener(shippingService));
+        container.setRecordInterceptor(listenerMetrics.recordInterceptor("shippingRetryListenerContainer"));
+        return container;
+    }
 
-        private static final Logger logger = LoggerFactory.getLogger(ShippingMessageListener.class); // Логгер для ShippingMessageListener
+    /**
+     * Слушатель пачек topic доставки: создаёт отправки для всех заказов пачки одной массовой записью.
+     * Отправка создаётся не больше одной на заказ, поэтому повторно доставленные записи дубликатов не создают.
+     */
+    private static class ShipmentBatchListener implements BatchMessageListener<String, DomainEvent> {
+
+        private static final Logger logger = LoggerFactory.getLogger(ShipmentBatchListener.class); // Логгер для слушателя
+
+        private final ShippingService shippingService;
+
+        ShipmentBatchListener(ShippingService shippingService) {
+            this.shippingService = shippingService;
+        }
 
         /**
-         * Метод, который вызывается при получении сообщения.
-         * Обрабатывает сообщение и вызывает логику обработки доставки.
+         * Обработка пачки сообщений, полученных одним poll.
          *
-         * @param record Сообщение, полученное из Kafka.
+         * @param records Сообщения пачки
          */
         @Override
-        public void onMessage(org.apache.kafka.clients.consumer.ConsumerRecord<String, String> record) {
-            // Извлекаем сообщение из записи
-            String message = record.value();
+        public void onMessage(List<ConsumerRecord<String, DomainEvent>> records) {
+            List<Long> orderIds = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                ConsumerRecord<String, DomainEvent> record = records.get(i);
+                if (record.value() == null && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                    // Нераспознанная запись: обрабатываем предыдущие и передаём её обработчику ошибок
+                    createAll(records, orderIds, i);
+                    throw new BatchListenerFailedException("Undeserializable shipping record", i);
+                }
+                Long orderId = shippingService.shippableOrderId(record.value());
+                if (orderId != null) {
+                    orderIds.add(orderId);
+                }
+            }
 
-            logger.debug("Received shipping message: {}", message); // Логируем получение сообщения
+            createAll(records, orderIds, records.size());
 
-            // Логика обработки сообщения о доставке
-            processShippingMessage(message);
+            logger.debug("Processed batch of {} shipping records ({} shippable orders)", records.size(), orderIds.size());
         }
 
         /**
-         * Пример метода для обработки сообщения о доставке.
-         * В этом методе можно распарсить сообщение и инициировать процесс доставки.
-         *
-         * @param message Сообщение о доставке для обработки.
+         * Создаёт отправки пачки одной массовой записью. Если она не удалась, записи до end обрабатываются
+         * по одной, чтобы найти ошибочную запись и передать обработчику ошибок только её; отправки,
+         * уже созданные массовой записью, повторно не создаются.
          */
-        private void processShippingMessage(String message) {
-            logger.info("Processing shipping for message: {}", message); // Логируем начало обработки сообщения
+        private void createAll(List<ConsumerRecord<String, DomainEvent>> records, List<Long> orderIds, int end) {
+            if (orderIds.isEmpty()) {
+                return;
+            }
+            try {
+                shippingService.createShipmentsForOrders(orderIds);
+            } catch (Exception e) {
+                logger.warn("Batch of {} shipments failed, locating failed record", orderIds.size(), e);
+                for (int i = 0; i < end; i++) {
+                    Long orderId = shippingService.shippableOrderId(records.get(i).value());
+                    if (orderId != null) {
+                        try {
+                            shippingService.createShipmentsForOrders(List.of(orderId));
+                        } catch (Exception recordFailure) {
+                            throw new BatchListenerFailedException("Failed to create shipment", recordFailure, i);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Слушатель retry topic доставки: создаёт отправку по одному сообщению.
+     */
+    private static class ShippingMessageListener implements MessageListener<String, DomainEvent> {
+
+        private static final Logger logger = LoggerFactory.getLogger(ShippingMessageListener.class); // Логгер для ShippingMessageListener
+
+        private final ShippingService shippingService;
 
-            // Логика для обработки сообщения (например, создание заказа на доставку)
-            // Можно добавить дополнительные шаги логирования здесь для отслеживания ошибок и прогресса
+        ShippingMessageListener(ShippingService shippingService) {
+            this.shippingService = shippingService;
+        }
+
+        /**
+         * Метод, который вызывается при получении сообщения.
+         * Исключение обработки передаётся контейнеру, который переносит сообщение на следующий уровень.
+         *
+         * @param record Сообщение, полученное из Kafka.
+         */
+        @Override
+        public void onMessage(ConsumerRecord<String, DomainEvent> record) {
+            logger.debug("Received shipping message: {}", record.value()); // Логируем получение сообщения
+            Long orderId = shippingService.shippableOrderId(record.value());
+            if (orderId != null) {
+                shippingService.createShipmentsForOrders(List.of(orderId));
+            }
         }
     }
 }
@@ -1,15 +1,21 @@
 package net.orekhov.shippingservice.controller;
 
 import net.orekhov.shippingservice.model.Shipment;
+import net.orekhov.shippingservice.model.ShipmentPage;
 import net.orekhov.shippingservice.model.ShippingOrder;
 import net.orekhov.shippingservice.service.ShippingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -70,6 +76,86 @@ public class ShippingController {
                 });
     }
 
+    /**
+     * Получает отправки заказа по его ID.
+     *
+     * @param orderId ID заказа.
+     * @return Ответ со списком отправок заказа или статусом 404 NOT FOUND, если отправок нет.
+     */
+    @GetMapping("/by-order/{orderId}")
+    public ResponseEntity<List<Shipment>> getShipmentsByOrderId(@PathVariable Long orderId) {
+        logger.info("Received request to get shipments for order ID: {}", orderId); // Логируем получение запроса
+
+        List<Shipment> shipments = shippingService.getShipmentsByOrderId(orderId);
+
+        return shipments.isEmpty() ? ResponseEntity.status(HttpStatus.NOT_FOUND).build()
+                : ResponseEntity.ok(shipments);
+    }
+
+    /**
+     * Получает отправку по номеру отслеживания.
+     *
+     * @param trackingNumber Номер отслеживания.
+     * @return Ответ с деталями отправки или статусом 404 NOT FOUND, если отправка не найдена.
+     */
+    @GetMapping("/by-tracking/{trackingNumber}")
+    public ResponseEntity<Shipment> getShipmentByTrackingNumber(@PathVariable String trackingNumber) {
+        logger.info("Received request to get shipment for tracking number: {}", trackingNumber); // Логируем получение запроса
+
+        Optional<Shipment> shipment = shippingService.getShipmentByTrackingNumber(trackingNumber);
+
+        return shipment.map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(null));
+    }
+
+    /**
+     * Получает отправки, находящиеся в статусе дольше заданного количества дней с даты отправки.
+     *
+     * @param status        Статус отправки (по умолчанию Pending).
+     * @param olderThanDays Количество дней с даты отправки.
+     * @param cursor        Курсор следующей страницы из предыдущего ответа.
+     * @param limit         Размер страницы.
+     * @return Страница отправок или статус 400 BAD REQUEST при некорректных параметрах.
+     */
+    @GetMapping("/overdue")
+    public ResponseEntity<ShipmentPage> getOverdueShipments(@RequestParam(defaultValue = "Pending") String status,
+                                                            @RequestParam int olderThanDays,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(defaultValue = "100") int limit) {
+        logger.info("Received request to get shipments in status {} older than {} days", status, olderThanDays); // Логируем получение запроса
+
+        try {
+            return ResponseEntity.ok(shippingService.getOverdueShipments(status, olderThanDays, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid overdue shipments request: {}", e.getMessage()); // Логируем некорректный запрос
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Получает отправки, доставленные в заданный период.
+     *
+     * @param from   Первый день периода (yyyy-MM-dd).
+     * @param to     Последний день периода (yyyy-MM-dd).
+     * @param cursor Курсор следующей страницы из предыдущего ответа.
+     * @param limit  Размер страницы.
+     * @return Страница отправок или статус 400 BAD REQUEST при некорректных параметрах.
+     */
+    @GetMapping("/delivered")
+    public ResponseEntity<ShipmentPage> getDeliveredShipments(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                              @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(defaultValue = "100") int limit) {
+        logger.info("Received request to get shipments delivered from {} to {}", from, to); // Логируем получение запроса
+
+        try {
+            return ResponseEntity.ok(shippingService.getDeliveredShipments(from, to, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid delivered shipments request: {}", e.getMessage()); // Логируем некорректный запрос
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Получает статус отправки по ее ID.
      *
@@ -89,6 +175,36 @@ public class ShippingController {
                 });
     }
 
+    /**
+     * Поток изменений статуса отправки (Server-Sent Events) вместо периодического опроса статуса.
+     * Первым событием приходит текущее состояние отправки.
+     *
+     * @param shipmentId ID отправки.
+     * @return Поток событий "status" или статус 404 NOT FOUND, если отправка не найдена.
+     */
+    @GetMapping(value = "/{shipmentId}/status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamShipmentStatus(@PathVariable Long shipmentId) {
+        logger.info("Received request to stream status of shipment ID: {}", shipmentId); // Логируем получение запроса
+
+        return shippingService.subscribeToShipment(shipmentId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    /**
+     * Поток изменений статуса всех отправок заказа (Server-Sent Events), включая отправки,
+     * созданные после подписки. Первыми событиями приходят текущие состояния существующих отправок.
+     *
+     * @param orderId ID заказа.
+     * @return Поток событий "status".
+     */
+    @GetMapping(value = "/by-order/{orderId}/status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOrderShipmentStatus(@PathVariable Long orderId) {
+        logger.info("Received request to stream shipment status of order ID: {}", orderId); // Логируем получение запроса
+
+        return shippingService.subscribeToOrder(orderId);
+    }
+
     /**
      * Обновляет статус отправки по ее ID.
      *
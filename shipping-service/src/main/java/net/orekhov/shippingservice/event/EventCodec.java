@@ -0,0 +1,293 @@
+package net.orekhov.shippingservice.event;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Компактный бинарный кодек событий.
+ *
+ * Формат сообщения: [MAGIC][версия схемы][код типа][тело]. Целые числа записываются как zigzag varint,
+ * дробные — как 8 байт IEEE 754, строки — как varint (длина + 1) и байты UTF-8 (0 означает null).
+ * Новые поля добавляются только в конец тела, поэтому старый код читает известные ему поля
+ * и игнорирует остаток, а новый код читает старые сообщения до конца буфера.
+ *
+ * Сообщения, которые не начинаются с MAGIC, считаются записанными в старом строковом формате
+ * ("OrderID: ..., Product: ...") и разбираются для совместимости на время миграции.
+ */
+public final class EventCodec {
+
+    public static final byte MAGIC = (byte) 0xFE; // Байт 0xFE не встречается в UTF-8, поэтому не спутать со старым форматом
+    public static final byte VERSION = 1; // Текущая версия схемы
+
+    private static final String LEGACY_ORDER_PREFIX = "OrderID: ";
+    private static final String[] LEGACY_ORDER_LABELS = {", Product: ", ", Quantity: ", ", Price: ", ", Status: "};
+
+    private EventCodec() {
+    }
+
+    /**
+     * Закодировать событие в бинарный формат.
+     *
+     * @param event Событие для кодирования
+     * @return Байтовое представление события
+     */
+    public static byte[] encode(DomainEvent event) {
+        Writer out = new Writer(64);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(event.getType().getCode());
+
+        switch (event.getType()) {
+            case ORDER -> {
+                OrderEvent order = (OrderEvent) event;
+                out.writeString(order.getOrderId());
+                out.writeString(order.getCustomerId());
+                out.writeString(order.getProduct());
+                out.writeVarLong(order.getQuantity());
+                out.writeDouble(order.getPrice());
+                out.writeString(order.getStatus());
+            }
+            case PAYMENT -> {
+                PaymentEvent payment = (PaymentEvent) event;
+                out.writeVarLong(payment.getPaymentId());
+                out.writeString(payment.getOrderId());
+                out.writeString(payment.getCustomerId());
+                out.writeDouble(payment.getAmount());
+                out.writeString(payment.getStatus());
+            }
+            case SHIPMENT -> {
+                ShipmentEvent shipment = (ShipmentEvent) event;
+                out.writeVarLong(shipment.getShipmentId());
+                out.writeString(shipment.getOrderId());
+                out.writeString(shipment.getTrackingNumber());
+                out.writeString(shipment.getShippingMethod());
+                out.writeString(shipment.getStatus());
+                out.writeDate(shipment.getShippingDate());
+                out.writeDate(shipment.getDeliveryDate());
+            }
+            case NOTIFICATION -> {
+                NotificationEvent notification = (NotificationEvent) event;
+                out.writeString(notification.getId());
+                out.writeString(notification.getRecipient());
+                out.writeString(notification.getMessage());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Декодировать событие из бинарного формата или из старого строкового формата.
+     *
+     * @param data Байтовое представление события
+     * @return Декодированное событие или null, если data равно null
+     * @throws IllegalArgumentException если сообщение повреждено или имеет неизвестный тип
+     */
+    public static DomainEvent decode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.length == 0 || data[0] != MAGIC) {
+            return decodeLegacy(new String(data, StandardCharsets.UTF_8));
+        }
+
+        Reader in = new Reader(data);
+        in.readByte(); // MAGIC
+        byte version = in.readByte();
+        if (version < 1) {
+            throw new IllegalArgumentException("Unsupported event schema version: " + version);
+        }
+        EventType type = EventType.fromCode(in.readByte());
+
+        return switch (type) {
+            case ORDER -> new OrderEvent(
+                    in.readString(),
+                    in.readString(),
+                    in.readString(),
+                    (int) in.readVarLong(),
+                    in.readDouble(),
+                    in.readString());
+            case PAYMENT -> new PaymentEvent(
+                    in.readVarLong(),
+                    in.readString(),
+                    in.readString(),
+                    in.readDouble(),
+                    in.readString());
+            case SHIPMENT -> new ShipmentEvent(
+                    in.readVarLong(),
+                    in.readString(),
+                    in.readString(),
+                    in.readString(),
+                    in.readString(),
+                    in.readDate(),
+                    in.readDate());
+            case NOTIFICATION -> new NotificationEvent(
+                    in.readString(),
+                    in.readString(),
+                    in.readString());
+        };
+    }
+
+    /**
+     * Разбор сообщения в старом строковом формате.
+     * Строки вида "OrderID: 1, Product: ..., Quantity: ..., Price: ..., Status: ..." превращаются в {@link OrderEvent},
+     * любой другой текст — в {@link NotificationEvent} с этим текстом в качестве сообщения.
+     *
+     * @param text Текст сообщения
+     * @return Событие, соответствующее тексту
+     */
+    static DomainEvent decodeLegacy(String text) {
+        if (!text.startsWith(LEGACY_ORDER_PREFIX)) {
+            return new NotificationEvent(null, null, text);
+        }
+
+        String[] values = new String[LEGACY_ORDER_LABELS.length + 1];
+        int start = LEGACY_ORDER_PREFIX.length();
+        for (int i = 0; i < LEGACY_ORDER_LABELS.length; i++) {
+            int end = text.indexOf(LEGACY_ORDER_LABELS[i], start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Malformed legacy order message: " + text);
+            }
+            values[i] = text.substring(start, end);
+            start = end + LEGACY_ORDER_LABELS[i].length();
+        }
+        values[LEGACY_ORDER_LABELS.length] = text.substring(start);
+
+        try {
+            return new OrderEvent(
+                    legacyValue(values[0]),
+                    null, // Старый формат не содержал идентификатор клиента
+                    legacyValue(values[1]),
+                    Integer.parseInt(values[2].trim()),
+                    Double.parseDouble(values[3].trim()),
+                    legacyValue(values[4]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed legacy order message: " + text, e);
+        }
+    }
+
+    private static String legacyValue(String value) {
+        return "null".equals(value) ? null : value;
+    }
+
+    /**
+     * Буфер для записи события, расширяющийся по мере необходимости.
+     */
+    private static final class Writer {
+
+        private byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            buffer[position++] = value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        void writeDouble(double value) {
+            ensureCapacity(8);
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (bits >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeDate(LocalDate value) {
+            // 0 означает отсутствие даты, иначе записывается номер дня от эпохи + 1
+            writeVarLong(value == null ? 0 : value.toEpochDay() + 1);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    /**
+     * Курсор для чтения события из массива байт.
+     */
+    private static final class Reader {
+
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Unexpected end of event data");
+            }
+            return buffer[position++];
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (result >>> 1) ^ -(result & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in event data");
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (readByte() & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            long length = readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.length - position) {
+                throw new IllegalArgumentException("String length exceeds event data");
+            }
+            String value = new String(buffer, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+
+        LocalDate readDate() {
+            long value = readVarLong();
+            return value == 0 ? null : LocalDate.ofEpochDay(value - 1);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package net.orekhov.shippingservice.event;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Kafka сериализатор событий в компактный бинарный формат {@link EventCodec}.
+ */
+public class EventSerializer implements Serializer<DomainEvent> {
+
+    /**
+     * Сериализует событие в массив байт.
+     *
+     * @param topic Название topic
+     * @param event Событие для сериализации
+     * @return Байтовое представление события или null, если событие равно null
+     */
+    @Override
+    public byte[] serialize(String topic, DomainEvent event) {
+        return event == null ? null : EventCodec.encode(event);
+    }
+}
@@ -0,0 +1,44 @@
+package net.orekhov.shippingservice.event;
+
+/**
+ * Тип события, передаваемого через Kafka.
+ * Код типа записывается в заголовок бинарного сообщения и определяет, как читать тело события.
+ */
+public enum EventType {
+
+    ORDER((byte) 1), // Событие заказа
+    PAYMENT((byte) 2), // Событие платежа
+    SHIPMENT((byte) 3), // Событие отправки
+    NOTIFICATION((byte) 4); // Событие уведомления
+
+    private final byte code; // Код типа в бинарном формате
+
+    EventType(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * Получить код типа события в бинарном формате.
+     *
+     * @return Код типа события
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Найти тип события по его коду.
+     *
+     * @param code Код типа события
+     * @return Тип события
+     * @throws IllegalArgumentException если код неизвестен
+     */
+    public static EventType fromCode(byte code) {
+        for (EventType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown event type code: " + code);
+    }
+}
@@ -0,0 +1,58 @@
+package net.orekhov.shippingservice.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей с фиксированными границами корзин (в секундах) в формате Prometheus.
+ * Запись не блокирует: счётчики корзин — сумматоры, распределяющие одновременные записи по ячейкам.
+ */
+public class Histogram {
+
+    private static final double[] BOUNDS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1]; // Последняя корзина — больше всех границ
+    private final DoubleAdder sum = new DoubleAdder(); // Сумма значений
+
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Учитывает значение.
+     *
+     * @param seconds Длительность в секундах
+     */
+    public void observe(double seconds) {
+        int i = 0;
+        while (i < BOUNDS.length && seconds > BOUNDS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sum.add(seconds);
+    }
+
+    /**
+     * Записывает строки гистограммы: накопительные корзины, сумму и количество.
+     *
+     * @param out    Буфер вывода
+     * @param name   Имя метрики
+     * @param labels Метки без фигурных скобок (например, container="x")
+     */
+    public void writeTo(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(BOUNDS[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += buckets[BOUNDS.length].sum();
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(sum.sum()).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,26 @@
+package net.orekhov.shippingservice.model;
+
+import java.util.List;
+
+/**
+ * Страница результата запроса отправок по диапазону дат.
+ * Следующая страница запрашивается с курсором nextCursor; null означает, что отправок больше нет.
+ */
+public class ShipmentPage {
+
+    private final List<Shipment> items; // Отправки страницы в порядке даты и идентификатора
+    private final String nextCursor; // Курсор следующей страницы или null
+
+    public ShipmentPage(List<Shipment> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Shipment> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,62 @@
+package net.orekhov.shippingservice.model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Состояние отправки в момент изменения статуса, передаваемое подписчикам потока статусов.
+ */
+public class ShipmentStatusChange {
+
+    private final Long shipmentId; // Идентификатор отправки
+    private final Long orderId; // Идентификатор заказа
+    private final String trackingNumber; // Номер отслеживания
+    private final String status; // Новый статус
+    private final LocalDate deliveryDate; // Дата доставки (для статуса Delivered)
+    private final Instant changedAt; // Время изменения
+
+    public ShipmentStatusChange(Long shipmentId, Long orderId, String trackingNumber, String status,
+                                LocalDate deliveryDate, Instant changedAt) {
+        this.shipmentId = shipmentId;
+        this.orderId = orderId;
+        this.trackingNumber = trackingNumber;
+        this.status = status;
+        this.deliveryDate = deliveryDate;
+        this.changedAt = changedAt;
+    }
+
+    /**
+     * Снимок текущего состояния отправки.
+     *
+     * @param shipment Отправка
+     * @return Состояние отправки на текущий момент
+     */
+    public static ShipmentStatusChange of(Shipment shipment) {
+        return new ShipmentStatusChange(shipment.getShipmentId(), shipment.getOrderId(), shipment.getTrackingNumber(),
+                shipment.getStatus(), shipment.getDeliveryDate(), Instant.now());
+    }
+
+    public Long getShipmentId() {
+        return shipmentId;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public String getTrackingNumber() {
+        return trackingNumber;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public LocalDate getDeliveryDate() {
+        return deliveryDate;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
@@ -0,0 +1,330 @@
+package net.orekhov.shippingservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import net.orekhov.shippingservice.model.Shipment;
+import net.orekhov.shippingservice.model.ShipmentStatusChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рассылка изменений статуса отправок подписчикам через Server-Sent Events.
+ *
+ * Подписаться можно на одну отправку или на все отправки заказа. Изменение сериализуется в JSON один раз
+ * и раздаётся всем подписчикам отправки и её заказа; без подписчиков публикация — два обращения к хеш-таблицам.
+ * Отправку в сокеты выполняет пул потоков, а поток, изменивший статус, только ставит событие в очереди подписчиков.
+ *
+ * У каждого подписчика своя очередь из shipping.status-stream.max-pending событий, и в каждый момент его очередь
+ * разбирает не больше одного потока пула. Поток занят подписчиком, только пока его очередь не пуста; пул держит
+ * shipping.status-stream.delivery-threads потоков и создаёт дополнительные, если все заняты, поэтому клиент,
+ * сокет которого не принимает данные, задерживает только собственные события.
+ *
+ * Медленный клиент отключается, когда его очередь переполнена или одна отправка длится дольше
+ * shipping.status-stream.send-timeout-ms: память на него ограничена очередью, а клиент при переподключении сразу
+ * получает текущее состояние отправок. Поток, зависший в записи в сокет, прерывается и освобождается,
+ * когда контейнер завершит запрос.
+ */
+@Component
+public class ShipmentStatusBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShipmentStatusBroadcaster.class); // Логгер для рассылки
+
+    private final ObjectMapper objectMapper;
+    private final int maxPending; // Предел очереди событий подписчика
+    private final long timeoutMillis; // Время жизни подписки; клиент переподключается после него
+    private final long sendTimeoutNanos; // Предел длительности одной отправки события клиенту
+    private final ExecutorService delivery; // Потоки отправки событий в сокеты
+    private final ScheduledExecutorService watchdog; // Проверка зависших отправок
+    private final Map<Long, Set<Subscriber>> byShipment = new ConcurrentHashMap<>(); // Подписчики отправки
+    private final Map<Long, Set<Subscriber>> byOrder = new ConcurrentHashMap<>(); // Подписчики заказа
+    private final AtomicInteger subscriberCount = new AtomicInteger(); // Количество открытых подписок
+
+    /**
+     * Конструктор с настройками потока статусов.
+     *
+     * @param objectMapper    Сериализатор событий
+     * @param maxPending      Предел очереди событий одного подписчика
+     * @param timeoutMillis   Время жизни подписки (мс)
+     * @param deliveryThreads Количество постоянных потоков отправки событий
+     * @param sendTimeoutMillis Предел длительности одной отправки события клиенту (мс)
+     */
+    public ShipmentStatusBroadcaster(ObjectMapper objectMapper,
+                                     @Value("${shipping.status-stream.max-pending:32}") int maxPending,
+                                     @Value("${shipping.status-stream.timeout-ms:1800000}") long timeoutMillis,
+                                     @Value("${shipping.status-stream.delivery-threads:4}") int deliveryThreads,
+                                     @Value("${shipping.status-stream.send-timeout-ms:10000}") long sendTimeoutMillis) {
+        if (maxPending <= 0 || deliveryThreads <= 0 || sendTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "shipping.status-stream.max-pending, delivery-threads and send-timeout-ms must be positive");
+        }
+        this.objectMapper = objectMapper;
+        this.maxPending = maxPending;
+        this.timeoutMillis = timeoutMillis;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.delivery = new ThreadPoolExecutor(deliveryThreads, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "shipment-status-stream-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shipment-status-stream-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(sendTimeoutMillis / 2, 1);
+        watchdog.scheduleWithFixedDelay(this::evictStalledSubscribers, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Подписка на изменения статуса одной отправки. Первым событием приходит её текущее состояние.
+     *
+     * @param shipment Отправка
+     * @return Поток событий для ответа на запрос
+     */
+    public SseEmitter subscribeToShipment(Shipment shipment) {
+        Subscriber subscriber = register(byShipment, shipment.getShipmentId());
+        subscriber.offer(serialize(ShipmentStatusChange.of(shipment)));
+        return subscriber.emitter;
+    }
+
+    /**
+     * Подписка на изменения статуса всех отправок заказа, в том числе созданных после подписки.
+     * Первыми событиями приходят текущие состояния существующих отправок.
+     *
+     * @param orderId   Идентификатор заказа
+     * @param shipments Существующие отправки заказа
+     * @return Поток событий для ответа на запрос
+     */
+    public SseEmitter subscribeToOrder(Long orderId, List<Shipment> shipments) {
+        Subscriber subscriber = register(byOrder, orderId);
+        for (Shipment shipment : shipments) {
+            subscriber.offer(serialize(ShipmentStatusChange.of(shipment)));
+        }
+        return subscriber.emitter;
+    }
+
+    /**
+     * Разослать текущее состояние отправки подписчикам отправки и её заказа.
+     *
+     * @param shipment Отправка, статус которой изменился
+     */
+    public void publish(Shipment shipment) {
+        Set<Subscriber> shipmentSubscribers = byShipment.get(shipment.getShipmentId());
+        Set<Subscriber> orderSubscribers = shipment.getOrderId() != null ? byOrder.get(shipment.getOrderId()) : null;
+        if (isEmpty(shipmentSubscribers) && isEmpty(orderSubscribers)) {
+            return;
+        }
+        String event = serialize(ShipmentStatusChange.of(shipment));
+        if (shipmentSubscribers != null) {
+            shipmentSubscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+        if (orderSubscribers != null) {
+            orderSubscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    /**
+     * Количество открытых подписок.
+     *
+     * @return Количество подписчиков
+     */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Закрыть все подписки и остановить потоки отправки.
+     */
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        byShipment.values().forEach(subscribers -> subscribers.forEach(Subscriber::close));
+        byOrder.values().forEach(subscribers -> subscribers.forEach(Subscriber::close));
+        delivery.shutdown();
+        try {
+            if (!delivery.awaitTermination(5, TimeUnit.SECONDS)) {
+                delivery.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Subscriber register(Map<Long, Set<Subscriber>> index, Long key) {
+        SseEmitter emitter = createEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, () -> unregister(index, key));
+        // Добавление под блокировкой ключа: unregister не может удалить набор между его получением и добавлением
+        index.compute(key, (k, subscribers) -> {
+            Set<Subscriber> target = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            target.add(subscriber);
+            return target;
+        });
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(subscriber::unregister);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.unregister());
+        return subscriber;
+    }
+
+    private void unregister(Map<Long, Set<Subscriber>> index, Long key) {
+        index.computeIfPresent(key, (k, subscribers) -> {
+            subscribers.removeIf(Subscriber::isClosed);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * Поток событий для нового подписчика.
+     *
+     * @param timeoutMillis Время жизни подписки (мс)
+     * @return Поток событий
+     */
+    SseEmitter createEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    /**
+     * Отключает подписчиков, отправка события которым длится дольше sendTimeoutNanos.
+     */
+    private void evictStalledSubscribers() {
+        long now = System.nanoTime();
+        byShipment.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.evictIfStalled(now)));
+        byOrder.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.evictIfStalled(now)));
+    }
+
+    private String serialize(ShipmentStatusChange change) {
+        try {
+            return objectMapper.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize shipment status change", e);
+        }
+    }
+
+    private static boolean isEmpty(Set<Subscriber> subscribers) {
+        return subscribers == null || subscribers.isEmpty();
+    }
+
+    /**
+     * Подписчик: поток событий клиента и его ограниченная очередь.
+     */
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Runnable removal; // Удаление из индекса подписчиков
+        private final ArrayBlockingQueue<String> pending = new ArrayBlockingQueue<>(maxPending); // События, ещё не отправленные клиенту
+        private final AtomicBoolean draining = new AtomicBoolean(); // Очередь разбирает поток пула
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Thread sender; // Поток, выполняющий отправку, или null
+        private volatile long sendStartedNanos; // Начало текущей отправки
+
+        Subscriber(SseEmitter emitter, Runnable removal) {
+            this.emitter = emitter;
+            this.removal = removal;
+        }
+
+        void offer(String event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!pending.offer(event)) {
+                logger.debug("Status stream subscriber is too slow, disconnecting"); // Клиент переподключится
+                close();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    delivery.execute(this::drain);
+                } catch (RuntimeException e) { // Пул остановлен
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                String event;
+                while (!closed.get() && (event = pending.poll()) != null) {
+                    sendStartedNanos = System.nanoTime();
+                    sender = Thread.currentThread();
+                    try {
+                        emitter.send(SseEmitter.event().name("status").data(event, MediaType.APPLICATION_JSON));
+                    } finally {
+                        synchronized (this) {
+                            sender = null;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.debug("Status stream subscriber disconnected: {}", e.getMessage()); // Клиент закрыл соединение
+                close();
+            } finally {
+                Thread.interrupted(); // Прерывание от evictIfStalled не должно достаться следующей задаче пула
+                draining.set(false);
+            }
+            if (!closed.get() && !pending.isEmpty()) {
+                scheduleDrain(); // Событие пришло после выхода из цикла
+            }
+        }
+
+        void evictIfStalled(long now) {
+            Thread thread = sender;
+            if (thread != null && now - sendStartedNanos > sendTimeoutNanos) {
+                logger.debug("Status stream send timed out, disconnecting"); // Клиент не читает из сокета
+                close();
+                synchronized (this) {
+                    if (sender == thread) {
+                        thread.interrupt(); // Прерываемая запись в сокет завершится сразу
+                    }
+                }
+            }
+        }
+
+        void close() {
+            if (!closed.get()) {
+                try {
+                    emitter.complete();
+                } catch (RuntimeException e) {
+                    logger.debug("Failed to complete status stream: {}", e.getMessage());
+                }
+                unregister();
+            }
+        }
+
+        void unregister() {
+            if (closed.compareAndSet(false, true)) {
+                pending.clear();
+                subscriberCount.decrementAndGet();
+                removal.run();
+            }
+        }
+
+        boolean isClosed() {
+            return closed.get();
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package net.orekhov.shippingservice.service;
+
+import net.orekhov.shippingservice.model.Shipment;
+import net.orekhov.shippingservice.model.ShipmentPage;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Потокобезопасное хранилище отправок с вторичными индексами по orderId и номеру отслеживания.
+ *
+ * Основная таблица — shipmentId → отправка; индексы хранят только идентификаторы отправок, поэтому поиск
+ * по любому ключу — два обращения к хеш-таблицам независимо от количества отправок. Добавление и удаление
+ * отправки заказа выполняются внутри compute индекса заказов по orderId, поэтому изменения отправок одного
+ * заказа упорядочены, проверка «у заказа ещё нет отправки» и добавление атомарны, а основная таблица
+ * и индексы меняются вместе. Блокировки всегда берутся в одном порядке: заказ, затем основная таблица и номер
+ * отслеживания. Отправка сначала появляется в основной таблице, затем в индексе заказов; идентификатор
+ * из индекса, отправка которого удаляется одновременно с поиском, пропускается.
+ *
+ * У заказа может быть несколько отправок; их идентификаторы хранятся в неизменяемом массиве,
+ * который заменяется целиком при изменении. Номер отслеживания уникален.
+ *
+ * Индексы по датам — отсортированные по (дата, shipmentId) множества: дата отправки отдельно для каждого статуса
+ * и дата доставки отправок в статусе Delivered (дата доставки не сбрасывается при смене статуса, поэтому
+ * отправка, выведенная из Delivered, например возвращённая, из индекса доставленных удаляется). Запрос диапазона дат стоит O(log n + размер страницы) и не просматривает остальные отправки;
+ * курсор страницы — последний возвращённый ключ (дата, shipmentId), поэтому продолжение не зависит
+ * от добавлений и удалений между запросами. Записи индексов по датам отправки меняются только под монитором
+ * самой отправки (добавление, удаление, {@link #update}), поэтому изменение статуса или даты через update
+ * переносит отправку между индексами без потерь. Отправка, изменённая в обход update, может остаться
+ * под старым ключом; запрос пропускает такие записи, проверяя текущие статус и дату.
+ */
+@Component
+public class ShipmentStore {
+
+    private static final long[] NO_IDS = new long[0];
+    private static final String DELIVERED = "delivered"; // Статус доставленной отправки (ключ statusKey)
+
+    private final ConcurrentHashMap<Long, Shipment> shipments = new ConcurrentHashMap<>(); // Отправки по shipmentId
+    private final ConcurrentHashMap<Long, long[]> byOrderId = new ConcurrentHashMap<>(); // Отправки заказа
+    private final ConcurrentHashMap<String, Long> byTrackingNumber = new ConcurrentHashMap<>(); // Отправка по номеру отслеживания
+    private final ConcurrentHashMap<String, NavigableSet<DateKey>> byStatusAndShippingDate = new ConcurrentHashMap<>(); // Статус → отправки по дате отправки
+    private final NavigableSet<DateKey> byDeliveryDate = new ConcurrentSkipListSet<>(); // Доставленные отправки по дате доставки
+
+    /**
+     * Получить отправку по идентификатору.
+     *
+     * @param shipmentId Идентификатор отправки
+     * @return Отправка или null, если отправки нет
+     */
+    public Shipment get(Long shipmentId) {
+        return shipments.get(shipmentId);
+    }
+
+    /**
+     * Получить отправки заказа.
+     *
+     * @param orderId Идентификатор заказа
+     * @return Отправки заказа в порядке добавления (пустой список, если отправок нет)
+     */
+    public List<Shipment> findByOrderId(Long orderId) {
+        long[] ids = byOrderId.getOrDefault(orderId, NO_IDS);
+        if (ids.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Shipment> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Shipment shipment = shipments.get(id);
+            if (shipment != null) {
+                result.add(shipment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Получить отправку по номеру отслеживания.
+     *
+     * @param trackingNumber Номер отслеживания
+     * @return Отправка или null, если отправки нет
+     */
+    public Shipment findByTrackingNumber(String trackingNumber) {
+        Long id = byTrackingNumber.get(trackingNumber);
+        return id != null ? shipments.get(id) : null;
+    }
+
+    /**
+     * Добавить новую отправку и её записи в индексах.
+     *
+     * @param shipment Отправка с заполненными shipmentId и номером отслеживания
+     * @throws IllegalStateException если отправка с таким идентификатором или номером отслеживания уже есть
+     */
+    public void add(Shipment shipment) {
+        insert(shipment, false);
+    }
+
+    /**
+     * Добавить отправки одной операцией, пропуская заказы, у которых отправка уже есть
+     * (в хранилище или раньше в этом же списке).
+     *
+     * @param batch Новые отправки с заполненными shipmentId, orderId и номером отслеживания
+     * @return Добавленные отправки в порядке списка
+     * @throws IllegalStateException если отправка с таким идентификатором или номером отслеживания уже есть;
+     *                               отправки до неё остаются добавленными
+     */
+    public List<Shipment> addAllIfOrderAbsent(List<Shipment> batch) {
+        List<Shipment> added = new ArrayList<>(batch.size());
+        for (Shipment shipment : batch) {
+            if (insert(shipment, true)) {
+                added.add(shipment);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Изменить отправку и перенести её записи в индексах по датам.
+     * Изменение выполняется под монитором отправки, поэтому изменения одной отправки упорядочены.
+     *
+     * @param shipmentId Идентификатор отправки
+     * @param change     Изменение статуса или дат отправки
+     * @return Изменённая отправка или null, если отправки нет
+     */
+    public Shipment update(Long shipmentId, Consumer<Shipment> change) {
+        Shipment shipment = shipments.get(shipmentId);
+        if (shipment == null) {
+            return null;
+        }
+        synchronized (shipment) {
+            if (shipments.get(shipmentId) != shipment) {
+                return null; // Удалена, пока ждали монитор
+            }
+            unindexDates(shipment);
+            try {
+                change.accept(shipment);
+            } finally {
+                indexDates(shipment);
+            }
+        }
+        return shipment;
+    }
+
+    /**
+     * Отправки в статусе с датой отправки в диапазоне [from, to).
+     *
+     * @param status Статус отправки (без учёта регистра)
+     * @param from   Начало диапазона включительно или null
+     * @param to     Конец диапазона не включительно или null
+     * @param cursor Курсор из предыдущей страницы или null для первой страницы
+     * @param limit  Максимальное количество отправок на странице
+     * @return Отправки по возрастанию даты отправки и идентификатора
+     * @throws IllegalArgumentException если курсор некорректен
+     */
+    public ShipmentPage findByStatusAndShippingDate(String status, LocalDate from, LocalDate to, String cursor, int limit) {
+        String key = statusKey(status);
+        NavigableSet<DateKey> index = key != null ? byStatusAndShippingDate.get(key) : null;
+        if (index == null) {
+            return new ShipmentPage(List.of(), null);
+        }
+        return page(index, from, to, cursor, limit,
+                shipment -> key.equals(statusKey(shipment.getStatus())) ? shipment.getShippingDate() : null);
+    }
+
+    /**
+     * Отправки в статусе Delivered с датой доставки в диапазоне [from, to).
+     *
+     * @param from   Начало диапазона включительно или null
+     * @param to     Конец диапазона не включительно или null
+     * @param cursor Курсор из предыдущей страницы или null для первой страницы
+     * @param limit  Максимальное количество отправок на странице
+     * @return Отправки по возрастанию даты доставки и идентификатора
+     * @throws IllegalArgumentException если курсор некорректен
+     */
+    public ShipmentPage findByDeliveryDate(LocalDate from, LocalDate to, String cursor, int limit) {
+        return page(byDeliveryDate, from, to, cursor, limit,
+                shipment -> isDelivered(shipment) ? shipment.getDeliveryDate() : null);
+    }
+
+    /**
+     * Удалить отправку и её записи в индексах.
+     *
+     * @param shipmentId Идентификатор отправки
+     * @return Удалённая отправка или null, если отправки не было
+     */
+    public Shipment remove(Long shipmentId) {
+        Shipment shipment = shipments.get(shipmentId);
+        if (shipment == null) {
+            return null;
+        }
+        if (shipment.getOrderId() == null) {
+            return removePrimary(shipmentId, shipment) ? shipment : null;
+        }
+        boolean[] removed = new boolean[1];
+        byOrderId.computeIfPresent(shipment.getOrderId(), (orderId, ids) -> {
+            removed[0] = removePrimary(shipmentId, shipment);
+            return removed[0] ? without(ids, shipmentId) : ids;
+        });
+        return removed[0] ? shipment : null;
+    }
+
+    /**
+     * Количество отправок в хранилище.
+     *
+     * @return Размер основной таблицы
+     */
+    public long size() {
+        return shipments.mappingCount();
+    }
+
+    /**
+     * Добавляет отправку; если onlyIfOrderAbsent, то только когда у её заказа ещё нет отправок.
+     *
+     * @return true, если отправка добавлена
+     */
+    private boolean insert(Shipment shipment, boolean onlyIfOrderAbsent) {
+        Long orderId = shipment.getOrderId();
+        if (orderId == null) {
+            insertPrimary(shipment);
+            synchronized (shipment) {
+                indexDates(shipment);
+            }
+            return true;
+        }
+        boolean[] inserted = new boolean[1];
+        byOrderId.compute(orderId, (key, ids) -> {
+            if (onlyIfOrderAbsent && ids != null) {
+                return ids;
+            }
+            insertPrimary(shipment); // При ошибке индекс заказа не меняется
+            synchronized (shipment) {
+                indexDates(shipment);
+            }
+            inserted[0] = true;
+            return append(ids, shipment.getShipmentId());
+        });
+        return inserted[0];
+    }
+
+    private void insertPrimary(Shipment shipment) {
+        Long id = shipment.getShipmentId();
+        if (shipments.putIfAbsent(id, shipment) != null) {
+            throw new IllegalStateException("Shipment " + id + " already exists");
+        }
+        String trackingNumber = shipment.getTrackingNumber();
+        if (trackingNumber != null) {
+            Long owner = byTrackingNumber.putIfAbsent(trackingNumber, id);
+            if (owner != null) {
+                shipments.remove(id, shipment);
+                throw new IllegalStateException("Tracking number " + trackingNumber + " is already used by shipment " + owner);
+            }
+        }
+    }
+
+    private boolean removePrimary(Long shipmentId, Shipment shipment) {
+        if (!shipments.remove(shipmentId, shipment)) {
+            return false; // Уже удалена другим потоком
+        }
+        if (shipment.getTrackingNumber() != null) {
+            byTrackingNumber.remove(shipment.getTrackingNumber(), shipmentId);
+        }
+        synchronized (shipment) {
+            unindexDates(shipment);
+        }
+        return true;
+    }
+
+    /**
+     * Добавляет записи отправки в индексы по датам по её текущим статусу и датам. Вызывается под монитором отправки.
+     */
+    private void indexDates(Shipment shipment) {
+        String status = statusKey(shipment.getStatus());
+        if (status != null && shipment.getShippingDate() != null) {
+            byStatusAndShippingDate.computeIfAbsent(status, k -> new ConcurrentSkipListSet<>())
+                    .add(new DateKey(shipment.getShippingDate(), shipment.getShipmentId()));
+        }
+        if (isDelivered(shipment) && shipment.getDeliveryDate() != null) {
+            byDeliveryDate.add(new DateKey(shipment.getDeliveryDate(), shipment.getShipmentId()));
+        }
+    }
+
+    /**
+     * Удаляет записи отправки из индексов по датам по её текущим статусу и датам. Вызывается под монитором отправки.
+     */
+    private void unindexDates(Shipment shipment) {
+        String status = statusKey(shipment.getStatus());
+        if (status != null && shipment.getShippingDate() != null) {
+            NavigableSet<DateKey> index = byStatusAndShippingDate.get(status);
+            if (index != null) {
+                index.remove(new DateKey(shipment.getShippingDate(), shipment.getShipmentId()));
+            }
+        }
+        if (isDelivered(shipment) && shipment.getDeliveryDate() != null) {
+            byDeliveryDate.remove(new DateKey(shipment.getDeliveryDate(), shipment.getShipmentId()));
+        }
+    }
+
+    /**
+     * Страница диапазона [from, to) индекса после курсора. dateOf возвращает индексируемую дату отправки
+     * или null, если отправка больше не подходит индексу; такие записи пропускаются.
+     */
+    private ShipmentPage page(NavigableSet<DateKey> index, LocalDate from, LocalDate to, String cursor, int limit,
+                              Function<Shipment, LocalDate> dateOf) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        DateKey lower = from != null ? DateKey.first(from.toEpochDay()) : DateKey.first(Long.MIN_VALUE);
+        boolean lowerInclusive = true;
+        DateKey after = cursor != null ? DateKey.parse(cursor) : null;
+        if (after != null && after.compareTo(lower) >= 0) {
+            lower = after;
+            lowerInclusive = false;
+        }
+        DateKey upper = to != null ? DateKey.first(to.toEpochDay()) : DateKey.first(Long.MAX_VALUE);
+        if (lower.compareTo(upper) >= 0) {
+            return new ShipmentPage(List.of(), null);
+        }
+
+        List<Shipment> items = new ArrayList<>(Math.min(limit, 64));
+        Iterator<DateKey> keys = index.subSet(lower, lowerInclusive, upper, false).iterator();
+        while (keys.hasNext()) {
+            DateKey key = keys.next();
+            Shipment shipment = shipments.get(key.shipmentId);
+            LocalDate date = shipment != null ? dateOf.apply(shipment) : null;
+            if (date == null || date.toEpochDay() != key.epochDay) {
+                continue; // Отправка удалена или изменена одновременно с запросом
+            }
+            items.add(shipment);
+            if (items.size() == limit) {
+                return new ShipmentPage(items, keys.hasNext() ? key.toString() : null);
+            }
+        }
+        return new ShipmentPage(items, null);
+    }
+
+    private static boolean isDelivered(Shipment shipment) {
+        return DELIVERED.equals(statusKey(shipment.getStatus()));
+    }
+
+    private static String statusKey(String status) {
+        return status != null ? status.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static long[] append(long[] ids, long id) {
+        if (ids == null) {
+            return new long[]{id};
+        }
+        long[] result = Arrays.copyOf(ids, ids.length + 1);
+        result[ids.length] = id;
+        return result;
+    }
+
+    /**
+     * Массив без идентификатора; null удаляет запись индекса, если отправок заказа не осталось.
+     */
+    private static long[] without(long[] ids, long id) {
+        int index = -1;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+        return result;
+    }
+
+    /**
+     * Ключ индекса по датам: день (epochDay) и shipmentId. Строковый вид "дата.shipmentId" служит курсором страницы.
+     */
+    private static final class DateKey implements Comparable<DateKey> {
+
+        private final long epochDay;
+        private final long shipmentId;
+
+        DateKey(LocalDate date, long shipmentId) {
+            this(date.toEpochDay(), shipmentId);
+        }
+
+        private DateKey(long epochDay, long shipmentId) {
+            this.epochDay = epochDay;
+            this.shipmentId = shipmentId;
+        }
+
+        /**
+         * Ключ перед всеми отправками дня.
+         */
+        static DateKey first(long epochDay) {
+            return new DateKey(epochDay, Long.MIN_VALUE);
+        }
+
+        static DateKey parse(String cursor) {
+            int separator = cursor.lastIndexOf('.');
+            try {
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+                }
+                return new DateKey(LocalDate.parse(cursor.substring(0, separator)),
+                        Long.parseLong(cursor.substring(separator + 1)));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page cursor: " + cursor, e);
+            }
+        }
+
+        @Override
+        public int compareTo(DateKey other) {
+            int result = Long.compare(epochDay, other.epochDay);
+            return result != 0 ? result : Long.compare(shipmentId, other.shipmentId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DateKey other && epochDay == other.epochDay && shipmentId == other.shipmentId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(epochDay) * 31 + Long.hashCode(shipmentId);
+        }
+
+        @Override
+        public String toString() {
+            return LocalDate.ofEpochDay(epochDay) + "." + shipmentId;
+        }
+    }
+}
@@ -1,14 +1,26 @@
 package net.orekhov.shippingservice.service;
 
+import net.orekhov.shippingservice.event.DomainEvent;
+import net.orekhov.shippingservice.event.OrderEvent;
+import net.orekhov.shippingservice.event.PaymentEvent;
 import net.orekhov.shippingservice.model.Shipment;
+import net.orekhov.shippingservice.model.ShipmentPage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Сервис для обработки операций с отправками.
@@ -19,9 +31,41 @@ public class ShippingService {
 
     private static final Logger logger = LoggerFactory.getLogger(ShippingService.class); // Логгер для класса
 
-    // Хранилище для отправок (заменяет базу данных)
-    private final Map<Long, Shipment> shipments = new HashMap<>();
-    private long shipmentIdCounter = 1; // Счётчик для генерации уникальных идентификаторов отправок
+    private final ShipmentStore shipments; // Хранилище отправок с индексами по заказу и номеру отслеживания
+    private final TrackingNumberGenerator trackingNumbers; // Генератор уникальных номеров отслеживания
+    private final Set<String> shippableOrderStatuses; // Статусы заказа (в нижнем регистре), при которых создаётся отправка
+    private final Set<String> shippablePaymentStatuses; // Статусы платежа (в нижнем регистре), при которых создаётся отправка
+    private final String defaultShippingMethod; // Метод доставки отправок, созданных по событиям
+    private final ShipmentStatusBroadcaster statusBroadcaster; // Рассылка изменений статуса подписчикам
+    private final int maxPageSize; // Наибольший размер страницы запросов по датам
+    private final AtomicLong shipmentIdCounter = new AtomicLong(1); // Счётчик для генерации уникальных идентификаторов отправок
+
+    /**
+     * Конструктор с хранилищем отправок, генератором номеров отслеживания и настройками создания отправок по событиям.
+     *
+     * @param shipments                Хранилище отправок
+     * @param trackingNumbers          Генератор номеров отслеживания
+     * @param shippableOrderStatuses   Статусы заказа, при которых для заказа создаётся отправка
+     * @param shippablePaymentStatuses Статусы платежа, при которых для заказа создаётся отправка
+     * @param defaultShippingMethod    Метод доставки отправок, созданных по событиям
+     * @param statusBroadcaster        Рассылка изменений статуса подписчикам
+     * @param maxPageSize              Наибольший размер страницы запросов по датам
+     */
+    public ShippingService(ShipmentStore shipments,
+                           TrackingNumberGenerator trackingNumbers,
+                           @Value("${shipping.shipments.order-statuses:paid}") List<String> shippableOrderStatuses,
+                           @Value("${shipping.shipments.payment-statuses:completed}") List<String> shippablePaymentStatuses,
+                           @Value("${shipping.shipments.default-method:standard}") String defaultShippingMethod,
+                           ShipmentStatusBroadcaster statusBroadcaster,
+                           @Value("${shipping.queries.max-page-size:500}") int maxPageSize) {
+        this.shipments = shipments;
+        this.trackingNumbers = trackingNumbers;
+        this.shippableOrderStatuses = normalize(shippableOrderStatuses);
+        this.shippablePaymentStatuses = normalize(shippablePaymentStatuses);
+        this.defaultShippingMethod = defaultShippingMethod;
+        this.statusBroadcaster = statusBroadcaster;
+        this.maxPageSize = maxPageSize;
+    }
 
     /**
      * Создаёт новую отправку для заказа.
@@ -33,9 +77,9 @@ public class ShippingService {
     public Shipment createShipment(Long orderId, String shippingMethod) {
         logger.info("Creating shipment for order ID: {} with shipping method: {}", orderId, shippingMethod); // Логируем начало создания отправки
 
-        String trackingNumber = generateTrackingNumber(); // Генерация номера отслеживания
+        String trackingNumber = trackingNumbers.nextTrackingNumber(); // Генерация номера отслеживания
         Shipment shipment = new Shipment(
-                shipmentIdCounter++, // Уникальный идентификатор для отправки
+                shipmentIdCounter.getAndIncrement(), // Уникальный идентификатор для отправки
                 orderId,
                 trackingNumber,
                 shippingMethod,
@@ -43,12 +87,77 @@ public class ShippingService {
                 LocalDate.now(), // Дата отправки — сегодняшняя
                 null // Дата доставки ещё не установлена
         );
-        shipments.put(shipment.getShipmentId(), shipment); // Сохранение отправки в хранилище
+        shipments.add(shipment); // Сохранение отправки в хранилище и индексах
+        statusBroadcaster.publish(shipment); // Подписчики заказа узнают о новой отправке
 
         logger.info("Shipment created successfully with ID: {} and tracking number: {}", shipment.getShipmentId(), trackingNumber); // Логируем успешное создание
         return shipment;
     }
 
+    /**
+     * Определяет, нужна ли отправка по событию: заказ в статусе из shipping.shipments.order-statuses
+     * или платеж в статусе из shipping.shipments.payment-statuses.
+     *
+     * @param event Событие из topic доставки
+     * @return Идентификатор заказа, для которого нужна отправка, или null
+     */
+    public Long shippableOrderId(DomainEvent event) {
+        String orderId;
+        String status;
+        Set<String> statuses;
+        if (event instanceof OrderEvent order) {
+            orderId = order.getOrderId();
+            status = order.getStatus();
+            statuses = shippableOrderStatuses;
+        } else if (event instanceof PaymentEvent payment) {
+            orderId = payment.getOrderId();
+            status = payment.getStatus();
+            statuses = shippablePaymentStatuses;
+        } else {
+            return null;
+        }
+        if (status == null || !statuses.contains(status.trim().toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        try {
+            return Long.valueOf(orderId != null ? orderId.trim() : "");
+        } catch (NumberFormatException e) {
+            logger.warn("Event {} has no numeric order ID, shipment is not created", event); // Отправка хранит orderId числом
+            return null;
+        }
+    }
+
+    /**
+     * Создаёт отправки для заказов, у которых их ещё нет, одной массовой записью в хранилище.
+     * Повторы заказа в списке и заказы с уже созданной отправкой пропускаются, поэтому повторная
+     * доставка событий не создаёт дубликатов.
+     *
+     * @param orderIds Идентификаторы заказов
+     * @return Созданные отправки
+     */
+    public List<Shipment> createShipmentsForOrders(Collection<Long> orderIds) {
+        List<Shipment> batch = new ArrayList<>(orderIds.size());
+        for (Long orderId : new LinkedHashSet<>(orderIds)) {
+            if (!shipments.findByOrderId(orderId).isEmpty()) {
+                continue; // Отправка уже есть: номер и идентификатор не расходуются
+            }
+            batch.add(new Shipment(
+                    shipmentIdCounter.getAndIncrement(),
+                    orderId,
+                    trackingNumbers.nextTrackingNumber(),
+                    defaultShippingMethod,
+                    "Pending", // Начальный статус
+                    LocalDate.now(),
+                    null
+            ));
+        }
+        List<Shipment> created = batch.isEmpty() ? List.of() : shipments.addAllIfOrderAbsent(batch);
+        created.forEach(statusBroadcaster::publish);
+
+        logger.info("Created {} shipments for {} orders", created.size(), orderIds.size()); // Логируем результат пачки
+        return created;
+    }
+
     /**
      * Получает информацию о отправке по её идентификатору.
      *
@@ -66,6 +175,36 @@ public class ShippingService {
         return Optional.ofNullable(shipment); // Возвращаем Optional для предотвращения NullPointerException
     }
 
+    /**
+     * Получает отправки заказа через индекс по orderId.
+     *
+     * @param orderId Идентификатор заказа
+     * @return Отправки заказа (пустой список, если отправок нет)
+     */
+    public List<Shipment> getShipmentsByOrderId(Long orderId) {
+        logger.debug("Fetching shipments for order ID: {}", orderId); // Логируем запрос отправок заказа
+        List<Shipment> result = shipments.findByOrderId(orderId);
+        if (result.isEmpty()) {
+            logger.warn("No shipments found for order ID {}", orderId); // Логируем предупреждение, если отправок нет
+        }
+        return result;
+    }
+
+    /**
+     * Получает отправку по номеру отслеживания через индекс номеров.
+     *
+     * @param trackingNumber Номер отслеживания
+     * @return Объект Optional, содержащий отправку, если она существует
+     */
+    public Optional<Shipment> getShipmentByTrackingNumber(String trackingNumber) {
+        logger.debug("Fetching shipment for tracking number: {}", trackingNumber); // Логируем запрос по номеру отслеживания
+        Shipment shipment = shipments.findByTrackingNumber(trackingNumber);
+        if (shipment == null) {
+            logger.warn("Shipment with tracking number {} not found", trackingNumber); // Логируем предупреждение, если отправка не найдена
+        }
+        return Optional.ofNullable(shipment);
+    }
+
     /**
      * Получает статус отправки по её идентификатору.
      *
@@ -83,8 +222,34 @@ public class ShippingService {
         return shipment != null ? Optional.of(shipment.getStatus()) : Optional.empty(); // Если отправка найдена, возвращаем статус
     }
 
+    /**
+     * Подписывает клиента на изменения статуса отправки.
+     *
+     * @param shipmentId Идентификатор отправки
+     * @return Поток событий или пустой Optional, если отправка не найдена
+     */
+    public Optional<SseEmitter> subscribeToShipment(Long shipmentId) {
+        Shipment shipment = shipments.get(shipmentId);
+        if (shipment == null) {
+            logger.warn("Shipment with ID {} not found for status stream", shipmentId); // Логируем предупреждение
+            return Optional.empty();
+        }
+        return Optional.of(statusBroadcaster.subscribeToShipment(shipment));
+    }
+
+    /**
+     * Подписывает клиента на изменения статуса всех отправок заказа, включая ещё не созданные.
+     *
+     * @param orderId Идентификатор заказа
+     * @return Поток событий
+     */
+    public SseEmitter subscribeToOrder(Long orderId) {
+        return statusBroadcaster.subscribeToOrder(orderId, shipments.findByOrderId(orderId));
+    }
+
     /**
      * Обновляет статус отправки. Если статус "Доставлено", также устанавливается дата доставки.
+     * Новое состояние рассылается подписчикам отправки и её заказа.
      *
      * @param shipmentId Идентификатор отправки
      * @param status     Новый статус отправки
@@ -93,13 +258,17 @@ public class ShippingService {
     public Optional<Shipment> updateShipmentStatus(Long shipmentId, String status) {
         logger.info("Updating status of shipment ID: {} to {}", shipmentId, status); // Логируем изменение статуса
 
-        Shipment shipment = shipments.get(shipmentId);
-        if (shipment != null) {
-            shipment.setStatus(status);
-            if ("Delivered".equals(status)) {
-                shipment.setDeliveryDate(LocalDate.now()); // Устанавливаем дату доставки, если статус "Доставлено"
-                logger.info("Shipment ID: {} marked as delivered on {}", shipmentId, shipment.getDeliveryDate()); // Логируем дату доставки
+        // Хранилище применяет изменение под монитором отправки: индексы по датам и подписчики
+        // получают изменения одной отправки в порядке применения
+        Shipment shipment = shipments.update(shipmentId, updated -> {
+            updated.setStatus(status);
+            if ("Delivered".equalsIgnoreCase(status)) {
+                updated.setDeliveryDate(LocalDate.now()); // Устанавливаем дату доставки, если статус "Доставлено"
+                logger.info("Shipment ID: {} marked as delivered on {}", shipmentId, updated.getDeliveryDate()); // Логируем дату доставки
             }
+            statusBroadcaster.publish(updated);
+        });
+        if (shipment != null) {
             return Optional.of(shipment); // Возвращаем обновлённую отправку
         }
 
@@ -107,6 +276,44 @@ public class ShippingService {
         return Optional.empty(); // Если отправка не найдена, возвращаем пустой Optional
     }
 
+    /**
+     * Отправки, которые находятся в статусе дольше допустимого: дата отправки раньше, чем olderThanDays дней назад.
+     * Стоимость запроса пропорциональна размеру страницы, а не количеству отправок.
+     *
+     * @param status        Статус отправки (без учёта регистра)
+     * @param olderThanDays Сколько дней назад должна быть дата отправки, не меньше 0
+     * @param cursor        Курсор из предыдущей страницы или null
+     * @param limit         Размер страницы (не больше shipping.queries.max-page-size)
+     * @return Страница отправок по возрастанию даты отправки
+     * @throws IllegalArgumentException если параметры или курсор некорректны
+     */
+    public ShipmentPage getOverdueShipments(String status, int olderThanDays, String cursor, int limit) {
+        if (olderThanDays < 0) {
+            throw new IllegalArgumentException("olderThanDays must not be negative: " + olderThanDays);
+        }
+        LocalDate before = LocalDate.now().minusDays(olderThanDays);
+        logger.info("Looking up shipments in status {} shipped before {}", status, before); // Логируем запрос
+        return shipments.findByStatusAndShippingDate(status, null, before, cursor, pageSize(limit));
+    }
+
+    /**
+     * Отправки, доставленные в период с from по to включительно.
+     *
+     * @param from   Первый день периода
+     * @param to     Последний день периода
+     * @param cursor Курсор из предыдущей страницы или null
+     * @param limit  Размер страницы (не больше shipping.queries.max-page-size)
+     * @return Страница отправок по возрастанию даты доставки
+     * @throws IllegalArgumentException если параметры или курсор некорректны
+     */
+    public ShipmentPage getDeliveredShipments(LocalDate from, LocalDate to, String cursor, int limit) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to: " + from + " > " + to);
+        }
+        logger.info("Looking up shipments delivered from {} to {}", from, to); // Логируем запрос
+        return shipments.findByDeliveryDate(from, to.plusDays(1), cursor, pageSize(limit));
+    }
+
     /**
      * Удаляет отправку по её идентификатору.
      *
@@ -124,14 +331,18 @@ public class ShippingService {
         return isDeleted; // Возвращаем результат удаления
     }
 
-    /**
-     * Генерирует случайный номер отслеживания для отправки.
-     *
-     * @return Сгенерированный номер отслеживания
-     */
-    private String generateTrackingNumber() {
-        String trackingNumber = "TRK" + (100000 + (int)(Math.random() * 900000)); // Генерация случайного числа для номера отслеживания
-        logger.debug("Generated tracking number: {}", trackingNumber); // Логируем номер отслеживания
-        return trackingNumber;
+    private int pageSize(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    private static Set<String> normalize(List<String> statuses) {
+        Set<String> result = new HashSet<>();
+        for (String status : statuses) {
+            result.add(status.trim().toLowerCase(Locale.ROOT));
+        }
+        return result;
     }
 }
@@ -0,0 +1,227 @@
+package net.orekhov.shippingservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор номеров отслеживания, уникальных между узлами без согласования.
+ *
+ * Номер имеет вид TRK + узел (2 символа) + время (7 символов) + последовательность (6 символов) + контрольный символ,
+ * все части — в алфавите Crockford base32 (цифры и латинские буквы без I, L, O, U), всего 19 символов.
+ * Узел задаётся настройкой shipping.tracking.node-id и отличается у всех экземпляров службы, поэтому номера
+ * разных узлов не совпадают. Время — секунды от 2024-01-01, последовательность — до 2^30 номеров в секунду.
+ *
+ * Общий счётчик (секунда и последовательность в одном long) выдаёт потокам блоки по shipping.tracking.block-size
+ * номеров, а каждый поток раздаёт номера из своего блока без синхронизации. Счётчик никогда не уменьшается:
+ * при переводе часов назад или исчерпании последовательности секунды время в номере опережает часы, но номера
+ * не повторяются.
+ *
+ * Чтобы номера не повторялись и после перезапуска, когда счётчик опередил часы, верхняя граница выданных секунд
+ * сохраняется в файле shipping.tracking.state-file с запасом в минуту: файл перезаписывается, только когда
+ * счётчик доходит до сохранённой границы, то есть обычно раз в минуту. При запуске счётчик начинается
+ * с большего из следующей секунды и сохранённой границы. Без файла состояния (пустая настройка) номера
+ * предыдущего запуска не повторяются, только если счётчик не опережал часы и перезапуск занял больше секунды.
+ *
+ * Контрольный символ считается по алгоритму Луна по модулю 32 и обнаруживает любую ошибку в одном символе
+ * и большинство перестановок соседних символов.
+ */
+@Component
+public class TrackingNumberGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingNumberGenerator.class); // Логгер для генератора
+
+    public static final String PREFIX = "TRK";
+    public static final int LENGTH = PREFIX.length() + 16;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray(); // Crockford base32
+    private static final int[] VALUES = new int[128]; // Значение символа алфавита, -1 для остальных
+    private static final int NODE_CHARS = 2;
+    private static final int TIME_CHARS = 7;
+    private static final int SEQUENCE_CHARS = 6;
+    private static final int SEQUENCE_BITS = SEQUENCE_CHARS * 5; // 30 бит последовательности в секунду
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int MAX_NODE_ID = (1 << (NODE_CHARS * 5)) - 1; // 1023
+    private static final long EPOCH_SECONDS = Instant.parse("2024-01-01T00:00:00Z").getEpochSecond();
+    private static final long LEASE_SECONDS = 60; // Запас сохраняемой границы выданных секунд
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = i;
+        }
+    }
+
+    private final char[] nodeChars; // Закодированный идентификатор узла
+    private final int blockSize; // Размер блока номеров потока
+    private final AtomicLong next; // Начало следующего свободного блока: секунда << 30 | последовательность
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]); // [следующий, конец блока)
+    private final Path stateFile; // Файл сохранённой границы выданных секунд или null
+    private volatile long leasedUntil; // Сохранённая граница: все выданные номера относятся к более ранним секундам
+
+    /**
+     * Конструктор с настройками узла.
+     *
+     * @param nodeId    Идентификатор узла (0..1023), уникальный для каждого экземпляра службы
+     * @param blockSize Количество номеров, забираемых потоком за одно обращение к общему счётчику (степень двойки)
+     * @param stateFile Файл сохранённой границы выданных секунд; пустая строка — граница не сохраняется
+     */
+    public TrackingNumberGenerator(@Value("${shipping.tracking.node-id:0}") int nodeId,
+                                   @Value("${shipping.tracking.block-size:1024}") int blockSize,
+                                   @Value("${shipping.tracking.state-file:}") String stateFile) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("shipping.tracking.node-id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        if (blockSize <= 0 || Integer.bitCount(blockSize) != 1 || blockSize > SEQUENCE_MASK + 1) {
+            throw new IllegalArgumentException("shipping.tracking.block-size must be a power of two up to 2^30: " + blockSize);
+        }
+        this.nodeChars = new char[NODE_CHARS];
+        encode(nodeId, nodeChars, 0, NODE_CHARS);
+        this.blockSize = blockSize;
+        this.stateFile = stateFile == null || stateFile.isBlank() ? null : Path.of(stateFile);
+        long startSecond = currentSecond() + 1;
+        if (this.stateFile != null) {
+            startSecond = Math.max(startSecond, readLease(this.stateFile));
+            extendLease(startSecond);
+        }
+        this.next = new AtomicLong(startSecond << SEQUENCE_BITS);
+    }
+
+    /**
+     * Выдать следующий номер отслеживания.
+     *
+     * @return Уникальный номер отслеживания
+     */
+    public String nextTrackingNumber() {
+        long[] current = block.get();
+        if (current[0] == current[1]) {
+            current[0] = allocateBlock();
+            current[1] = current[0] + blockSize;
+        }
+        long value = current[0]++;
+
+        char[] chars = new char[LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        int position = PREFIX.length();
+        System.arraycopy(nodeChars, 0, chars, position, NODE_CHARS);
+        position += NODE_CHARS;
+        encode(value >>> SEQUENCE_BITS, chars, position, TIME_CHARS);
+        position += TIME_CHARS;
+        encode(value & SEQUENCE_MASK, chars, position, SEQUENCE_CHARS);
+        position += SEQUENCE_CHARS;
+        chars[position] = ALPHABET[checkValue(chars, PREFIX.length(), position)];
+        return new String(chars);
+    }
+
+    /**
+     * Проверить формат и контрольный символ номера отслеживания.
+     *
+     * @param trackingNumber Номер отслеживания
+     * @return true, если номер мог быть выдан генератором
+     */
+    public static boolean isValid(String trackingNumber) {
+        if (trackingNumber == null || trackingNumber.length() != LENGTH || !trackingNumber.startsWith(PREFIX)) {
+            return false;
+        }
+        char[] chars = trackingNumber.toCharArray();
+        for (int i = PREFIX.length(); i < LENGTH; i++) {
+            if (chars[i] >= VALUES.length || VALUES[chars[i]] < 0) {
+                return false;
+            }
+        }
+        return checkValue(chars, PREFIX.length(), LENGTH - 1) == VALUES[chars[LENGTH - 1]];
+    }
+
+    /**
+     * Забирает блок номеров из общего счётчика: с текущей секунды, если счётчик отстал от часов,
+     * иначе с позиции счётчика.
+     */
+    private long allocateBlock() {
+        while (true) {
+            long current = next.get();
+            long start = Math.max(current, currentSecond() << SEQUENCE_BITS);
+            if (next.compareAndSet(current, start + blockSize)) {
+                long lastSecond = (start + blockSize - 1) >>> SEQUENCE_BITS;
+                if (stateFile != null && lastSecond >= leasedUntil) {
+                    extendLease(lastSecond); // До выдачи номеров блока граница должна быть сохранена
+                }
+                return start;
+            }
+        }
+    }
+
+    /**
+     * Сохраняет границу выданных секунд с запасом LEASE_SECONDS после second.
+     * Файл заменяется атомарно; при ошибке записи номера продолжают выдаваться, но после перезапуска могут повториться.
+     */
+    private synchronized void extendLease(long second) {
+        if (second < leasedUntil) {
+            return; // Границу уже продвинул другой поток
+        }
+        long until = second + LEASE_SECONDS;
+        try {
+            Path parent = stateFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = parent.resolve(stateFile.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(until), StandardCharsets.US_ASCII, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Failed to save tracking number state to {}, numbers may repeat after restart", stateFile, e);
+        }
+        leasedUntil = until;
+    }
+
+    /**
+     * Сохранённая граница выданных секунд или 0, если файла ещё нет.
+     */
+    private static long readLease(Path stateFile) {
+        if (!Files.exists(stateFile)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(stateFile, StandardCharsets.US_ASCII).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Cannot read tracking number state file " + stateFile, e);
+        }
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000 - EPOCH_SECONDS;
+    }
+
+    /**
+     * Записывает младшие 5 * length бит значения символами алфавита, старшие разряды первыми.
+     */
+    private static void encode(long value, char[] target, int offset, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            target[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+    }
+
+    /**
+     * Контрольное значение Луна по модулю 32 для символов [from, to).
+     */
+    private static int checkValue(char[] chars, int from, int to) {
+        int factor = 2;
+        int sum = 0;
+        for (int i = to - 1; i >= from; i--) {
+            int addend = factor * VALUES[chars[i]];
+            factor = factor == 2 ? 1 : 2;
+            sum += addend / 32 + addend % 32;
+        }
+        return (32 - sum % 32) % 32;
+    }
+}
@@ -0,0 +1,153 @@
+package net.orekhov.shippingservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.orekhov.shippingservice.model.Shipment;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShipmentStatusBroadcasterTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void statusChangeReachesShipmentAndOrderSubscribersOnly() throws Exception {
+        RecordingEmitter shipmentSubscriber = new RecordingEmitter(null);
+        RecordingEmitter orderSubscriber = new RecordingEmitter(null);
+        RecordingEmitter otherOrderSubscriber = new RecordingEmitter(null);
+        ShipmentStatusBroadcaster broadcaster = broadcaster(32, 60_000,
+                shipmentSubscriber, orderSubscriber, otherOrderSubscriber);
+        try {
+            broadcaster.subscribeToShipment(shipment(1, 10, "Created"));
+            broadcaster.subscribeToOrder(10L, List.of());
+            broadcaster.subscribeToOrder(20L, List.of(shipment(2, 20, "Created")));
+            assertEquals(3, broadcaster.getSubscriberCount());
+
+            broadcaster.publish(shipment(1, 10, "Shipped"));
+            broadcaster.publish(shipment(3, 30, "Shipped")); // Без подписчиков
+
+            assertTrue(shipmentSubscriber.nextEvent().contains("\"status\":\"Created\""));
+            assertTrue(shipmentSubscriber.nextEvent().contains("\"status\":\"Shipped\""));
+            String orderEvent = orderSubscriber.nextEvent();
+            assertTrue(orderEvent.contains("\"shipmentId\":1") && orderEvent.contains("\"status\":\"Shipped\""), orderEvent);
+            assertTrue(otherOrderSubscriber.nextEvent().contains("\"shipmentId\":2"));
+
+            assertNull(shipmentSubscriber.events.poll(100, TimeUnit.MILLISECONDS));
+            assertNull(orderSubscriber.events.poll(100, TimeUnit.MILLISECONDS));
+            assertNull(otherOrderSubscriber.events.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            broadcaster.shutdown();
+        }
+    }
+
+    @Test
+    void slowClientIsDisconnectedWithoutDelayingOthers() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(gate);
+        RecordingEmitter fast = new RecordingEmitter(null);
+        ShipmentStatusBroadcaster broadcaster = broadcaster(4, 60_000, slow, fast);
+        try {
+            broadcaster.subscribeToOrder(10L, List.of());
+            broadcaster.subscribeToOrder(10L, List.of());
+
+            // Единственный постоянный поток пула может зависнуть в отправке медленному клиенту,
+            // а быстрый клиент получает каждое событие до следующей публикации
+            for (int i = 1; i <= 10; i++) {
+                broadcaster.publish(shipment(i, 10, "Shipped"));
+                assertTrue(fast.nextEvent().contains("\"shipmentId\":" + i));
+            }
+            assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+            assertEquals(1, broadcaster.getSubscriberCount());
+        } finally {
+            gate.countDown();
+            broadcaster.shutdown();
+        }
+    }
+
+    @Test
+    void stalledSendIsTimedOutAndInterrupted() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingEmitter stalled = new RecordingEmitter(gate);
+        ShipmentStatusBroadcaster broadcaster = broadcaster(32, 200, stalled);
+        try {
+            broadcaster.subscribeToShipment(shipment(1, 10, "Created")); // Первое же событие не уходит клиенту
+
+            assertTrue(stalled.completed.await(5, TimeUnit.SECONDS));
+            assertTrue(stalled.interrupted.await(5, TimeUnit.SECONDS));
+            assertEquals(0, broadcaster.getSubscriberCount());
+        } finally {
+            gate.countDown();
+            broadcaster.shutdown();
+        }
+    }
+
+    /**
+     * Рассылка с одним постоянным потоком отправки, выдающая подписчикам заданные потоки событий по порядку.
+     */
+    private static ShipmentStatusBroadcaster broadcaster(int maxPending, long sendTimeoutMillis,
+                                                         RecordingEmitter... emitters) {
+        Iterator<RecordingEmitter> next = List.of(emitters).iterator();
+        return new ShipmentStatusBroadcaster(OBJECT_MAPPER, maxPending, 60_000, 1, sendTimeoutMillis) {
+            @Override
+            SseEmitter createEmitter(long timeoutMillis) {
+                return next.next();
+            }
+        };
+    }
+
+    private static Shipment shipment(long shipmentId, long orderId, String status) {
+        return new Shipment(shipmentId, orderId, "TRK" + shipmentId, "standard", status, null, null);
+    }
+
+    /**
+     * Поток событий без HTTP-ответа: запоминает отправленные данные, а с защёлкой ждёт её открытия
+     * при каждой отправке, как запись в сокет клиента, который не читает.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final CountDownLatch gate; // null — отправка не блокируется
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        RecordingEmitter(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new IOException("Send interrupted", e);
+                }
+            }
+            StringBuilder data = new StringBuilder();
+            builder.build().forEach(item -> data.append(item.getData()));
+            events.add(data.toString());
+        }
+
+        @Override
+        public void complete() {
+            super.complete();
+            completed.countDown();
+        }
+
+        String nextEvent() throws InterruptedException {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "event was not delivered");
+            return event;
+        }
+    }
+}
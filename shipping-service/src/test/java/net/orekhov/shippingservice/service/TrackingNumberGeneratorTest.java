@@ -0,0 +1,135 @@
+package net.orekhov.shippingservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackingNumberGeneratorTest {
+
+    @Test
+    void numbersAreUniqueAcrossThreads() throws Exception {
+        TrackingNumberGenerator generator = new TrackingNumberGenerator(1, 64, "");
+        int threads = 8;
+        int perThread = 250_000;
+        Set<String> numbers = ConcurrentHashMap.newKeySet(threads * perThread);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        numbers.add(generator.nextTrackingNumber());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * perThread, numbers.size());
+    }
+
+    @Test
+    void nodesNeverProduceTheSameNumber() {
+        TrackingNumberGenerator first = new TrackingNumberGenerator(1, 1024, "");
+        TrackingNumberGenerator second = new TrackingNumberGenerator(2, 1024, "");
+        Set<String> numbers = new HashSet<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(numbers.add(first.nextTrackingNumber()));
+            assertTrue(numbers.add(second.nextTrackingNumber()));
+        }
+    }
+
+    @Test
+    void restartDoesNotRepeatNumbersIssuedAheadOfClock() throws Exception {
+        Path directory = Files.createTempDirectory("tracking");
+        Path stateFile = directory.resolve("tracking.state");
+        try {
+            // Блок размером в целую секунду: каждый поток уводит счётчик на секунду вперёд,
+            // 100 потоков — дальше запаса сохраняемой границы
+            TrackingNumberGenerator first = new TrackingNumberGenerator(1, 1 << 30, stateFile.toString());
+            Set<String> issued = ConcurrentHashMap.newKeySet();
+            ExecutorService executor = Executors.newFixedThreadPool(100);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 100; t++) {
+                    futures.add(executor.submit(() -> issued.add(first.nextTrackingNumber())));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(100, issued.size());
+
+            // Перезапуск сразу же: без сохранённой границы счётчик начался бы со следующей секунды
+            TrackingNumberGenerator restarted = new TrackingNumberGenerator(1, 1 << 30, stateFile.toString());
+            for (int i = 0; i < 1_000; i++) {
+                String number = restarted.nextTrackingNumber();
+                assertFalse(issued.contains(number), number);
+            }
+        } finally {
+            Files.deleteIfExists(stateFile);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    void numbersHaveFixedFormatAndValidCheckCharacter() {
+        TrackingNumberGenerator generator = new TrackingNumberGenerator(1023, 1024, "");
+
+        for (int i = 0; i < 10_000; i++) {
+            String number = generator.nextTrackingNumber();
+            assertEquals(TrackingNumberGenerator.LENGTH, number.length());
+            assertTrue(number.startsWith(TrackingNumberGenerator.PREFIX + "ZZ"), number);
+            assertTrue(TrackingNumberGenerator.isValid(number), number);
+        }
+    }
+
+    @Test
+    void checkCharacterDetectsSingleCharacterErrors() {
+        String number = new TrackingNumberGenerator(5, 1024, "").nextTrackingNumber();
+        String alphabet = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+
+        for (int position = TrackingNumberGenerator.PREFIX.length(); position < number.length(); position++) {
+            for (char replacement : alphabet.toCharArray()) {
+                if (replacement == number.charAt(position)) {
+                    continue;
+                }
+                String corrupted = number.substring(0, position) + replacement + number.substring(position + 1);
+                assertFalse(TrackingNumberGenerator.isValid(corrupted), corrupted);
+            }
+        }
+    }
+
+    @Test
+    void rejectsMalformedNumbers() {
+        assertFalse(TrackingNumberGenerator.isValid(null));
+        assertFalse(TrackingNumberGenerator.isValid("TRK123456"));
+        assertFalse(TrackingNumberGenerator.isValid("ABC0000000000000000"));
+        assertFalse(TrackingNumberGenerator.isValid("TRK000000000000000I"));
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new TrackingNumberGenerator(1024, 1024, ""));
+        assertThrows(IllegalArgumentException.class, () -> new TrackingNumberGenerator(0, 1000, ""));
+    }
+}